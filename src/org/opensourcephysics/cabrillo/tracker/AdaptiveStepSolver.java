@@ -0,0 +1,247 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import org.opensourcephysics.numerics.ODE;
+import org.opensourcephysics.numerics.ODEAdaptiveSolver;
+
+/**
+ * An embedded Runge-Kutta solver with error control. Unlike a fixed-step solver,
+ * each call to step() advances the ODE by exactly the step size set in
+ * initialize(), taking as many internal steps as needed to keep the estimated
+ * local error within the tolerance. Smooth motion is thus solved with a few
+ * large internal steps and abrupt motion with many small ones.
+ *
+ * The error in each state variable is measured relative to the larger of 1 and
+ * the magnitude of the variable. Subclasses supply the Butcher tableau.
+ */
+public abstract class AdaptiveStepSolver implements ODEAdaptiveSolver {
+
+	/**
+	 * the default tolerance
+	 */
+	public final static double DEFAULT_TOLERANCE = 1.0e-6;
+
+	private final static double SAFETY = 0.9, MIN_SCALE = 0.2, MAX_SCALE = 5;
+	private final static int MAX_REJECTIONS = 40;
+
+	private final ODE ode;
+	private final double[][] a; // stage coefficients: row i-1 has i entries
+	private final double[] b; // solution weights
+	private final double[] e; // error weights
+	private final boolean fsal; // true if the last stage is the rate at the solution
+	private double stepSize = 0.1, internalStep = 0.1;
+	private double tol = DEFAULT_TOLERANCE;
+	private int errorCode = NO_ERROR;
+	private double[][] k;
+	private double[] stage, next;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ode  the ODE
+	 * @param a    the stage coefficients
+	 * @param b    the solution weights
+	 * @param e    the error weights (difference between the embedded solutions)
+	 * @param fsal true if the last stage is evaluated at the solution
+	 */
+	protected AdaptiveStepSolver(ODE ode, double[][] a, double[] b, double[] e, boolean fsal) {
+		this.ode = ode;
+		this.a = a;
+		this.b = b;
+		this.e = e;
+		this.fsal = fsal;
+	}
+
+	/**
+	 * Initializes the solver with the step size to advance in each call to step().
+	 *
+	 * @param stepSize the step size
+	 */
+	@Override
+	public void initialize(double stepSize) {
+		this.stepSize = stepSize;
+		internalStep = stepSize;
+		errorCode = NO_ERROR;
+		double[] state = ode.getState();
+		if (state != null)
+			allocate(state.length);
+	}
+
+	/**
+	 * Advances the ODE by the step size.
+	 *
+	 * @return the step size
+	 */
+	@Override
+	public double step() {
+		double[] state = ode.getState();
+		if (state == null || stepSize == 0)
+			return stepSize;
+		if (next == null || next.length != state.length)
+			allocate(state.length);
+		errorCode = NO_ERROR;
+		if (!(internalStep * stepSize > 0))
+			internalStep = stepSize;
+		ode.getRate(state, k[0]);
+		double remaining = stepSize;
+		int rejections = 0;
+		while (remaining != 0) {
+			double h = internalStep;
+			boolean last = Math.abs(h) >= Math.abs(remaining) * (1 - 1.0e-9);
+			if (last)
+				h = remaining;
+			else if (Math.abs(h) > Math.abs(remaining) / 2)
+				h = remaining / 2; // avoid a sliver of a final step
+			double err = trial(state, h);
+			if (!(err <= 1)) {
+				if (rejections < MAX_REJECTIONS) {
+					// reject and retry with a smaller step
+					rejections++;
+					double scale = Double.isNaN(err) ? MIN_SCALE : Math.max(MIN_SCALE, SAFETY * Math.pow(err, -0.25));
+					internalStep = h * scale;
+					continue;
+				}
+				// give up on error control and finish in one step
+				errorCode = DID_NOT_CONVERGE;
+				h = remaining;
+				last = true;
+				trial(state, h);
+				internalStep = stepSize;
+			} else {
+				double scale = err == 0 ? MAX_SCALE : Math.min(MAX_SCALE, SAFETY * Math.pow(err, -0.2));
+				// a shortened final step predicts only smaller steps
+				if (!last || scale < 1)
+					internalStep = h * scale;
+			}
+			rejections = 0;
+			System.arraycopy(next, 0, state, 0, state.length);
+			remaining = last ? 0 : remaining - h;
+			if (remaining != 0) {
+				if (fsal) {
+					double[] tmp = k[0];
+					k[0] = k[b.length - 1];
+					k[b.length - 1] = tmp;
+				} else
+					ode.getRate(state, k[0]);
+			}
+		}
+		return stepSize;
+	}
+
+	/**
+	 * Sets the step size advanced in each call to step().
+	 *
+	 * @param stepSize the step size
+	 */
+	@Override
+	public void setStepSize(double stepSize) {
+		this.stepSize = stepSize;
+	}
+
+	/**
+	 * Gets the step size advanced in each call to step().
+	 *
+	 * @return the step size
+	 */
+	@Override
+	public double getStepSize() {
+		return stepSize;
+	}
+
+	/**
+	 * Sets the tolerance.
+	 *
+	 * @param tol the tolerance
+	 */
+	@Override
+	public void setTolerance(double tol) {
+		if (tol > 0)
+			this.tol = tol;
+	}
+
+	/**
+	 * Gets the tolerance.
+	 *
+	 * @return the tolerance
+	 */
+	@Override
+	public double getTolerance() {
+		return tol;
+	}
+
+	/**
+	 * Gets the error code of the last step: NO_ERROR or DID_NOT_CONVERGE.
+	 *
+	 * @return the error code
+	 */
+	@Override
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	/**
+	 * Takes a trial step from state into the next array, using k[0] for the rate
+	 * at the state.
+	 *
+	 * @param state the state
+	 * @param h     the step
+	 * @return the estimated error relative to the tolerance
+	 */
+	private double trial(double[] state, double h) {
+		int n = state.length, stages = b.length;
+		for (int i = 1; i < stages; i++) {
+			double[] ai = a[i - 1];
+			for (int m = 0; m < n; m++) {
+				double sum = 0;
+				for (int j = 0; j < i; j++)
+					sum += ai[j] * k[j][m];
+				stage[m] = state[m] + h * sum;
+			}
+			ode.getRate(stage, k[i]);
+		}
+		double err = 0;
+		for (int m = 0; m < n; m++) {
+			double sum = 0, delta = 0;
+			for (int j = 0; j < stages; j++) {
+				sum += b[j] * k[j][m];
+				delta += e[j] * k[j][m];
+			}
+			next[m] = state[m] + h * sum;
+			double scale = tol * Math.max(1, Math.max(Math.abs(state[m]), Math.abs(next[m])));
+			double em = Math.abs(h * delta) / scale;
+			if (em > err || Double.isNaN(em))
+				err = em;
+		}
+		return err;
+	}
+
+	private void allocate(int n) {
+		k = new double[b.length][n];
+		stage = new double[n];
+		next = new double[n];
+	}
+
+}
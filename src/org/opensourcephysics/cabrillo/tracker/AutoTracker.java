@@ -69,10 +69,11 @@ import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.TreeMap;
 
 import javax.swing.AbstractAction;
@@ -89,6 +90,7 @@ import javax.swing.JFormattedTextField;
 import javax.swing.JFormattedTextField.AbstractFormatterFactory;
 import javax.swing.JLabel;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JSpinner;
@@ -152,18 +154,17 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	private final static Footprint inactive_target_footprint = PointShapeFootprint.getFootprint("Footprint.Crosshair"); //$NON-NLS-1$
 	private final static Footprint corner_footprint = PointShapeFootprint.getFootprint("Footprint.SolidSquare"); //$NON-NLS-1$
 	private final static NumberFormat format = NumberFormat.getNumberInstance();
-	private final static double cornerFactor = 0.9;
+	final static double cornerFactor = 0.9;
 	private final static BasicStroke solidBold = new BasicStroke(2), solid = new BasicStroke();
 	private final static BasicStroke dotted = new BasicStroke(2, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 8, DOTTED_LINE,
 			0), dashed = new BasicStroke(2, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 8, DASHED_LINE, 0);
 	private final static int maxEvolve = 100, maxTether = 100; // percent
-	private final static int defaultEvolve = 20, defaultTether = 5;
+	final static int defaultEvolve = 20, defaultTether = 5;
 	private final static Icon searchIcon = Tracker.getResourceIcon("green_light.gif", true), 
 			stopIcon = Tracker.getResourceIcon("red_light.gif", true), graySearchIcon = Tracker.getResourceIcon("gray_light.gif", true);
-	private final static double[] defaultMaskSize = { 9, 9 };
-	private final static double[] defaultSearchSize = { 40, 40 };
+	final static double[] defaultMaskSize = { 9, 9 };
+	final static double[] defaultSearchSize = { 40, 40 };
 	private final static int templateIconMagnification = 2;
-	private final static int predictionLookback = 4;
 	
 	// not final -- so why static? To remember state?
 
@@ -213,12 +214,11 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	 * trackFrameData maps tracks to indexFrameData which maps point index to
 	 * frameData which maps frame number to individual FrameData objects
 	 */
-	private Map<TTrack, Map<Integer, Map<Integer, FrameData>>> trackDataMap = new HashMap<TTrack, Map<Integer, Map<Integer, FrameData>>>();
+	private Map<TTrack, Map<Integer, FrameDataMap>> trackDataMap = new HashMap<TTrack, Map<Integer, FrameDataMap>>();
 	private int lineSpread = -1; // positive for 1D, negative for 2D tracking
 	private boolean isInteracting;
-	private double[][] derivatives1 = new double[predictionLookback - 1][];
-	private double[][] derivatives2 = new double[predictionLookback - 1][];
-	private double[][] derivatives3 = new double[predictionLookback - 1][];
+	private TargetPredictor predictor = new TargetPredictor();
+	private PyramidMatcher pyramidMatcher = new PyramidMatcher(0); // 0 levels for full resolution only
 
 	/**
 	 * Constructs an AutoTracker for a specified TrackerPanel.
@@ -426,12 +426,10 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 			double[] peakWidthAndHeight = frameData.getMatchWidthAndHeight();
 			if (p != null && (Double.isInfinite(peakWidthAndHeight[1]) || peakWidthAndHeight[1] >= goodMatch)) {
 				marking = true;
-				track.autoTrackerMarking = track.isAutoAdvance();
 				if (keyFrameData != frameData) {
-					p = track.autoMarkAt(n, p.x, p.y);
+					p = autoMark(track, frameData.getIndex(), n, p);
 				}
 				frameData.setAutoMarkPoint(p);
-				track.autoTrackerMarking = false;
 				return true;
 			}
 			if (p == null) {
@@ -445,6 +443,28 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		return false;
 	}
 
+	/**
+	 * Marks a track point at a match target. The track's target index is set to
+	 * the point index while marking so any point of a track can be marked.
+	 *
+	 * @param track  the track
+	 * @param index  the point index
+	 * @param n      the frame number
+	 * @param target the match target
+	 * @return the marked point
+	 */
+	static TPoint autoMark(TTrack track, int index, int n, TPoint target) {
+		int prevIndex = track.getTargetIndex();
+		track.setTargetIndex(index);
+		track.autoTrackerMarking = track.isAutoAdvance();
+		try {
+			return track.autoMarkAt(n, target.x, target.y);
+		} finally {
+			track.autoTrackerMarking = false;
+			track.setTargetIndex(prevIndex);
+		}
+	}
+
 	/**
 	 * Gets the predicted target point in a specified video frame, based on
 	 * previously marked steps.
@@ -453,16 +473,17 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	 * @return the predicted target
 	 */
 	public TPoint getPredictedMatchTarget(int frameNumber) {
-		boolean success = false;
 		TrackerPanel trackerPanel = frame.getTrackerPanelForID(panelID);
 		VideoClip clip = trackerPanel.getPlayer().getVideoClip();
 		int stepNumber = clip.frameToStep(frameNumber);
 
 		// get position data at previous steps
-		TPoint[] prevPoints = new TPoint[predictionLookback];
+		int lookback = predictor.getLookback();
+		TPoint[] prevPoints = new TPoint[lookback];
+		boolean[] weak = new boolean[lookback]; // true for unmarked possible matches
 		TTrack track = getTrack();
 		if (stepNumber > 0 && track != null) {
-			for (int j = 0; j < predictionLookback; j++) {
+			for (int j = 0; j < lookback; j++) {
 				if (stepNumber - j - 1 >= 0) {
 					FrameData frameData = getOrCreateFrameData(clip.stepToFrame(stepNumber - j - 1));
 					if (track.steps.isAutofill() && !frameData.searched) {
@@ -472,140 +493,18 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 						if (prevPoints[j] == null) {
 							TPoint[] matchPts = frameData.getMatchPoints();
 							prevPoints[j] = matchPts == null ? null : matchPts[0];
+							weak[j] = prevPoints[j] != null;
 						}
 					}
 				}
 			}
 		}
 
-		// return null (no prediction) if there is no recent position data
-		if (prevPoints[0] == null)
+		TPoint prediction = predictor.predict(prevPoints, weak, lookAhead, getVideo().getImageSize(true));
+		if (prediction == null)
 			return null;
-
-		// set predictedTarget to prev position
-		predictedTarget.setLocation(prevPoints[0].getX(), prevPoints[0].getY());
-		if (!lookAhead || prevPoints[1] == null) {
-			// no recent velocity or acceleration data available
-			success = true;
-		}
-
-		if (!success) {
-			// get derivatives
-			double[][] veloc = getDerivatives(prevPoints, 1);
-			double[][] accel = getDerivatives(prevPoints, 2);
-			double[][] jerk = getDerivatives(prevPoints, 3);
-
-			double vxmax = 0, vxmean = 0, vymax = 0, vymean = 0;
-			int n = 0;
-			for (int i = 0; i < veloc.length; i++) {
-				if (veloc[i] != null) {
-					n++;
-					vxmax = Math.max(vxmax, Math.abs(veloc[i][0]));
-					vxmean += veloc[i][0];
-					vymax = Math.max(vymax, Math.abs(veloc[i][1]));
-					vymean += veloc[i][1];
-				}
-			}
-			vxmean = Math.abs(vxmean / n);
-			vymean = Math.abs(vymean / n);
-
-			double axmax = 0, axmean = 0, aymax = 0, aymean = 0;
-			n = 0;
-			for (int i = 0; i < accel.length; i++) {
-				if (accel[i] != null) {
-					n++;
-					axmax = Math.max(axmax, Math.abs(accel[i][0]));
-					axmean += accel[i][0];
-					aymax = Math.max(aymax, Math.abs(accel[i][1]));
-					aymean += accel[i][1];
-				}
-			}
-			axmean = Math.abs(axmean / n);
-			aymean = Math.abs(aymean / n);
-
-			double jxmax = 0, jxmean = 0, jymax = 0, jymean = 0;
-			n = 0;
-			for (int i = 0; i < jerk.length; i++) {
-				if (jerk[i] != null) {
-					n++;
-					jxmax = Math.max(jxmax, Math.abs(jerk[i][0]));
-					jxmean += jerk[i][0];
-					jymax = Math.max(jymax, Math.abs(jerk[i][1]));
-					jymean += jerk[i][1];
-				}
-			}
-			jxmean = Math.abs(jxmean / n);
-			jymean = Math.abs(jymean / n);
-
-			boolean xVelocValid = prevPoints[2] == null || Math.abs(accel[0][0]) < vxmean;
-			boolean yVelocValid = prevPoints[2] == null || Math.abs(accel[0][1]) < vymean;
-			boolean xAccelValid = prevPoints[2] != null && (prevPoints[3] == null || Math.abs(jerk[0][0]) < axmean);
-			boolean yAccelValid = prevPoints[2] != null && (prevPoints[3] == null || Math.abs(jerk[0][1]) < aymean);
-//			boolean velocValid = prevPoints[2]==null || (accel[0][0]<vxmean && accel[0][1]<vymean);
-//			boolean accelValid = prevPoints[2]!=null && (prevPoints[3]==null || (jerk[0][0]<axmean && jerk[0][1]<aymean));
-
-			if (xAccelValid) {
-				// base x-coordinate prediction on acceleration
-				TPoint loc0 = prevPoints[2];
-				TPoint loc1 = prevPoints[1];
-				TPoint loc2 = prevPoints[0];
-				double x = 3 * loc2.getX() - 3 * loc1.getX() + loc0.getX();
-				predictedTarget.setLocation(x, predictedTarget.y);
-				success = true;
-			} else if (xVelocValid) {
-				// else base x-coordinate prediction on velocity
-				TPoint loc0 = prevPoints[1];
-				TPoint loc1 = prevPoints[0];
-				double x = 2 * loc1.getX() - loc0.getX();
-				predictedTarget.setLocation(x, predictedTarget.y);
-				success = true;
-			}
-			if (yAccelValid) {
-				// base y-coordinate prediction on acceleration
-				TPoint loc0 = prevPoints[2];
-				TPoint loc1 = prevPoints[1];
-				TPoint loc2 = prevPoints[0];
-				double y = 3 * loc2.getY() - 3 * loc1.getY() + loc0.getY();
-				predictedTarget.setLocation(predictedTarget.x, y);
-				success = true;
-			} else if (yVelocValid) {
-				// else base y-coordinate prediction on velocity
-				TPoint loc0 = prevPoints[1];
-				TPoint loc1 = prevPoints[0];
-				double y = 2 * loc1.getY() - loc0.getY();
-				predictedTarget.setLocation(predictedTarget.x, y);
-				success = true;
-			}
-//			if (accelValid) {
-//				// base prediction on acceleration
-//				TPoint loc0 = prevPoints[2];
-//				TPoint loc1 = prevPoints[1];
-//				TPoint loc2 = prevPoints[0];
-//				double x = 3*loc2.getX() - 3*loc1.getX() + loc0.getX();
-//				double y = 3*loc2.getY() - 3*loc1.getY() + loc0.getY();
-//	  		predictedTarget.setLocation(x, y);
-//	    	success = true;			
-//			}
-//			else if (velocValid) {
-//				// else base prediction on velocity
-//				TPoint loc0 = prevPoints[1];
-//				TPoint loc1 = prevPoints[0];
-//				double x = 2*loc1.getX() -loc0.getX();
-//				double y = 2*loc1.getY() -loc0.getY();
-//	  		predictedTarget.setLocation(x, y);
-//	    	success = true;		
-//			}
-		}
-		if (success) {
-			// make sure prediction is within the video image
-			Dimension d = getVideo().getImageSize(true);
-			predictedTarget.x = Math.max(predictedTarget.x, 0);
-			predictedTarget.x = Math.min(predictedTarget.x, d.width);
-			predictedTarget.y = Math.max(predictedTarget.y, 0);
-			predictedTarget.y = Math.min(predictedTarget.y, d.height);
-			return predictedTarget;
-		}
-		return null;
+		predictedTarget.setLocation(prediction.x, prediction.y);
+		return predictedTarget;
 	}
 
 	/**
@@ -622,8 +521,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		if (predict) {
 			TPoint prediction = getPredictedMatchTarget(n);
 			if (prediction != null) {
-				TPoint p = getMatchCenter(prediction);
-				setSearchPoints(p, null);
+				setPredictedSearchPoints(getMatchCenter(prediction));
 			}
 		}
 		// save search center and corner points
@@ -775,6 +673,149 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		return keyFrameData.getTemplateMatcher();
 	}
 
+	/**
+	 * Creates a BatchAutoTracker that continues from the current key frame of the
+	 * current track point with the current template, search area and match
+	 * settings. May return null.
+	 *
+	 * @return the batch autotracker
+	 */
+	public BatchAutoTracker createBatchTracker() {
+		TTrack track = getTrack();
+		if (track == null || getTemplateMatcher() == null)
+			return null;
+		return createBatchTracker(track, getPanelKeyFrameData());
+	}
+
+	/**
+	 * Creates a MultiTargetAutoTracker for all track points that have AutoTracker
+	 * key frames, so they can be autotracked together in a single pass over the
+	 * video. Several points of the same track may be targets. May return null.
+	 *
+	 * @return the multi-target autotracker
+	 */
+	public MultiTargetAutoTracker createMultiTargetTracker() {
+		int n = trackerPanel().getFrameNumber();
+		ArrayList<BatchAutoTracker> targets = new ArrayList<BatchAutoTracker>();
+		for (Entry<TTrack, Map<Integer, FrameDataMap>> e : trackDataMap.entrySet()) {
+			TTrack track = e.getKey();
+			if (track == null)
+				continue;
+			for (FrameDataMap map : e.getValue().values()) {
+				if (!map.hasKeyFrames())
+					continue;
+				KeyFrameData keyFrameData = map.getKeyFrameData(n);
+				if (keyFrameData == null) // use the first key frame
+					keyFrameData = map.getKeyFrameData(map.getKeyFrameNumbers().iterator().next());
+				BatchAutoTracker target = createBatchTracker(track, keyFrameData);
+				if (target != null)
+					targets.add(target);
+			}
+		}
+		return targets.isEmpty() ? null : new MultiTargetAutoTracker(trackerPanel(), targets);
+	}
+
+	/**
+	 * Creates a BatchAutoTracker for a track point from a key frame and the
+	 * current match settings. The batch autotracker gets its own copy of the key
+	 * frame's template matcher and stops before the next key frame, where the
+	 * interactive search would switch templates.
+	 *
+	 * @param track        the track
+	 * @param keyFrameData the key frame
+	 * @return the batch autotracker, or null if the key frame has no template
+	 */
+	private BatchAutoTracker createBatchTracker(TTrack track, KeyFrameData keyFrameData) {
+		TemplateMatcher matcher = (keyFrameData == null ? null : copyTemplateMatcher(keyFrameData));
+		if (matcher == null)
+			return null;
+		Rectangle2D searchRect = searchRect2D;
+		TPoint[] searchPts = keyFrameData.getSearchPoints(false);
+		if (searchPts != null) {
+			searchRect = new Rectangle2D.Double();
+			searchRect.setFrameFromCenter(searchPts[0], searchPts[1]);
+		}
+		TPoint[] maskPoints = keyFrameData.getMaskPoints();
+		BatchAutoTracker tracker = new BatchAutoTracker(trackerPanel(), track, keyFrameData.getIndex(),
+				keyFrameData.getFrameNumber(), matcher, keyFrameData.getMask(), maskPoints[0], maskPoints[1],
+				keyFrameData.getTargetOffset(), searchRect);
+		tracker.setAutoTracker(this, keyFrameData);
+		Integer nextKey = keyFrameData.getMyFrameDataMap().getNextKeyFrameNumber(keyFrameData.getFrameNumber());
+		if (nextKey != null)
+			tracker.setStopFrame(nextKey);
+		tracker.setAlphas(evolveAlpha, tetherAlpha);
+		tracker.setMatchThresholds(goodMatch, possibleMatch);
+		tracker.setLineSpread(lineSpread);
+		tracker.setLookAhead(lookAhead);
+		tracker.setPyramidLevels(pyramidMatcher.getLevels());
+		tracker.setKalmanPredictor(isKalmanPredictor());
+		return tracker;
+	}
+
+	/**
+	 * Copies the template matcher of a key frame. The copy is tethered to the
+	 * same key frame template and starts with the current evolved template, so a
+	 * BatchAutoTracker can evolve it on a worker thread while the original stays
+	 * with the event dispatch thread.
+	 *
+	 * @param keyFrameData the key frame
+	 * @return the copy, or null if the key frame has no template matcher
+	 */
+	private TemplateMatcher copyTemplateMatcher(KeyFrameData keyFrameData) {
+		TemplateMatcher matcher = keyFrameData.getTemplateMatcher();
+		if (matcher == null)
+			return null;
+		BufferedImage keyTemplate = keyFrameData.getTemplateImage();
+		Shape mask = keyFrameData.getMask();
+		Rectangle rect = mask.getBounds();
+		AffineTransform toTemplate = AffineTransform.getTranslateInstance(-rect.x, -rect.y);
+		TemplateMatcher copy = new TemplateMatcher(keyTemplate == null ? matcher.getTemplate() : keyTemplate,
+				toTemplate.createTransformedShape(mask));
+		copy.setTemplate(matcher.getTemplate());
+		int[] workingPixels = matcher.getWorkingPixels();
+		copy.setWorkingPixels(workingPixels == null ? null : workingPixels.clone());
+		copy.setIndex(matcher.getIndex());
+		return copy;
+	}
+
+	/**
+	 * Marks a track point found by a BatchAutoTracker and records it in the
+	 * point's FrameData, as markCurrentFrame does for an interactive search.
+	 *
+	 * @param frameData the FrameData of the track point
+	 * @param track     the track
+	 * @param target    the match target
+	 * @return the marked point
+	 */
+	TPoint markBatchMatch(FrameData frameData, TTrack track, TPoint target) {
+		// step events are handled only for the current track
+		marking = (track == getTrack());
+		TPoint p = autoMark(track, frameData.getIndex(), frameData.getFrameNumber(), target);
+		frameData.setAutoMarkPoint(p);
+		return p;
+	}
+
+	/**
+	 * Brings a key frame up to date after a BatchAutoTracker run, giving its
+	 * template matcher the template evolved by the batch copy as if the frames
+	 * had been autotracked interactively.
+	 *
+	 * @param keyFrameData the key frame
+	 * @param original     the template matcher the copy was made from
+	 * @param copy         the evolved copy
+	 */
+	void finishBatch(KeyFrameData keyFrameData, TemplateMatcher original, TemplateMatcher copy) {
+		TemplateMatcher matcher = keyFrameData.getTemplateMatcher();
+		// the matcher is replaced if the key frame changed during the run
+		if (matcher == original && copy.getIndex() > matcher.getIndex()) {
+			matcher.setTemplate(copy.getTemplate());
+			matcher.setWorkingPixels(copy.getWorkingPixels());
+			matcher.setIndex(copy.getIndex());
+		}
+		wizard.refreshGUI();
+		repaint();
+	}
+
 	/**
 	 * Gets the search rectangle.
 	 *
@@ -836,6 +877,49 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		refreshSearchRect();
 	}
 
+	/**
+	 * Moves the search rectangle to a predicted match center. If the predictor
+	 * estimates its uncertainty, the rectangle is also resized to fit it, up to
+	 * the search size set in the key frame.
+	 *
+	 * @param center the predicted match center
+	 */
+	protected void setPredictedSearchPoints(TPoint center) {
+		KeyFrameData keyFrameData = getPanelKeyFrameData();
+		TPoint[] keyPts = (keyFrameData == null ? null : keyFrameData.getSearchPoints(false));
+		double[] halfSize = null;
+		if (keyPts != null && predictor instanceof KalmanPredictor) {
+			double maxHalfW = Math.abs(keyPts[1].x - keyPts[0].x);
+			double maxHalfH = Math.abs(keyPts[1].y - keyPts[0].y);
+			halfSize = ((KalmanPredictor) predictor).getSearchHalfSize(keyFrameData.getMask().getBounds(), maxHalfW,
+					maxHalfH);
+		}
+		if (halfSize == null)
+			setSearchPoints(center, null);
+		else
+			setSearchPoints(center, new TPoint(center.x + halfSize[0], center.y + halfSize[1]));
+	}
+
+	/**
+	 * Sets the target predictor type.
+	 *
+	 * @param kalman true to use a Kalman filter, false for finite differences
+	 */
+	public void setKalmanPredictor(boolean kalman) {
+		if (kalman == isKalmanPredictor())
+			return;
+		predictor = kalman ? new KalmanPredictor() : new TargetPredictor();
+	}
+
+	/**
+	 * Determines if the target predictor is a Kalman filter.
+	 *
+	 * @return true if Kalman
+	 */
+	public boolean isKalmanPredictor() {
+		return predictor instanceof KalmanPredictor;
+	}
+
 	protected Video getVideo() {
 		return frame.getTrackerPanelForID(panelID).getVideo();
 	}
@@ -893,7 +977,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 				else if (lookAhead && keyFrameData != null) {
 					TPoint prediction = getPredictedMatchTarget(n);
 					if (prediction != null) {
-						setSearchPoints(getMatchCenter(prediction), null);
+						setPredictedSearchPoints(getMatchCenter(prediction));
 						// save search center and corner points
 						TPoint[] pts = new TPoint[] { new TPoint(searchCenter), new TPoint(searchCorner) };
 						frameData.setSearchPoints(pts);
@@ -1071,51 +1155,130 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		matcher.setTemplate(frameData.getTemplateToMatch());
 
 		// get location, width and height of match
-		TPoint p = null;
-		BufferedImage image = getImage(video);
-		if (lineSpread >= 0) {
-			ImageCoordSystem coords = frame.getTrackerPanelForID(panelID).getCoords();
-			double theta = coords.getAngle(n);
-			double x0 = coords.getOriginX(n);
-			double y0 = coords.getOriginY(n);
-			int[][] searchPts = matcher.getSearchPoints(searchRect, x0, y0, theta, lineSpread);
-			p = matcher.getMatchLocation(image, searchRect, searchPts);
-		} else {
-			p = matcher.getMatchLocation(image, searchRect, null);
+		int[][] linePts = getLineSearchPoints(matcher, searchRect, trackerPanel().getCoords(), n, lineSpread);
+		TPoint p = getMatchLocation(matcher, getImage(video), searchRect, linePts, pyramidMatcher);
+		double[] matchWidthAndHeight = getMatchWidthAndHeight(matcher, linePts, pyramidMatcher);
+		TPoint[] matchPts = null;
+		if (p != null && matchWidthAndHeight[1] >= possibleMatch) {
+			Rectangle rect = frameData.getKeyFrameData().getMask().getBounds();
+			matchPts = getMatchPoints(p, rect, maskCenter, maskCorner, frameData.isKeyFrameData());
 		}
-		double[] matchWidthAndHeight = matcher.getMatchWidthAndHeight();
-		if (matchWidthAndHeight[1] < goodMatch && frameData.isAutoMarked()) {
-			frameData.trackPoint = null;
+		saveMatch(frameData, matchWidthAndHeight, matchPts, matcher.getMatchImage(),
+				matchWidthAndHeight[1] >= goodMatch);
+
+		// if good match found then build evolved template and return match target
+		if (matchPts != null && matchWidthAndHeight[1] >= goodMatch) {
+			buildEvolvedTemplateImage(frameData);
+			return getMatchTarget(matchPts[0]);
 		}
 
+		return null;
+	}
+
+	/**
+	 * Saves the result of a search in a FrameData. Used by both the interactive
+	 * search and BatchAutoTracker.
+	 *
+	 * @param frameData           the FrameData
+	 * @param matchWidthAndHeight the match peak width and height
+	 * @param matchPts            the match center, corner and location, or null if
+	 *                            no possible match was found
+	 * @param matchImage          the match image
+	 * @param good                true if the match is good enough to mark
+	 */
+	void saveMatch(FrameData frameData, double[] matchWidthAndHeight, TPoint[] matchPts, BufferedImage matchImage,
+			boolean good) {
+		if (!good && frameData.isAutoMarked()) {
+			frameData.trackPoint = null;
+		}
 		// save match data and searched frames
 		frameData.setMatchWidthAndHeight(matchWidthAndHeight);
 		frameData.searched = true;
-		// if p is null or match is poor, then clear match points
-		if (p == null || matchWidthAndHeight[1] < possibleMatch) {
+		// if no possible match, then clear match points
+		if (matchPts == null) {
 			frameData.setMatchPoints(null);
-			return null;
+			return;
 		}
-
 		// successfully found good or possible match: save match data
-		BufferedImage match = matcher.getMatchImage();
-		BufferedImage img = createMagnifiedImage(match);
+		BufferedImage img = createMagnifiedImage(matchImage);
 		frameData.setMatchIcon(new ImageIcon(img));
-		Rectangle rect = frameData.getKeyFrameData().getMask().getBounds();
+		frameData.setMatchPoints(matchPts);
+	}
+
+	/**
+	 * Gets the points along the x-axis to search for 1D tracking.
+	 *
+	 * @param matcher    the template matcher
+	 * @param searchRect the search rectangle
+	 * @param coords     the image coordinate system
+	 * @param n          the frame number
+	 * @param lineSpread the line spread, negative for 2D tracking
+	 * @return the search points, or null for 2D tracking
+	 */
+	static int[][] getLineSearchPoints(TemplateMatcher matcher, Rectangle searchRect, ImageCoordSystem coords,
+			int n, int lineSpread) {
+		if (lineSpread < 0)
+			return null;
+		double theta = coords.getAngle(n);
+		double x0 = coords.getOriginX(n);
+		double y0 = coords.getOriginY(n);
+		return matcher.getSearchPoints(searchRect, x0, y0, theta, lineSpread);
+	}
+
+	/**
+	 * Finds the best match for the current template within a search rectangle.
+	 * The peak width and height are then available from getMatchWidthAndHeight().
+	 *
+	 * @param matcher        the template matcher
+	 * @param image          the video image
+	 * @param searchRect     the search rectangle
+	 * @param linePts        the 1D search points, or null for 2D tracking
+	 * @param pyramidMatcher the pyramid matcher for 2D tracking
+	 * @return the match location, or null if none found
+	 */
+	static TPoint getMatchLocation(TemplateMatcher matcher, BufferedImage image, Rectangle searchRect,
+			int[][] linePts, PyramidMatcher pyramidMatcher) {
+		if (linePts != null)
+			return matcher.getMatchLocation(image, searchRect, linePts);
+		if (pyramidMatcher.getLevels() > 0)
+			return pyramidMatcher.getMatchLocation(matcher, image, searchRect);
+		return matcher.getMatchLocation(image, searchRect, null);
+	}
+
+	/**
+	 * Gets the peak width and height of a match found by getMatchLocation(). The
+	 * height of a pyramid match is rescaled to the whole search area so it
+	 * compares with the match thresholds as a full-resolution match does.
+	 *
+	 * @param matcher        the template matcher
+	 * @param linePts        the 1D search points, or null for 2D tracking
+	 * @param pyramidMatcher the pyramid matcher for 2D tracking
+	 * @return {width, height}
+	 */
+	static double[] getMatchWidthAndHeight(TemplateMatcher matcher, int[][] linePts, PyramidMatcher pyramidMatcher) {
+		if (linePts == null && pyramidMatcher.getLevels() > 0)
+			return pyramidMatcher.getMatchWidthAndHeight(matcher);
+		return matcher.getMatchWidthAndHeight();
+	}
+
+	/**
+	 * Gets the match center, corner and location for a match.
+	 *
+	 * @param p          the match location
+	 * @param maskBounds the bounds of the key frame mask
+	 * @param maskCenter the key frame mask center
+	 * @param maskCorner the key frame mask corner
+	 * @param isKeyFrame true if the match is in the key frame
+	 * @return {center, corner, location}
+	 */
+	static TPoint[] getMatchPoints(TPoint p, Rectangle maskBounds, TPoint maskCenter, TPoint maskCorner,
+			boolean isKeyFrame) {
 		// we know that for key frames the fit is perfect so match center = mask center
-		TPoint center = frameData.isKeyFrameData()? new TPoint(maskCenter):
-				new TPoint(p.x + maskCenter.x - rect.getX(), p.y + maskCenter.y - rect.getY());
+		TPoint center = isKeyFrame ? new TPoint(maskCenter)
+				: new TPoint(p.x + maskCenter.x - maskBounds.getX(), p.y + maskCenter.y - maskBounds.getY());
 		TPoint corner = new TPoint(center.x + cornerFactor * (maskCorner.x - maskCenter.x),
 				center.y + cornerFactor * (maskCorner.y - maskCenter.y));
-		frameData.setMatchPoints(new TPoint[] { center, corner, p });
-
-		// if good match found then build evolved template and return match target
-		if (matchWidthAndHeight[1] >= goodMatch) {
-			buildEvolvedTemplateImage(frameData);
-			return getMatchTarget(center);
-		}
-
-		return null;
+		return new TPoint[] { center, corner, p };
 	}
 
 	private BufferedImage getImage(Video video) {
@@ -1133,16 +1296,36 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		TPoint[] matchPts = frameData.getMatchPoints();
 		if (matchPts == null)
 			return null; // can't build template without a match
-		TemplateMatcher matcher = getTemplateMatcher();
-		matcher.setTemplate(frameData.getTemplateImage());
-		matcher.setWorkingPixels(frameData.getWorkingPixels());
 		Rectangle rect = frameData.getKeyFrameData().getMask().getBounds();
+		return buildEvolvedTemplate(getTemplateMatcher(), frameData.getTemplateImage(), frameData.getWorkingPixels(),
+				getVideo().getImage(), rect, matchPts[2], evolveAlpha, tetherAlpha, frameData.getFrameNumber());
+	}
+
+	/**
+	 * Evolves a template toward the image at a match location.
+	 *
+	 * @param matcher       the template matcher
+	 * @param template      the template that was matched
+	 * @param workingPixels the working pixels used to build the template
+	 * @param image         the video image
+	 * @param maskBounds    the bounds of the key frame mask
+	 * @param matchLoc      the match location
+	 * @param evolveAlpha   the evolution alpha
+	 * @param tetherAlpha   the tether alpha
+	 * @param n             the frame number
+	 * @return the evolved template
+	 */
+	static BufferedImage buildEvolvedTemplate(TemplateMatcher matcher, BufferedImage template, int[] workingPixels,
+			BufferedImage image, Rectangle maskBounds, TPoint matchLoc, int evolveAlpha, int tetherAlpha, int n) {
+		matcher.setTemplate(template);
+		matcher.setWorkingPixels(workingPixels);
 		// get new image to rebuild template
-		rect.x = (int) Math.round(matchPts[2].getX());
-		rect.y = (int) Math.round(matchPts[2].getY());
-		BufferedImage image = matcher.buildTemplate(newVideoImage(rect), evolveAlpha, tetherAlpha);
-		matcher.setIndex(frameData.getFrameNumber());
-		return image;
+		Rectangle rect = new Rectangle(maskBounds);
+		rect.x = (int) Math.round(matchLoc.getX());
+		rect.y = (int) Math.round(matchLoc.getY());
+		BufferedImage evolved = matcher.buildTemplate(getSubimage(image, rect), evolveAlpha, tetherAlpha);
+		matcher.setIndex(n);
+		return evolved;
 	}
 
 	/**
@@ -1164,9 +1347,20 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	}
 
 	private BufferedImage newVideoImage(Rectangle rect) {
+		return getSubimage(getVideo().getImage(), rect);
+	}
+
+	/**
+	 * Copies a rectangle of an image into a new TYPE_INT_RGB image.
+	 *
+	 * @param source the source image
+	 * @param rect   the rectangle
+	 * @return the copy
+	 */
+	static BufferedImage getSubimage(BufferedImage source, Rectangle rect) {
 		BufferedImage image = new BufferedImage(rect.width, rect.height, BufferedImage.TYPE_INT_RGB);
 		Graphics2D g = image.createGraphics();
-		g.drawImage(getVideo().getImage(), -rect.x, -rect.y, null);
+		g.drawImage(source, -rect.x, -rect.y, null);
 		g.dispose();
 		return image;
 	}
@@ -1178,11 +1372,21 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	 * 
 	 * @return map
 	 */
-	protected Map<Integer, Map<Integer, FrameData>> getMapOfIndexToMapofIndexToFrameData() {
-		TTrack track = getTrack();
-		Map<Integer, Map<Integer, FrameData>> map = trackDataMap.get(track);
+	protected Map<Integer, FrameDataMap> getMapOfIndexToMapofIndexToFrameData() {
+		return getMapOfIndexToMapofIndexToFrameData(getTrack());
+	}
+
+	/**
+	 * Get or create for a track a Map of point index to FrameDataMap, caching this
+	 * in trackDataMap
+	 * 
+	 * @param track the track
+	 * @return map
+	 */
+	protected Map<Integer, FrameDataMap> getMapOfIndexToMapofIndexToFrameData(TTrack track) {
+		Map<Integer, FrameDataMap> map = trackDataMap.get(track);
 		if (map == null) {
-			trackDataMap.put(track, map = new TreeMap<Integer, Map<Integer, FrameData>>());
+			trackDataMap.put(track, map = new TreeMap<Integer, FrameDataMap>());
 		}
 		return map;
 	}
@@ -1195,10 +1399,22 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	 * @param index
 	 * @return
 	 */
-	protected Map<Integer, FrameData> getIndexToFrameDataMap(int index) {
-		Map<Integer, FrameData> map = getMapOfIndexToMapofIndexToFrameData().get(index);
+	protected FrameDataMap getIndexToFrameDataMap(int index) {
+		return getIndexToFrameDataMap(getTrack(), index);
+	}
+
+	/**
+	 * Get or create the FrameDataMap for a point of a track.
+	 * 
+	 * @param track the track
+	 * @param index the point index
+	 * @return the map
+	 */
+	protected FrameDataMap getIndexToFrameDataMap(TTrack track, int index) {
+		Map<Integer, FrameDataMap> maps = getMapOfIndexToMapofIndexToFrameData(track);
+		FrameDataMap map = maps.get(index);
 		if (map == null) {
-			getMapOfIndexToMapofIndexToFrameData().put(index, map = new TreeMap<Integer, FrameData>());
+			maps.put(index, map = new FrameDataMap());
 		}
 		return map;
 	}
@@ -1209,7 +1425,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	 * 
 	 * @return
 	 */
-	protected Map<Integer, FrameData> getTrackTargetIndexToFrameDataMap() {
+	protected FrameDataMap getTrackTargetIndexToFrameDataMap() {
 		TTrack track = getTrack();
 		return getIndexToFrameDataMap(track == null ? 0 : track.getTargetIndex());
 	}
@@ -1272,23 +1488,34 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	 * @return
 	 */
 	protected FrameData getOrCreateFrameData(int frameNumber) {
-		Map<Integer, FrameData> map = getTrackTargetIndexToFrameDataMap();
+		TTrack track = getTrack();
+		return getOrCreateFrameData(track, track == null ? 0 : track.getTargetIndex(), frameNumber);
+	}
+
+	/**
+	 * Get or create a new FrameData object for a given point of a track and frame
+	 * number. Used by BatchAutoTracker for track points other than the current
+	 * one.
+	 * 
+	 * @param track       the track
+	 * @param index       the point index
+	 * @param frameNumber the frame number
+	 * @return the FrameData
+	 */
+	protected FrameData getOrCreateFrameData(TTrack track, int index, int frameNumber) {
+		Map<Integer, FrameData> map = getIndexToFrameDataMap(track, index);
 		FrameData frameData = map.get(frameNumber);
 		if (frameData == null) {
-			TTrack track = getTrack();
-			int index = (track == null ? 0 : track.getTargetIndex());
-			frameData = new FrameData(index, frameNumber);
+			frameData = new FrameData(track, index, frameNumber);
 			map.put(frameNumber, frameData);
 		}
 		return frameData;
 	}
 
 	protected FrameData getOrCreatePreviousFrameData(int frameNumber) {
-		for (int i = frameNumber; --i >= 0;) {
-			FrameData frameData = getTrackTargetIndexToFrameDataMap().get(i);
-			if (frameData != null)
-				return frameData;
-		}
+		Entry<Integer, FrameData> e = getTrackTargetIndexToFrameDataMap().lowerEntry(frameNumber);
+		if (e != null)
+			return e.getValue();
 		return getOrCreateFrameData(frameNumber);
 	}
 
@@ -1731,7 +1958,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	}
 
 	protected static boolean mayLeaveGaps() {
-		return neverPause || autoSkip;
+		return neverPause || autoSkip || BatchAutoTracker.isRunning();
 	}
 
 	protected boolean isDrawingKeyFrameFor(TTrack track, int index) {
@@ -1757,9 +1984,19 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	}
 
 	protected boolean moveRectIntoImage(Rectangle2D searchRect) {
-		// if needed, modify search rectangle to keep it within the video image
 		// get dimensions of video image after filters applied
-		Dimension d = getVideo().getImageSize(true);
+		return moveRectIntoImage(searchRect, getVideo().getImageSize(true));
+	}
+
+	/**
+	 * Moves and if needed shrinks a search rectangle to keep it within an image.
+	 *
+	 * @param searchRect the search rectangle
+	 * @param d          the image size
+	 * @return true if the rectangle was changed
+	 */
+	static boolean moveRectIntoImage(Rectangle2D searchRect, Dimension d) {
+		// if needed, modify search rectangle to keep it within the video image
 		int w = d.width;
 		int h = d.height;
 		Point2D corner = new Point2D.Double(searchRect.getX(), searchRect.getY());
@@ -1797,84 +2034,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	 * @return the derivative data
 	 */
 	protected double[][] getDerivatives(TPoint[] positions, int order) {
-		// return null if insufficient data
-		if (positions.length < order + 1)
-			return null;
-
-		if (order == 1) { // velocity
-			for (int i = 0; i < derivatives1.length; i++) {
-				if (i >= positions.length - 1) {
-					derivatives1[i] = null;
-					continue;
-				}
-				TPoint loc0 = positions[i + 1];
-				TPoint loc1 = positions[i];
-				if (loc0 == null || loc1 == null) {
-					derivatives1[i] = null;
-					continue;
-				}
-				double x = loc1.getX() - loc0.getX();
-				double y = loc1.getY() - loc0.getY();
-				if (derivatives1[i] == null) {
-					derivatives1[i] = new double[] { x, y };
-				} else {
-					derivatives1[i][0] = x;
-					derivatives1[i][1] = y;
-
-				}
-			}
-			return derivatives1;
-		} else if (order == 2) { // acceleration
-			for (int i = 0; i < derivatives2.length; i++) {
-				if (i >= positions.length - 2) {
-					derivatives2[i] = null;
-					continue;
-				}
-				TPoint loc0 = positions[i + 2];
-				TPoint loc1 = positions[i + 1];
-				TPoint loc2 = positions[i];
-				if (loc0 == null || loc1 == null || loc2 == null) {
-					derivatives2[i] = null;
-					continue;
-				}
-				double x = loc2.getX() - 2 * loc1.getX() + loc0.getX();
-				double y = loc2.getY() - 2 * loc1.getY() + loc0.getY();
-				if (derivatives2[i] == null) {
-					derivatives2[i] = new double[] { x, y };
-				} else {
-					derivatives2[i][0] = x;
-					derivatives2[i][1] = y;
-
-				}
-			}
-			return derivatives2;
-		} else if (order == 3) { // jerk
-			for (int i = 0; i < derivatives3.length; i++) {
-				if (i >= positions.length - 3) {
-					derivatives3[i] = null;
-					continue;
-				}
-				TPoint loc0 = positions[i + 3];
-				TPoint loc1 = positions[i + 2];
-				TPoint loc2 = positions[i + 1];
-				TPoint loc3 = positions[i];
-				if (loc0 == null || loc1 == null || loc2 == null || loc3 == null) {
-					derivatives3[i] = null;
-					continue;
-				}
-				double x = loc3.getX() - 3 * loc2.getX() + 3 * loc1.getX() - loc0.getX();
-				double y = loc3.getY() - 3 * loc2.getY() + 3 * loc1.getY() - loc0.getY();
-				if (derivatives3[i] == null) {
-					derivatives3[i] = new double[] { x, y };
-				} else {
-					derivatives3[i][0] = x;
-					derivatives3[i][1] = y;
-
-				}
-			}
-			return derivatives3;
-		}
-		return null;
+		return predictor.getDerivatives(positions, order);
 	}
 
 	abstract protected class ATObject extends TPoint {
@@ -2017,7 +2177,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 	 */
 	protected class FrameData {
 
-		private int index, frameNum, matcherHashCode;
+		private int trackID, index, frameNum, matcherHashCode;
 		private int[] templateAlphas = new int[2];
 		private double[] targetOffset = { 0, 0 };
 		private double[] matchWidthAndHeight;
@@ -2034,12 +2194,14 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 							// calibration tools and axes
 		int[] workingPixels;
 
-		FrameData(int pointIndex, int frameNumber) {
+		FrameData(TTrack track, int pointIndex, int frameNumber) {
+			trackID = (track == null ? -1 : track.getID());
 			index = pointIndex;
 			frameNum = frameNumber;
 		}
 
 		FrameData(KeyFrameData keyFrame) {
+			trackID = ((FrameData) keyFrame).trackID;
 			index = keyFrame.getIndex();
 			frameNum = keyFrame.getFrameNumber();
 			matchWidthAndHeight = keyFrame.getMatchWidthAndHeight();
@@ -2120,9 +2282,19 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		 * exists.
 		 */
 		BufferedImage getTemplateToMatch() {
-			if (templateImage == null || newTemplateExists()) {
+			return getTemplateToMatch(getTemplateMatcher());
+		}
+
+		/**
+		 * Returns the template to match with a given template matcher. Replaces the
+		 * existing template if the matcher has a new one.
+		 * 
+		 * @param matcher the key frame template matcher or a copy of it
+		 */
+		BufferedImage getTemplateToMatch(TemplateMatcher matcher) {
+			if (templateImage == null || newTemplateExists(matcher)) {
 				// replace current template with new one
-				setTemplate(getTemplateMatcher());
+				setTemplate(matcher);
 			}
 			return templateImage;
 		}
@@ -2131,9 +2303,18 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		 * Returns true if the evolved template is both different and appropriate.
 		 */
 		boolean newTemplateExists() {
+			return newTemplateExists(getTemplateMatcher());
+		}
+
+		/**
+		 * Returns true if the evolved template of a given template matcher is both
+		 * different and appropriate.
+		 * 
+		 * @param matcher the key frame template matcher or a copy of it
+		 */
+		boolean newTemplateExists(TemplateMatcher matcher) {
 			if (isKeyFrameData())
 				return false;
-			TemplateMatcher matcher = getTemplateMatcher();
 			if (matcher == null)
 				return false;
 			boolean different = matcher.getAlphas()[0] != templateAlphas[0]
@@ -2173,21 +2354,14 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 
 		void setSearchPoints(TPoint[] points) {
 			searchPoints = points;
+			getMyFrameDataMap().refreshSearchIndex(this);
 		}
 
 		TPoint[] getSearchPoints(boolean inherit) {
 			if (!inherit || searchPoints != null || isKeyFrameData())
 				return searchPoints;
-			Map<Integer, FrameData> map = getMyFrameDataMap();
-			for (int i = frameNum + 1; --i >= 0;) {
-				FrameData frameData = map.get(i);
-				if (frameData != null) {
-					if (frameData.searchPoints != null || frameData.isKeyFrameData()) {
-						return frameData.searchPoints;
-					}
-				}
-			}
-			return null;
+			FrameData frameData = getMyFrameDataMap().getSearchFrameData(frameNum);
+			return frameData == null ? null : frameData.searchPoints;
 		}
 
 		void setMatchPoints(TPoint[] points) {
@@ -2206,28 +2380,18 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 			return matchWidthAndHeight;
 		}
 
-		protected Map<Integer, FrameData> getMyFrameDataMap() {
-			return getIndexToFrameDataMap(index);
+		protected FrameDataMap getMyFrameDataMap() {
+			return getIndexToFrameDataMap(TTrack.getTrack(trackID), index);
 		}
 
 		KeyFrameData getKeyFrameData() {
 			if (isKeyFrameData())
 				return (KeyFrameData) this;
-			Map<Integer, FrameData> map = getMyFrameDataMap();
-			for (int i = frameNum + 1; --i >= 0;) {
-				FrameData frameData = map.get(i);
-				if (frameData != null && frameData.isKeyFrameData())
-					return (KeyFrameData) frameData;
-			}
-			return null;
+			return getMyFrameDataMap().getKeyFrameData(frameNum);
 		}
 
 		boolean hasKeyFrames() {
-			for (Entry<Integer, FrameData> e : getTrackTargetIndexToFrameDataMap().entrySet()) {
-				if (e.getValue().isKeyFrameData())
-					return true;
-			}
-			return false;
+			return getMyFrameDataMap().hasKeyFrames();
 		}
 
 		int getIndex() {
@@ -2235,7 +2399,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		}
 
 		boolean isMarked() {
-			TTrack track = getTrack();
+			TTrack track = TTrack.getTrack(trackID);
 			return track != null && track.getStep(frameNum) != null;
 		}
 
@@ -2272,7 +2436,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 				return null;
 			if (trackPoint != null)
 				return trackPoint;
-			TTrack track = getTrack();
+			TTrack track = TTrack.getTrack(trackID);
 			return track.getMarkedPoint(frameNum, index);
 		}
 
@@ -2292,10 +2456,124 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 				evolvedIcon = null;
 				templateAlphas = new int[] { 0, 0 };
 				templateImage = null;
+				getMyFrameDataMap().refreshSearchIndex(this);
 			}
 		}
 	}
 
+	/**
+	 * A map of frame number to FrameData for a single track point. It keeps
+	 * sparse indexes of the key frames and of the frames that define search
+	 * points, so finding the most recent one is a floor lookup rather than a
+	 * backward scan over frame numbers. Entries must be removed with remove() or
+	 * clear() to keep the indexes current.
+	 */
+	@SuppressWarnings("serial")
+	protected static class FrameDataMap extends TreeMap<Integer, FrameData> {
+
+		private TreeMap<Integer, KeyFrameData> keyFrames = new TreeMap<Integer, KeyFrameData>();
+		private TreeMap<Integer, FrameData> searchFrames = new TreeMap<Integer, FrameData>();
+
+		@Override
+		public FrameData put(Integer n, FrameData frameData) {
+			FrameData prev = super.put(n, frameData);
+			if (frameData.isKeyFrameData())
+				keyFrames.put(n, (KeyFrameData) frameData);
+			else
+				keyFrames.remove(n);
+			refreshSearchIndex(n, frameData);
+			return prev;
+		}
+
+		@Override
+		public FrameData remove(Object n) {
+			keyFrames.remove(n);
+			searchFrames.remove(n);
+			return super.remove(n);
+		}
+
+		@Override
+		public void clear() {
+			super.clear();
+			keyFrames.clear();
+			searchFrames.clear();
+		}
+
+		/**
+		 * Updates the search point index after a FrameData's search points change.
+		 *
+		 * @param frameData the FrameData
+		 */
+		void refreshSearchIndex(FrameData frameData) {
+			int n = frameData.getFrameNumber();
+			if (get(n) == frameData)
+				refreshSearchIndex(n, frameData);
+		}
+
+		private void refreshSearchIndex(int n, FrameData frameData) {
+			if (frameData.searchPoints != null || frameData.isKeyFrameData())
+				searchFrames.put(n, frameData);
+			else
+				searchFrames.remove(n);
+		}
+
+		/**
+		 * Gets the latest key frame at or before a frame.
+		 *
+		 * @param n the frame number
+		 * @return the KeyFrameData, or null if none
+		 */
+		KeyFrameData getKeyFrameData(int n) {
+			Entry<Integer, KeyFrameData> e = keyFrames.floorEntry(n);
+			return e == null ? null : e.getValue();
+		}
+
+		/**
+		 * Determines if there is a key frame before a frame.
+		 *
+		 * @param n the frame number
+		 * @return true if an earlier key frame exists
+		 */
+		boolean hasKeyFrameBefore(int n) {
+			return keyFrames.lowerKey(n) != null;
+		}
+
+		boolean hasKeyFrames() {
+			return !keyFrames.isEmpty();
+		}
+
+		/**
+		 * Gets the first key frame after a frame.
+		 *
+		 * @param n the frame number
+		 * @return the key frame number, or null if none
+		 */
+		Integer getNextKeyFrameNumber(int n) {
+			return keyFrames.higherKey(n);
+		}
+
+		/**
+		 * Gets the latest FrameData at or before a frame that has search points or
+		 * is a key frame.
+		 *
+		 * @param n the frame number
+		 * @return the FrameData, or null if none
+		 */
+		FrameData getSearchFrameData(int n) {
+			Entry<Integer, FrameData> e = searchFrames.floorEntry(n);
+			return e == null ? null : e.getValue();
+		}
+
+		/**
+		 * Gets the key frame numbers in order.
+		 *
+		 * @return the frame numbers
+		 */
+		Set<Integer> getKeyFrameNumbers() {
+			return keyFrames.keySet();
+		}
+	}
+
 	/**
 	 * A class to hold keyframe data.
 	 */
@@ -2307,7 +2585,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		private TemplateMatcher matcher;
 
 		KeyFrameData(TPoint keyPt, Shape mask, Target target) {
-			super(AutoTracker.this.getStepPointIndex(keyPt), keyPt.getFrameNumber(trackerPanel()));
+			super(AutoTracker.this.getTrack(), AutoTracker.this.getStepPointIndex(keyPt), keyPt.getFrameNumber(trackerPanel()));
 			this.mask = mask;
 			this.target = target;
 			maskPoints[0].setLocation(maskCenter);
@@ -2336,13 +2614,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		}
 
 		boolean isFirstKeyFrameData() {
-			Map<Integer, FrameData> map = getMyFrameDataMap();
-			for (int i = getFrameNumber(); --i >= 0;) {
-				FrameData frameData = map.get(i);
-				if (frameData != null && frameData.isKeyFrameData())
-					return false;
-			}
-			return true;
+			return !getMyFrameDataMap().hasKeyFrameBefore(getFrameNumber());
 		}
 
 	}
@@ -2355,20 +2627,21 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		// instance fields
 		private JButton startButton, searchNextButton, searchThisButton;
 		private JPopupMenu popup;
+		private MultiTargetAutoTracker backgroundTracker; // non-null while searching in background
 		private JButton closeButton, helpButton, deleteButton, keyFrameButton;
 		private JButton acceptButton, skipButton;
-		private JSpinner evolveSpinner, acceptSpinner, tetherSpinner;
+		private JSpinner evolveSpinner, acceptSpinner, tetherSpinner, pyramidSpinner;
 		private JComboBox<Object> trackDropdown, pointDropdown;
 		private boolean isVisible, changed, hidePopup;
 		private JTextArea textPane;
 		protected JToolBar templateToolbar, searchToolbar, targetToolbar, imageToolbar, trackToolbar;
 		private JPanel startPanel, followupPanel, infoPanel, northPanel, targetPanel;
 		private JLabel templateImageLabel, matchImageLabel, evolvedImageLabel, keyImageLabel;
-		private JLabel acceptLabel, templateLabel;
+		private JLabel acceptLabel, templateLabel, pyramidLabel;
 		private JLabel frameLabel, evolveLabel, tetherLabel, searchLabel, targetLabel;
 		private JLabel pointLabel, trackLabel;
 		protected Dimension textPaneSize;
-		private JCheckBox lookAheadCheckbox, oneDCheckbox, autoSkipCheckbox;
+		private JCheckBox lookAheadCheckbox, oneDCheckbox, autoSkipCheckbox, kalmanCheckbox;
 		private Object mouseOverObj;
 		private MouseAdapter mouseOverListener;
 		private Timer mouseOverTimer, evolveTemplateTimer;
@@ -2885,6 +3158,14 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 				lookAhead = lookAheadCheckbox.isSelected();
 				setChanged();
 			});
+			kalmanCheckbox = new JCheckBox();
+			kalmanCheckbox.addMouseListener(mouseOverListener);
+			kalmanCheckbox.setOpaque(false);
+			kalmanCheckbox.setSelected(isKalmanPredictor());
+			kalmanCheckbox.addActionListener((e) -> {
+				setKalmanPredictor(kalmanCheckbox.isSelected());
+				setChanged();
+			});
 			autoSkipCheckbox = new JCheckBox();
 			autoSkipCheckbox.addMouseListener(mouseOverListener);
 			autoSkipCheckbox.setOpaque(false);
@@ -2892,12 +3173,31 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 			autoSkipCheckbox.addActionListener((e) -> {
 				autoSkip = autoSkipCheckbox.isSelected();
 			});
+			pyramidLabel = new JLabel();
+			pyramidLabel.setOpaque(false);
+			pyramidLabel.addMouseListener(mouseOverListener);
+			pyramidLabel.setBorder(BorderFactory.createEmptyBorder(0, 6, 0, 0));
+			pyramidSpinner = new TallSpinner(
+					new SpinnerNumberModel(pyramidMatcher.getLevels(), 0, PyramidMatcher.MAX_LEVELS, 1), trackDropdown);
+			for (int j = 0; j < pyramidSpinner.getComponentCount(); j++)
+				pyramidSpinner.getComponent(j).addMouseListener(mouseOverListener);
+			JFormattedTextField pyramidField = ((JSpinner.DefaultEditor) pyramidSpinner.getEditor()).getTextField();
+			pyramidField.addMouseListener(mouseOverListener);
+			pyramidField.setEnabled(false);
+			pyramidField.setDisabledTextColor(Color.BLACK);
+			pyramidSpinner.addChangeListener((e) -> {
+				pyramidMatcher.setLevels((Integer) pyramidSpinner.getValue());
+				setChanged();
+			});
 			flowpanel = new JPanel();
 			flowpanel.setBorder(BorderFactory.createEmptyBorder(1, 0, 0, 0));
 			flowpanel.setOpaque(false);
 			flowpanel.add(oneDCheckbox);
 			flowpanel.add(lookAheadCheckbox);
+			flowpanel.add(kalmanCheckbox);
 			flowpanel.add(autoSkipCheckbox);
+			flowpanel.add(pyramidLabel);
+			flowpanel.add(pyramidSpinner);
 			searchToolbar.add(searchLabel);
 			searchToolbar.add(flowpanel);
 
@@ -3123,6 +3423,18 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 						}
 					});
 					popup.add(item);
+					item = new JMenuItem(TrackerRes.getString("AutoTracker.Wizard.Menuitem.SearchInBackground")); //$NON-NLS-1$
+					item.setToolTipText(TrackerRes.getString("AutoTracker.Wizard.MenuItem.SearchInBackground.Tooltip")); //$NON-NLS-1$
+					item.addActionListener((e2) -> {
+						searchInBackgroundAction(false);
+					});
+					popup.add(item);
+					item = new JMenuItem(TrackerRes.getString("AutoTracker.Wizard.Menuitem.SearchAllInBackground")); //$NON-NLS-1$
+					item.setToolTipText(TrackerRes.getString("AutoTracker.Wizard.MenuItem.SearchAllInBackground.Tooltip")); //$NON-NLS-1$
+					item.addActionListener((e2) -> {
+						searchInBackgroundAction(true);
+					});
+					popup.add(item);
 					popup.addSeparator();
 					item = new JMenuItem(TrackerRes.getString("AutoTracker.Wizard.Menuitem.CopyMatchScores")); //$NON-NLS-1$
 					item.setToolTipText(TrackerRes.getString("AutoTracker.Wizard.MenuItem.CopyMatchScores.Tooltip")); //$NON-NLS-1$
@@ -3145,17 +3457,50 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 			}
 		}
 
+		/**
+		 * Autotracks the frames after the key frame on a worker thread without
+		 * stepping the video player, showing the progress in a ProgressMonitor.
+		 * 
+		 * @param allTargets true to autotrack every track point with key frames,
+		 *                   false for the current track point only
+		 */
+		protected void searchInBackgroundAction(boolean allTargets) {
+			hidePopup = false;
+			if (backgroundTracker != null)
+				return;
+			MultiTargetAutoTracker tracker;
+			if (allTargets) {
+				tracker = createMultiTargetTracker();
+			} else {
+				BatchAutoTracker target = createBatchTracker();
+				tracker = (target == null ? null
+						: new MultiTargetAutoTracker(trackerPanel(), Collections.singletonList(target)));
+			}
+			if (tracker == null)
+				return;
+			backgroundTracker = tracker;
+			BatchAutoTracker.runInBackground(this,
+					TrackerRes.getString("AutoTracker.Wizard.ProgressMonitor.Message"), tracker, () -> { //$NON-NLS-1$
+						backgroundTracker = null;
+						refreshGUI();
+						if (tracker.getError() != null) {
+							JOptionPane.showMessageDialog(this,
+									TrackerRes.getString("AutoTracker.Wizard.Dialog.SearchFailed.Message") //$NON-NLS-1$
+											+ XML.NEW_LINE + tracker.getError(),
+									TrackerRes.getString("AutoTracker.Wizard.Title"), //$NON-NLS-1$
+									JOptionPane.WARNING_MESSAGE);
+						}
+					});
+			refreshGUI();
+		}
+
 		protected void deleteLaterAction() {
 			// clear later matches and steps
 			Integer n = trackerPanel().getFrameNumber();
-			Map<Integer, FrameData> map = getTrackTargetIndexToFrameDataMap();
-			Iterator<Entry<Integer, FrameData>> iter = map.entrySet().iterator();
-			while (iter.hasNext()) {
-				Entry<Integer, FrameData> e = iter.next();
-				if (e.getKey().compareTo(n) == 1) {
-					e.getValue().clear();
-					iter.remove();
-				}
+			FrameDataMap map = getTrackTargetIndexToFrameDataMap();
+			for (Integer i : new ArrayList<Integer>(map.tailMap(n, false).keySet())) {
+				map.get(i).clear();
+				map.remove(i);
 			}
 			TTrack track = getTrack();
 			boolean isAlwaysMarked = (track.steps.isAutofill() || track.ttype == TTrack.TYPE_COORDAXES);
@@ -3262,12 +3607,8 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 
 		protected void keyFrameButtonAction() {
 			// find all key frames
-			ArrayList<Integer> keyFrames = new ArrayList<Integer>();
-			Map<Integer, FrameData> map = getTrackTargetIndexToFrameDataMap();
-			for (Entry<Integer, FrameData> e : map.entrySet()) {
-				if (e.getValue().isKeyFrameData())
-					keyFrames.add(e.getKey());
-			}
+			ArrayList<Integer> keyFrames = new ArrayList<Integer>(
+					getTrackTargetIndexToFrameDataMap().getKeyFrameNumbers());
 			JPopupMenu popup = new JPopupMenu();
 			for (Integer i : keyFrames) {
 				String si = i.toString();
@@ -3294,7 +3635,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 		protected void deleteKeyFrameAction() {
 			int n = trackerPanel().getFrameNumber();
 			KeyFrameData keyFrameData = getOrCreateFrameData(n).getKeyFrameData();
-			Map<Integer, FrameData> map = getTrackTargetIndexToFrameDataMap();
+			FrameDataMap map = getTrackTargetIndexToFrameDataMap();
 			Integer nextKey = null; // later key frame, if any
 
 			// if this is first key frame, look for later one
@@ -3329,13 +3670,10 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 				maskCenter.setLocation(keyFrameData.getMaskPoints()[0]);
 				maskCorner.setLocation(keyFrameData.getMaskPoints()[1]);
 			} else { // no earlier key frame, so clear all matches up to nextKey
-				Iterator<Entry<Integer, FrameData>> iter = map.entrySet().iterator();
-				while (iter.hasNext()) {
-					Entry<Integer, FrameData> e = iter.next();
-					if (nextKey != null && e.getKey().compareTo(nextKey) >= 0)
-						break;
-					e.getValue().clear();
-					iter.remove();
+				Map<Integer, FrameData> earlier = (nextKey == null ? map : map.headMap(nextKey, false));
+				for (Integer i : new ArrayList<Integer>(earlier.keySet())) {
+					map.get(i).clear();
+					map.remove(i);
 				}
 			}
 
@@ -3428,9 +3766,14 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 			oneDCheckbox.setToolTipText(TrackerRes.getString("AutoTracker.Wizard.Checkbox.XAxis.Tooltip")); //$NON-NLS-1$
 			lookAheadCheckbox.setText(TrackerRes.getString("AutoTracker.Wizard.Checkbox.LookAhead")); //$NON-NLS-1$
 			lookAheadCheckbox.setToolTipText(TrackerRes.getString("AutoTracker.Wizard.Checkbox.LookAhead.Tooltip")); //$NON-NLS-1$
+			kalmanCheckbox.setText(TrackerRes.getString("AutoTracker.Wizard.Checkbox.Kalman")); //$NON-NLS-1$
+			kalmanCheckbox.setToolTipText(TrackerRes.getString("AutoTracker.Wizard.Checkbox.Kalman.Tooltip")); //$NON-NLS-1$
 			autoSkipCheckbox.setText(TrackerRes.getString("AutoTracker.Wizard.Checkbox.SkipPossibleMatches")); //$NON-NLS-1$
 			autoSkipCheckbox
 					.setToolTipText(TrackerRes.getString("AutoTracker.Wizard.Checkbox.SkipPossibleMatches.Tooltip")); //$NON-NLS-1$
+			pyramidLabel.setText(TrackerRes.getString("AutoTracker.Wizard.Label.PyramidLevels")); //$NON-NLS-1$
+			pyramidLabel.setToolTipText(TrackerRes.getString("AutoTracker.Wizard.Label.PyramidLevels.Tooltip")); //$NON-NLS-1$
+			pyramidSpinner.setToolTipText(TrackerRes.getString("AutoTracker.Wizard.Label.PyramidLevels.Tooltip")); //$NON-NLS-1$
 			matchImageLabel
 					.setText(frameData.getMatchIcon() == null ? null : TrackerRes.getString("AutoTracker.Label.Match")); //$NON-NLS-1$
 			templateImageLabel
@@ -3496,10 +3839,11 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 			boolean stable = frameData.searched && !frameData.newTemplateExists();
 			boolean canSearchThis = !stable || code == 5 || (changed && code != 0)
 					|| (frameData == keyFrameData && frameData.getMarkedPoint() == null);
-			startButton.setEnabled(initialized);
+			boolean idle = (backgroundTracker == null);
+			startButton.setEnabled(initialized && idle);
 			searchThisButton.setName(initialized && notStepping && canSearchThis ? null : "back");
-			searchThisButton.setEnabled(trackerPanel().getStepNumber() > 0);
-			searchNextButton.setEnabled(initialized && canStep() && notStepping);
+			searchThisButton.setEnabled(trackerPanel().getStepNumber() > 0 && idle);
+			searchNextButton.setEnabled(initialized && canStep() && notStepping && idle);
 
 			// refresh template image labels and panel
 			if (templateImageLabel.getIcon() == null && matchImageLabel.getIcon() == null) {
@@ -4008,6 +4352,7 @@ public class AutoTracker implements Interactive, Trackable, PropertyChangeListen
 			evolveLabel.setEnabled(!fixed);
 			tetherLabel.setEnabled(!fixed);
 			lookAheadCheckbox.setEnabled(!fixed);
+			kalmanCheckbox.setEnabled(!fixed);
 			oneDCheckbox.setEnabled(!fixed);
 			autoSkipCheckbox.setEnabled(!fixed);
 			JFormattedTextField tf = ((JSpinner.DefaultEditor) evolveSpinner.getEditor()).getTextField();
@@ -0,0 +1,846 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+
+import org.opensourcephysics.controls.XMLControl;
+import org.opensourcephysics.controls.XMLControlElement;
+import org.opensourcephysics.media.core.ImageCoordSystem;
+import org.opensourcephysics.media.core.TPoint;
+import org.opensourcephysics.media.core.TemplateMatcher;
+import org.opensourcephysics.media.core.Video;
+import org.opensourcephysics.media.core.VideoAdapter;
+import org.opensourcephysics.media.core.VideoClip;
+
+/**
+ * A headless autotracking engine. It reads frames directly from a Video rather
+ * than stepping the VideoPlayer, so no repaint or video panel events are
+ * involved, and it can run on a worker thread with progress reporting and
+ * cancellation.
+ *
+ * Each frame is searched with the same AutoTracker code as an interactive
+ * search: the search area is carried over from the previous frame and moved to
+ * the predicted target location, the template is matched, and on a good match
+ * the template is evolved and the track is marked. When created by an
+ * AutoTracker, each frame's template and match are also recorded in the
+ * AutoTracker's FrameData, so the wizard shows the results as if the frames
+ * had been searched interactively.
+ *
+ * Only the template matching runs on the worker thread, with a template
+ * matcher of its own. Frames are decoded, and tracks and FrameData are read
+ * and changed, on the event dispatch thread.
+ */
+public class BatchAutoTracker implements Runnable {
+
+	/**
+	 * A listener for autotracking progress.
+	 */
+	public interface ProgressListener {
+
+		/**
+		 * Called after each frame is searched.
+		 *
+		 * @param frameNumber the frame just searched
+		 * @param done        the number of steps searched so far
+		 * @param total       the total number of steps to search
+		 */
+		public void progress(int frameNumber, int done, int total);
+	}
+
+	/**
+	 * A batch task that reports its progress and can be canceled.
+	 */
+	public interface Task extends Runnable {
+
+		/**
+		 * Sets the progress listener.
+		 *
+		 * @param listener the listener, may be null
+		 */
+		public void setProgressListener(ProgressListener listener);
+
+		/**
+		 * Cancels a run in progress.
+		 */
+		public void cancel();
+	}
+
+	private static volatile int runningCount;
+
+	private final TTrack track;
+	private final int pointIndex;
+	private final Video video;
+	private final VideoClip clip;
+	private final ImageCoordSystem coords;
+	private final TemplateMatcher matcher;
+	private final Rectangle maskBounds;
+	private final TPoint maskCenter, maskCorner;
+	private final double[] targetOffset;
+	private final int keyFrame;
+	private final TPoint searchCenter = new TPoint(), searchCorner = new TPoint();
+	private final Rectangle2D searchRect2D = new Rectangle2D.Double();
+	private final double maxSearchHalfW, maxSearchHalfH;
+	private TargetPredictor predictor = new TargetPredictor();
+	private final PyramidMatcher pyramidMatcher = new PyramidMatcher(0);
+	// frame number to position used for prediction
+	private final Map<Integer, TPoint> positions = new HashMap<Integer, TPoint>();
+	// frame numbers of positions from possible (unmarked) matches
+	private final Set<Integer> weakFrames = new HashSet<Integer>();
+
+	// the AutoTracker and key frame this continues from, if any
+	private AutoTracker autoTracker;
+	private AutoTracker.KeyFrameData keyFrameData;
+	private TemplateMatcher keyMatcher;
+
+	// the frame being searched, set by prepare() and used by search() and commit()
+	private AutoTracker.FrameData frameData;
+	private Rectangle searchRect;
+	private BufferedImage template;
+	private int[] workingPixels;
+	private int[][] linePts;
+	private double[] matchWidthAndHeight;
+	private TPoint[] matchPts;
+	private BufferedImage matchImage;
+
+	private int evolveAlpha, tetherAlpha;
+	private int goodMatch = 4, possibleMatch = 1;
+	private int lineSpread = -1;
+	private boolean lookAhead = true;
+	private int stopFrame = -1;
+	private ProgressListener progressListener;
+	private volatile boolean canceled;
+	private volatile MultiTargetAutoTracker runner;
+	private Throwable error;
+	private int markedCount, failedCount;
+
+	/**
+	 * Constructs a BatchAutoTracker with explicit template and search settings,
+	 * typically those of an interactive AutoTracker key frame.
+	 *
+	 * @param panel        the tracker panel
+	 * @param track        the track to mark
+	 * @param pointIndex   the index of the track point to mark
+	 * @param keyFrame     the key frame number
+	 * @param matcher      the template matcher, used only by this BatchAutoTracker
+	 * @param mask         the mask shape in image coordinates at the key frame
+	 * @param maskCenter   the mask center at the key frame
+	 * @param maskCorner   the mask corner at the key frame
+	 * @param targetOffset the offset of the target from the match center
+	 * @param searchRect   the search rectangle at the key frame
+	 */
+	BatchAutoTracker(TrackerPanel panel, TTrack track, int pointIndex, int keyFrame, TemplateMatcher matcher,
+			Shape mask, TPoint maskCenter, TPoint maskCorner, double[] targetOffset, Rectangle2D searchRect) {
+		this.track = track;
+		this.pointIndex = pointIndex;
+		video = panel.getVideo();
+		clip = panel.getPlayer().getVideoClip();
+		coords = panel.getCoords();
+		this.keyFrame = keyFrame;
+		this.matcher = matcher;
+		maskBounds = mask.getBounds();
+		this.maskCenter = new TPoint(maskCenter);
+		this.maskCorner = new TPoint(maskCorner);
+		this.targetOffset = new double[] { targetOffset[0], targetOffset[1] };
+		searchCenter.setLocation(searchRect.getCenterX(), searchRect.getCenterY());
+		searchCorner.setLocation(searchRect.getMaxX(), searchRect.getMaxY());
+		searchRect2D.setFrame(searchRect);
+		maxSearchHalfW = searchRect.getWidth() / 2;
+		maxSearchHalfH = searchRect.getHeight() / 2;
+		evolveAlpha = getAlphaFromPercent(AutoTracker.defaultEvolve);
+		tetherAlpha = getAlphaFromPercent(AutoTracker.defaultTether);
+	}
+
+	/**
+	 * Creates a BatchAutoTracker for a track's target point using default
+	 * template and search settings.
+	 *
+	 * @param panel the tracker panel
+	 * @param track the track
+	 * @return the BatchAutoTracker, or null if the track has no marked step
+	 */
+	public static BatchAutoTracker create(TrackerPanel panel, TTrack track) {
+		return (track == null ? null : create(panel, track, track.getTargetIndex()));
+	}
+
+	/**
+	 * Creates a BatchAutoTracker for a track point using default template and
+	 * search settings. The key frame is the first marked step of the point, and
+	 * the template is a default-size circle centered on that point.
+	 *
+	 * @param panel the tracker panel
+	 * @param track the track
+	 * @param index the index of the track point
+	 * @return the BatchAutoTracker, or null if the point has no marked step
+	 */
+	public static BatchAutoTracker create(TrackerPanel panel, TTrack track, int index) {
+		Video video = panel.getVideo();
+		if (video == null || track == null || !track.isAutoTrackable())
+			return null;
+		VideoClip clip = panel.getPlayer().getVideoClip();
+		TPoint keyPt = null;
+		int keyFrame = -1;
+		for (int i = 0, n = clip.getStepCount(); i < n && keyPt == null; i++) {
+			keyFrame = clip.stepToFrame(i);
+			keyPt = track.getMarkedPoint(keyFrame, index);
+		}
+		if (keyPt == null)
+			return null;
+		TPoint center = new TPoint(keyPt.getX(), keyPt.getY());
+		double[] maskSize = AutoTracker.defaultMaskSize;
+		double[] searchSize = AutoTracker.defaultSearchSize;
+		TPoint corner = new TPoint(center.x + maskSize[0], center.y + maskSize[1]);
+		Ellipse2D.Double mask = new Ellipse2D.Double();
+		mask.setFrameFromCenter(center.x, center.y, center.x + AutoTracker.cornerFactor * maskSize[0],
+				center.y + AutoTracker.cornerFactor * maskSize[1]);
+		Rectangle2D searchRect = new Rectangle2D.Double();
+		searchRect.setFrameFromCenter(center.x, center.y, center.x + searchSize[0], center.y + searchSize[1]);
+		// create the template from the key frame image
+		BufferedImage image = getFrameImage(video, keyFrame);
+		Rectangle rect = mask.getBounds();
+		AffineTransform transform = AffineTransform.getTranslateInstance(-rect.x, -rect.y);
+		TemplateMatcher matcher = new TemplateMatcher(AutoTracker.getSubimage(image, rect),
+				transform.createTransformedShape(mask));
+		return new BatchAutoTracker(panel, track, index, keyFrame, matcher, mask, center, corner,
+				new double[] { 0, 0 }, searchRect);
+	}
+
+	/**
+	 * Sets the AutoTracker and key frame this continues from. Each frame searched
+	 * is then recorded in the AutoTracker's FrameData, and the key frame's
+	 * template matcher gets the evolved template after a run.
+	 *
+	 * @param autoTracker  the AutoTracker
+	 * @param keyFrameData the key frame
+	 */
+	void setAutoTracker(AutoTracker autoTracker, AutoTracker.KeyFrameData keyFrameData) {
+		this.autoTracker = autoTracker;
+		this.keyFrameData = keyFrameData;
+		keyMatcher = keyFrameData.getTemplateMatcher();
+	}
+
+	/**
+	 * Sets a frame at which to stop, typically the next key frame.
+	 *
+	 * @param n the frame number, or -1 to continue to the end of the clip
+	 */
+	void setStopFrame(int n) {
+		stopFrame = n;
+	}
+
+	/**
+	 * Sets the evolution and tether rates.
+	 *
+	 * @param evolvePercent the evolution rate in percent
+	 * @param tetherPercent the tether rate in percent
+	 */
+	public void setEvolution(int evolvePercent, int tetherPercent) {
+		evolveAlpha = getAlphaFromPercent(evolvePercent);
+		tetherAlpha = getAlphaFromPercent(tetherPercent);
+	}
+
+	/**
+	 * Sets the evolution and tether alphas directly.
+	 *
+	 * @param evolveAlpha the evolution alpha (0-255)
+	 * @param tetherAlpha the tether alpha (0-255)
+	 */
+	void setAlphas(int evolveAlpha, int tetherAlpha) {
+		this.evolveAlpha = evolveAlpha;
+		this.tetherAlpha = tetherAlpha;
+	}
+
+	/**
+	 * Sets the match thresholds.
+	 *
+	 * @param good     the minimum peak height of a good (marked) match
+	 * @param possible the minimum peak height of a possible match
+	 */
+	public void setMatchThresholds(int good, int possible) {
+		goodMatch = good;
+		possibleMatch = possible;
+	}
+
+	/**
+	 * Sets the line spread for 1D tracking along the x-axis.
+	 *
+	 * @param spread positive or 0 for 1D, negative for 2D tracking
+	 */
+	public void setLineSpread(int spread) {
+		lineSpread = spread;
+	}
+
+	/**
+	 * Sets the look-ahead flag.
+	 *
+	 * @param look true to extrapolate the search area
+	 */
+	public void setLookAhead(boolean look) {
+		lookAhead = look;
+	}
+
+	/**
+	 * Sets the number of reduced pyramid levels searched before the
+	 * full-resolution search in 2D tracking.
+	 *
+	 * @param levels the number of levels, 0 for full resolution only
+	 */
+	public void setPyramidLevels(int levels) {
+		pyramidMatcher.setLevels(levels);
+	}
+
+	/**
+	 * Sets the target predictor type. A Kalman predictor also fits the search
+	 * area to the prediction uncertainty, up to the initial search size.
+	 *
+	 * @param kalman true to use a Kalman filter, false for finite differences
+	 */
+	public void setKalmanPredictor(boolean kalman) {
+		predictor = kalman ? new KalmanPredictor() : new TargetPredictor();
+	}
+
+	/**
+	 * Sets the progress listener.
+	 *
+	 * @param listener the listener, may be null
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		progressListener = listener;
+	}
+
+	/**
+	 * Gets the track.
+	 *
+	 * @return the track
+	 */
+	public TTrack getTrack() {
+		return track;
+	}
+
+	/**
+	 * Gets the index of the track point marked.
+	 *
+	 * @return the point index
+	 */
+	public int getPointIndex() {
+		return pointIndex;
+	}
+
+	/**
+	 * Cancels a run in progress. Steps already marked are kept.
+	 */
+	public void cancel() {
+		canceled = true;
+		MultiTargetAutoTracker r = runner;
+		if (r != null)
+			r.cancel();
+	}
+
+	/**
+	 * @return true if the last run was canceled
+	 */
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	/**
+	 * Gets the error that stopped the last run, if any. Steps marked before the
+	 * error are kept.
+	 *
+	 * @return the error, or null if the run completed or was canceled
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * @return the number of steps marked in the last run
+	 */
+	public int getMarkedCount() {
+		return markedCount;
+	}
+
+	/**
+	 * @return the number of steps searched without a good match in the last run
+	 */
+	public int getFailedCount() {
+		return failedCount;
+	}
+
+	/**
+	 * Determines if any BatchAutoTracker is running.
+	 *
+	 * @return true if running
+	 */
+	static boolean isRunning() {
+		return runningCount > 0;
+	}
+
+	/**
+	 * Records the start or end of a run so AutoTracker.mayLeaveGaps() is true
+	 * while running.
+	 *
+	 * @param running true at the start, false at the end
+	 */
+	static synchronized void setRunning(boolean running) {
+		runningCount += running ? 1 : -1;
+	}
+
+	/**
+	 * Starts autotracking on a new worker thread.
+	 *
+	 * @return the thread
+	 */
+	public Thread start() {
+		Thread thread = new Thread(this, "BatchAutoTracker"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Autotracks every step after the key frame on the calling thread. This is
+	 * a MultiTargetAutoTracker run with this as its only target.
+	 */
+	@Override
+	public void run() {
+		canceled = false;
+		error = null;
+		MultiTargetAutoTracker r = new MultiTargetAutoTracker(video, clip, Collections.singletonList(this));
+		r.setThreads(1);
+		r.setProgressListener(progressListener);
+		runner = r;
+		try {
+			r.run();
+		} finally {
+			runner = null;
+			error = r.getError();
+		}
+	}
+
+	/**
+	 * Gets the first step searched: the step after the key frame.
+	 *
+	 * @return the step number
+	 */
+	int getStartStep() {
+		return clip.frameToStep(keyFrame) + 1;
+	}
+
+	/**
+	 * Gets the last step searched: the last step of the clip or the step before
+	 * the stop frame.
+	 *
+	 * @return the step number
+	 */
+	int getEndStep() {
+		int last = clip.getStepCount() - 1;
+		return stopFrame < 0 ? last : Math.min(last, clip.frameToStep(stopFrame) - 1);
+	}
+
+	/**
+	 * Resets the counts and position history before a run. Called on the event
+	 * dispatch thread.
+	 */
+	void begin() {
+		markedCount = failedCount = 0;
+		positions.clear();
+		weakFrames.clear();
+		positions.put(keyFrame, track.getMarkedPoint(keyFrame, pointIndex));
+	}
+
+	/**
+	 * Determines if a step should be searched. Called on the event dispatch
+	 * thread.
+	 *
+	 * @param n          the frame number
+	 * @param stepNumber the step number
+	 * @return true if the step is between the key frame and the stop frame and
+	 *         not yet complete
+	 */
+	boolean needsSearch(int n, int stepNumber) {
+		return stepNumber >= getStartStep() && stepNumber <= getEndStep() && !track.isStepComplete(n);
+	}
+
+	/**
+	 * Refreshes the track and the AutoTracker after a run.
+	 */
+	void finish() {
+		invoke(() -> {
+			if (autoTracker != null) {
+				autoTracker.finishBatch(keyFrameData, keyMatcher, matcher);
+			}
+			if (track.ttype == TTrack.TYPE_POINTMASS) {
+				((PointMass) track).updateDerivatives();
+			}
+			track.fireStepsChanged();
+		});
+	}
+
+	/**
+	 * Prepares to search a frame: moves the search area to the predicted target
+	 * location and gets the template to match. Called on the event dispatch
+	 * thread.
+	 *
+	 * @param n          the frame number
+	 * @param stepNumber the step number
+	 */
+	void prepare(int n, int stepNumber) {
+		frameData = (autoTracker == null ? null : autoTracker.getOrCreateFrameData(track, pointIndex, n));
+		if (frameData != null) {
+			// start from the latest search area, as the interactive search does
+			TPoint[] searchPts = frameData.getSearchPoints(true);
+			if (searchPts != null) {
+				searchCenter.setLocation(searchPts[0]);
+				searchCorner.setLocation(searchPts[1]);
+				refreshSearchRect();
+			}
+		}
+		// move the search area to the predicted location
+		boolean[] weak = new boolean[predictor.getLookback()];
+		TPoint[] prevPoints = getPrevPoints(stepNumber, weak);
+		TPoint prediction = predictor.predict(prevPoints, weak, lookAhead, video.getImageSize(true));
+		if (prediction != null) {
+			if (predictor instanceof KalmanPredictor) {
+				double[] halfSize = ((KalmanPredictor) predictor).getSearchHalfSize(maskBounds, maxSearchHalfW,
+						maxSearchHalfH);
+				if (halfSize != null) {
+					searchCorner.setLocation(searchCenter.x + halfSize[0], searchCenter.y + halfSize[1]);
+					searchRect2D.setFrameFromCenter(searchCenter, searchCorner);
+				}
+			}
+			moveSearchCenter(prediction.x - targetOffset[0], prediction.y - targetOffset[1]);
+		}
+		searchRect = searchRect2D.getBounds();
+
+		// get the template to match
+		if (frameData != null) {
+			frameData.decided = false;
+			frameData.setSearchPoints(new TPoint[] { new TPoint(searchCenter), new TPoint(searchCorner) });
+			template = frameData.getTemplateToMatch(matcher);
+			workingPixels = frameData.getWorkingPixels();
+		} else {
+			template = matcher.getTemplate();
+			workingPixels = matcher.getWorkingPixels();
+		}
+		linePts = AutoTracker.getLineSearchPoints(matcher, searchRect, coords, n, lineSpread);
+	}
+
+	/**
+	 * Searches a frame image prepared by prepare() for the target and evolves the
+	 * template on a good match. Does not mark the track, so instances with
+	 * different tracks may search the same image concurrently on any threads.
+	 *
+	 * @param image the video image at the frame
+	 * @param n     the frame number
+	 * @return the target to mark, or null if no good match was found
+	 */
+	TPoint search(BufferedImage image, int n) {
+		matchWidthAndHeight = null;
+		matchPts = null;
+		matchImage = null;
+		if (image == null)
+			return null;
+		matcher.setTemplate(template);
+		TPoint p = AutoTracker.getMatchLocation(matcher, image, searchRect, linePts, pyramidMatcher);
+		matchWidthAndHeight = AutoTracker.getMatchWidthAndHeight(matcher, linePts, pyramidMatcher);
+		if (p == null || matchWidthAndHeight[1] < possibleMatch)
+			return null;
+		matchImage = matcher.getMatchImage();
+		matchPts = AutoTracker.getMatchPoints(p, maskBounds, maskCenter, maskCorner, false);
+		if (matchWidthAndHeight[1] < goodMatch)
+			return null;
+
+		// good match: evolve the template and return the target
+		AutoTracker.buildEvolvedTemplate(matcher, template, workingPixels, image, maskBounds, p, evolveAlpha,
+				tetherAlpha, n);
+		return new TPoint(matchPts[0].x + targetOffset[0], matchPts[0].y + targetOffset[1]);
+	}
+
+	/**
+	 * Records the result of search() and marks the track at a good match. Called
+	 * on the event dispatch thread.
+	 *
+	 * @param n      the frame number
+	 * @param target the target returned by search(), may be null
+	 */
+	void commit(int n, TPoint target) {
+		if (matchWidthAndHeight == null) { // no image
+			failedCount++;
+			return;
+		}
+		if (frameData != null) {
+			autoTracker.saveMatch(frameData, matchWidthAndHeight, matchPts, matchImage, target != null);
+			if (matchPts == null)
+				frameData.setMatchIcon(null);
+		}
+		if (target == null) {
+			if (matchPts != null) {
+				// possible match: used for prediction but not marked
+				positions.put(n, matchPts[0]);
+				weakFrames.add(n);
+			}
+			failedCount++;
+			return;
+		}
+		TPoint p = (frameData == null ? AutoTracker.autoMark(track, pointIndex, n, target)
+				: autoTracker.markBatchMatch(frameData, track, target));
+		positions.put(n, p == null ? target : p);
+		markedCount++;
+	}
+
+	/**
+	 * Gets the positions at the steps preceding a step, most recent first, and
+	 * flags those from possible matches as weak.
+	 */
+	private TPoint[] getPrevPoints(int stepNumber, boolean[] weak) {
+		TPoint[] prevPoints = new TPoint[weak.length];
+		for (int j = 0; j < prevPoints.length; j++) {
+			int step = stepNumber - j - 1;
+			if (step < 0)
+				break;
+			int n = clip.stepToFrame(step);
+			TPoint p = positions.get(n);
+			if (p == null && !track.steps.isAutofill())
+				p = track.getMarkedPoint(n, pointIndex);
+			prevPoints[j] = p;
+			weak[j] = weakFrames.contains(n);
+		}
+		return prevPoints;
+	}
+
+	/**
+	 * Moves the search rectangle to a new center without resizing it, keeping
+	 * it within the video image.
+	 */
+	private void moveSearchCenter(double x, double y) {
+		Dimension d = video.getImageSize(true);
+		int setbackX = searchRect2D.getBounds().width / 2;
+		int setbackY = searchRect2D.getBounds().height / 2;
+		x = Math.min(Math.max(x, setbackX), d.width - setbackX);
+		y = Math.min(Math.max(y, setbackY), d.height - setbackY);
+		double dx = x - searchCenter.x;
+		double dy = y - searchCenter.y;
+		searchCenter.x += dx;
+		searchCenter.y += dy;
+		searchCorner.x += dx;
+		searchCorner.y += dy;
+		refreshSearchRect();
+	}
+
+	/**
+	 * Sets the search rectangle from the search center and corner, keeping it
+	 * within the video image.
+	 */
+	private void refreshSearchRect() {
+		searchRect2D.setFrameFromCenter(searchCenter, searchCorner);
+		if (AutoTracker.moveRectIntoImage(searchRect2D, video.getImageSize(true))) {
+			searchCenter.setLocation(searchRect2D.getCenterX(), searchRect2D.getCenterY());
+			searchCorner.setLocation(searchRect2D.getMaxX(), searchRect2D.getMaxY());
+		}
+	}
+
+	/**
+	 * Runs a batch task on a worker thread, showing its progress in a
+	 * ProgressMonitor. Canceling the monitor cancels the task. Called on the
+	 * event dispatch thread.
+	 *
+	 * @param parent  the parent component of the monitor
+	 * @param message the monitor message
+	 * @param task    the task
+	 * @param done    run on the event dispatch thread when the task ends, may be
+	 *                null
+	 */
+	static void runInBackground(Component parent, String message, Task task, Runnable done) {
+		ProgressMonitor monitor = new ProgressMonitor(parent, message, "", 0, 100); //$NON-NLS-1$
+		monitor.setMillisToPopup(500);
+		task.setProgressListener((n, count, total) -> {
+			SwingUtilities.invokeLater(() -> {
+				if (monitor.isCanceled())
+					task.cancel();
+				else
+					monitor.setProgress(total == 0 ? 100 : 100 * count / total);
+			});
+		});
+		Thread thread = new Thread(() -> {
+			try {
+				task.run();
+			} finally {
+				SwingUtilities.invokeLater(() -> {
+					monitor.close();
+					if (done != null)
+						done.run();
+				});
+			}
+		}, task.getClass().getSimpleName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Runs a task on the event dispatch thread, waiting for it to finish. Tasks
+	 * that change tracks are run this way so listeners are notified on the
+	 * expected thread; when headless or already on the EDT they run directly.
+	 * An exception thrown by the task is rethrown on the calling thread.
+	 */
+	static void invoke(Runnable r) {
+		if (GraphicsEnvironment.isHeadless() || SwingUtilities.isEventDispatchThread()) {
+			r.run();
+			return;
+		}
+		try {
+			SwingUtilities.invokeAndWait(r);
+		} catch (InvocationTargetException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Gets a TYPE_INT_RGB copy of the filtered video image at a frame without
+	 * notifying listeners. The video belongs to the event dispatch thread, so the
+	 * frame is set and the image copied there; the copy can then be read on any
+	 * thread while the video moves on to other frames.
+	 *
+	 * @param video the video
+	 * @param n     the frame number
+	 * @return the copy, or null if no image
+	 */
+	static BufferedImage getFrameImage(Video video, int n) {
+		BufferedImage[] image = new BufferedImage[1];
+		invoke(() -> {
+			setFrame(video, n);
+			BufferedImage source = video.getImage();
+			if (source != null)
+				image[0] = AutoTracker.getSubimage(source, new Rectangle(source.getWidth(), source.getHeight()));
+		});
+		return image[0];
+	}
+
+	/**
+	 * Sets the video frame number on the event dispatch thread without notifying
+	 * listeners. Used to restore the frame shown before a run.
+	 *
+	 * @param video the video
+	 * @param n     the frame number
+	 */
+	static void setFrameNumber(Video video, int n) {
+		invoke(() -> setFrame(video, n));
+	}
+
+	private static void setFrame(Video video, int n) {
+		VideoAdapter adapter = (video instanceof VideoAdapter ? (VideoAdapter) video : null);
+		if (adapter != null)
+			adapter.setNotify(false);
+		try {
+			video.setFrameNumber(n);
+		} finally {
+			if (adapter != null)
+				adapter.setNotify(true);
+		}
+	}
+
+	private static int getAlphaFromPercent(int percent) {
+		int alpha = (int) (2.55 * percent);
+		return Math.max(0, Math.min(alpha, 255));
+	}
+
+	/**
+	 * Autotracks named tracks without a user interface, then saves the result.
+	 * Several comma-separated track names are tracked together in a single pass
+	 * over the video. Used by the -autotrack command line option.
+	 *
+	 * @param panel      the loaded tracker panel
+	 * @param trackNames the track name, or comma-separated names
+	 * @param outputPath the TRK file to write, or null to write next to the
+	 *                   panel's data file
+	 * @return true if successful
+	 */
+	static boolean runHeadless(TrackerPanel panel, String trackNames, String outputPath) {
+		ArrayList<BatchAutoTracker> trackers = new ArrayList<BatchAutoTracker>();
+		for (String trackName : trackNames.split(",")) { //$NON-NLS-1$
+			TTrack track = panel.getTrack(trackName.trim());
+			BatchAutoTracker tracker = (track == null ? null : create(panel, track));
+			if (tracker == null) {
+				System.err.println("Tracker -autotrack: no marked autotrackable track named " + trackName); //$NON-NLS-1$
+				return false;
+			}
+			trackers.add(tracker);
+		}
+		ProgressListener listener = (n, done, total) -> {
+			if (done % 100 == 0 || done == total)
+				System.out.println("Tracker -autotrack: " + done + "/" + total); //$NON-NLS-1$ //$NON-NLS-2$
+		};
+		MultiTargetAutoTracker multi = new MultiTargetAutoTracker(panel, trackers);
+		multi.setProgressListener(listener);
+		multi.run();
+		if (multi.getError() != null) {
+			System.err.println("Tracker -autotrack: failed: " + multi.getError()); //$NON-NLS-1$
+			return false;
+		}
+		for (BatchAutoTracker tracker : trackers) {
+			System.out.println("Tracker -autotrack: " + tracker.getTrack().getName() + " marked " //$NON-NLS-1$ //$NON-NLS-2$
+					+ tracker.getMarkedCount() + ", unmatched " + tracker.getFailedCount()); //$NON-NLS-1$
+		}
+		if (outputPath == null) {
+			String dataFile = panel.getDataFile() == null ? null : panel.getDataFile().getPath();
+			if (dataFile == null) {
+				System.err.println("Tracker -autotrack: no -output file specified"); //$NON-NLS-1$
+				return false;
+			}
+			outputPath = dataFile.substring(0, dataFile.lastIndexOf('.')) + "_autotracked.trk"; //$NON-NLS-1$
+		}
+		XMLControl control = new XMLControlElement(panel);
+		String path = control.write(outputPath);
+		System.out.println("Tracker -autotrack: saved " + path); //$NON-NLS-1$
+		return path != null;
+	}
+
+}
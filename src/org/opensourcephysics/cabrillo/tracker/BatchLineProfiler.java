@@ -0,0 +1,628 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.opensourcephysics.controls.OSPLog;
+import org.opensourcephysics.controls.XML;
+import org.opensourcephysics.display.Dataset;
+import org.opensourcephysics.display.DatasetManager;
+import org.opensourcephysics.media.core.ImageCoordSystem;
+import org.opensourcephysics.media.core.ImageVideo;
+import org.opensourcephysics.media.core.Video;
+import org.opensourcephysics.media.core.VideoClip;
+import org.opensourcephysics.media.core.VideoPlayer;
+import org.opensourcephysics.media.core.VideoType;
+import org.opensourcephysics.tools.DataTool;
+import org.opensourcephysics.tools.DataToolTab;
+
+/**
+ * Samples a LineProfile at every step of the video clip in a single pass and
+ * assembles the results into a kymograph: a dense matrix of float values with
+ * one row per step, one column group per position along the line and one
+ * column per channel (R, G, B, luma). Rows for steps with no data are NaN, as
+ * are positions beyond the end of a shorter profile.
+ *
+ * Frames are read directly from the Video without stepping the VideoPlayer, as
+ * BatchAutoTracker does, and the pixels under the line are handed to a pool of
+ * worker threads that apply the pixel weights of the profile. The line ends are
+ * copied on the event dispatch thread and the weights are then found off it,
+ * once for each line geometry. Rows are written to a CSV or binary file
+ * in step order as they are completed, or kept in memory to show in DataTool.
+ * At most a fixed number of rows are decoded or waiting to be written at any
+ * time, so memory is bounded when writing a file.
+ *
+ * The binary format is three big-endian ints (rows, positions, channels)
+ * followed by each row as the float time in seconds and positions * channels
+ * float values.
+ */
+public class BatchLineProfiler implements BatchAutoTracker.Task {
+
+	/** the channels of each position */
+	public final static String[] CHANNELS = { "R", "G", "B", "luma" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	private final static int ROWS_PER_THREAD = 4; // limits the rows decoded or waiting to be written
+	private final static long MAX_MATRIX_SIZE = 1 << 25; // floats kept in memory, 128 MB
+
+	private final LineProfile profile;
+	private final TrackerPanel panel;
+	private final Video video;
+	private final VideoClip clip;
+	private final VideoPlayer player;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private BatchAutoTracker.ProgressListener progressListener;
+	private volatile boolean canceled;
+	private File file;
+	private boolean binary;
+	private int positions;
+	private int rowCount;
+	private float[][] matrix;
+	private double[] times;
+
+	// rows completed by the workers, guarded by rowLock
+	private final Object rowLock = new Object();
+	private float[][] rows;
+	private boolean[] finished;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param panel   the tracker panel
+	 * @param profile the LineProfile track to sample
+	 */
+	public BatchLineProfiler(TrackerPanel panel, LineProfile profile) {
+		this.panel = panel;
+		this.profile = profile;
+		video = panel.getVideo();
+		player = panel.getPlayer();
+		clip = player.getVideoClip();
+	}
+
+	/**
+	 * Sets the number of sampling threads.
+	 *
+	 * @param n the number of threads, 1 to sample on the calling thread
+	 */
+	public void setThreads(int n) {
+		threads = Math.max(1, n);
+	}
+
+	/**
+	 * Sets the progress listener.
+	 *
+	 * @param listener the listener, may be null
+	 */
+	@Override
+	public void setProgressListener(BatchAutoTracker.ProgressListener listener) {
+		progressListener = listener;
+	}
+
+	/**
+	 * Sets the output file. If null, the matrix is kept in memory.
+	 *
+	 * @param file   the file, may be null
+	 * @param binary true to write floats, false to write comma-separated text
+	 */
+	public void setOutput(File file, boolean binary) {
+		this.file = file;
+		this.binary = binary;
+	}
+
+	/**
+	 * Cancels a run in progress. Rows already completed are kept.
+	 */
+	@Override
+	public void cancel() {
+		canceled = true;
+	}
+
+	/**
+	 * @return true if the last run was canceled
+	 */
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	/**
+	 * @return the number of rows completed in the last run
+	 */
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return the number of positions along the line in each row
+	 */
+	public int getPositionCount() {
+		return positions;
+	}
+
+	/**
+	 * Gets the matrix kept in memory by the last run when no output file is set.
+	 * Each row is {R, G, B, luma} at each position.
+	 *
+	 * @return the rows, or null if none
+	 */
+	public float[][] getMatrix() {
+		return matrix;
+	}
+
+	/**
+	 * Starts sampling on a new worker thread.
+	 *
+	 * @return the thread
+	 */
+	public Thread start() {
+		Thread thread = new Thread(this, "BatchLineProfiler"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Samples every step in the clip on the calling thread and its pool.
+	 */
+	@Override
+	public void run() {
+		canceled = false;
+		rowCount = positions = 0;
+		matrix = null;
+		if (video == null || !video.isVisible())
+			return;
+		int count = clip.getStepCount();
+		LineProfileStep[] lines = new LineProfileStep[count];
+		boolean[] horizontal = new boolean[count];
+		AffineTransform[] transforms = new AffineTransform[count];
+		Rectangle[] imageBounds = new Rectangle[1];
+		times = new double[count];
+		// copy the line ends and coordinates of each step on the event dispatch thread
+		BatchAutoTracker.invoke(() -> {
+			BufferedImage image = video.getImage();
+			if (image == null)
+				return;
+			Rectangle bounds = new Rectangle(image.getWidth(), image.getHeight());
+			// for image videos use RGB bounds for images of varying size
+			if (video.getTypeName().equals(VideoType.TYPE_IMAGE)) {
+				Dimension size = ((ImageVideo) video).getRGBSize();
+				bounds = new Rectangle(size.width, size.height);
+			}
+			imageBounds[0] = bounds;
+			ImageCoordSystem coords = panel.getCoords();
+			LineProfileStep prev = null;
+			for (int i = 0; i < count; i++) {
+				int n = clip.stepToFrame(i);
+				times[i] = player.getStepTime(i) / 1000.0;
+				LineProfileStep step = (LineProfileStep) profile.getStep(n);
+				if (step == null)
+					continue;
+				// detached copies have their own sweep state so the weights can be found
+				// on this thread while the track is drawn and edited
+				if (prev == null || !isSameLine(prev, step))
+					prev = new LineProfileStep(profile, n, step.lineEnd0.x, step.lineEnd0.y, step.lineEnd1.x,
+							step.lineEnd1.y);
+				lines[i] = prev;
+				horizontal[i] = profile.isHorizontal || Math.abs(Math.sin(coords.getAngle(n))) < .00001;
+				transforms[i] = new AffineTransform(coords.getToWorldTransform(n));
+			}
+		});
+		Rectangle bounds = imageBounds[0];
+		if (bounds == null)
+			return;
+		LineProfileStep.ProfileWeights[] weights = new LineProfileStep.ProfileWeights[count];
+		LineProfileStep.ProfileWeights prev = null;
+		for (int i = 0; i < count && !canceled; i++) {
+			LineProfileStep line = lines[i];
+			if (line == null)
+				continue;
+			// steps with the same geometry share their weights
+			if (prev == null || !prev.isFor(line, bounds, horizontal[i]))
+				prev = line.getProfileWeights(bounds, horizontal[i]);
+			if (prev == null || prev.len < 1)
+				continue;
+			weights[i] = prev;
+			positions = Math.max(positions, prev.len);
+		}
+		if (positions == 0 || canceled)
+			return;
+		int rowLength = positions * CHANNELS.length;
+		if (file == null && (long) count * rowLength > MAX_MATRIX_SIZE) {
+			OSPLog.warning("BatchLineProfiler: " + count + " x " + rowLength //$NON-NLS-1$ //$NON-NLS-2$
+					+ " matrix is too large to keep in memory; write it to a file instead"); //$NON-NLS-1$
+			return;
+		}
+		int window = threads * ROWS_PER_THREAD;
+		rows = new float[count][];
+		finished = new boolean[count];
+		Sink sink = null;
+		int prevFrame = video.getFrameNumber();
+		ExecutorService pool = (threads > 1 ? Executors.newFixedThreadPool(threads, (r) -> {
+			Thread t = new Thread(r, "BatchLineProfiler"); //$NON-NLS-1$
+			t.setDaemon(true);
+			return t;
+		}) : null);
+		try {
+			sink = file == null ? new MatrixSink(count) : binary ? new BinarySink(file) : new TextSink(file);
+			sink.begin(count, positions);
+			for (int i = 0; i < count && !canceled; i++) {
+				// wait for earlier rows to be written so the window is not exceeded
+				while (i - rowCount >= window) {
+					synchronized (rowLock) {
+						if (!finished[rowCount])
+							rowLock.wait();
+					}
+					writeFinishedRows(sink);
+				}
+				int n = clip.stepToFrame(i);
+				LineProfileStep.ProfileWeights w = weights[i];
+				BufferedImage image = (w == null ? null : BatchAutoTracker.getFrameImage(video, n));
+				int[] pixels = null;
+				if (image != null && image.getType() == BufferedImage.TYPE_INT_RGB) {
+					// copy just the pixels needed so the frame image can be released
+					pixels = new int[w.w * w.h];
+					try {
+						image.getRaster().getDataElements(w.pixXMin, w.pixYMin, w.w, w.h, pixels);
+					} catch (ArrayIndexOutOfBoundsException ex) {
+						pixels = null;
+					}
+				}
+				if (pixels == null) {
+					setRow(i, null);
+				} else {
+					int stepNumber = i;
+					int[] data = pixels;
+					AffineTransform at = transforms[i];
+					Runnable task = () -> {
+						// every step must get a row, or the writer would wait for it forever
+						float[] row = null;
+						try {
+							row = getRow(w, data, at, rowLength);
+						} catch (RuntimeException ex) {
+							OSPLog.warning("BatchLineProfiler: step " + stepNumber + ": " + ex); //$NON-NLS-1$ //$NON-NLS-2$
+						} finally {
+							setRow(stepNumber, row);
+						}
+					};
+					if (pool == null)
+						task.run();
+					else
+						pool.execute(task);
+				}
+				writeFinishedRows(sink);
+				if (progressListener != null)
+					progressListener.progress(n, i + 1, count);
+			}
+			if (pool != null) {
+				// let the queued tasks finish so their rows are complete
+				pool.shutdown();
+				pool.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			writeFinishedRows(sink);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			OSPLog.warning("BatchLineProfiler: " + e); //$NON-NLS-1$
+			canceled = true;
+		} finally {
+			if (pool != null && !pool.isTerminated()) {
+				// stop the workers before their rows are discarded
+				pool.shutdownNow();
+				try {
+					pool.awaitTermination(1, TimeUnit.MINUTES);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			try {
+				if (sink != null)
+					sink.end(rowCount);
+			} catch (IOException e) {
+				OSPLog.warning("BatchLineProfiler: " + e); //$NON-NLS-1$
+			}
+			synchronized (rowLock) {
+				rows = null;
+				finished = null;
+			}
+			BatchAutoTracker.setFrameNumber(video, prevFrame);
+		}
+	}
+
+	/**
+	 * Shows the matrix kept in memory in DataTool with one column per position of
+	 * a channel versus time. Called on the event dispatch thread.
+	 *
+	 * @param channel the channel index in CHANNELS
+	 */
+	public void showDataTool(int channel) {
+		if (matrix == null)
+			return;
+		DatasetManager data = new DatasetManager();
+		data.setName(profile.getName() + " " + CHANNELS[channel]); //$NON-NLS-1$
+		double[] t = Arrays.copyOf(times, rowCount);
+		for (int p = 0; p < positions; p++) {
+			double[] values = new double[rowCount];
+			for (int i = 0; i < rowCount; i++) {
+				values[i] = matrix[i][p * CHANNELS.length + channel];
+			}
+			Dataset dataset = data.getDataset(p);
+			dataset.setXYColumnNames("t", CHANNELS[channel] + "_" + p); //$NON-NLS-1$ //$NON-NLS-2$
+			dataset.append(t, values);
+		}
+		DataTool tool = DataTool.getTool(true);
+		tool.setUseChooser(false);
+		tool.setSaveChangesOnClose(false);
+		ArrayList<DataToolTab> tabs = tool.createTabs(data);
+		for (int i = 0; i < tabs.size(); i++) {
+			tool.addTab(tabs.get(i));
+		}
+		tool.setVisible(true);
+	}
+
+	/**
+	 * Applies the weights of a profile to the pixels under it.
+	 */
+	private static float[] getRow(LineProfileStep.ProfileWeights weights, int[] pixels, AffineTransform at,
+			int rowLength) {
+		double[][] values = LineProfileStep.getProfileData(weights, pixels, at);
+		if (values == null)
+			return null;
+		float[] row = new float[rowLength];
+		Arrays.fill(row, Float.NaN);
+		for (int p = 0, j = 0; p < weights.len; p++) {
+			for (int c = 0; c < CHANNELS.length; c++) {
+				row[j++] = (float) values[2 + c][p];
+			}
+		}
+		return row;
+	}
+
+	/**
+	 * Determines if two steps have the same line ends.
+	 */
+	private static boolean isSameLine(LineProfileStep a, LineProfileStep b) {
+		return a.lineEnd0.x == b.lineEnd0.x && a.lineEnd0.y == b.lineEnd0.y && a.lineEnd1.x == b.lineEnd1.x
+				&& a.lineEnd1.y == b.lineEnd1.y;
+	}
+
+	/**
+	 * Saves a completed row, null if the step has no data.
+	 */
+	private void setRow(int i, float[] row) {
+		synchronized (rowLock) {
+			if (rows == null)
+				return;
+			rows[i] = row;
+			finished[i] = true;
+			rowLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Writes the completed rows that follow the rows already written.
+	 */
+	private void writeFinishedRows(Sink sink) throws IOException {
+		while (true) {
+			float[] row;
+			synchronized (rowLock) {
+				if (rowCount == finished.length || !finished[rowCount])
+					return;
+				row = rows[rowCount];
+				rows[rowCount] = null;
+			}
+			sink.write(rowCount, times[rowCount], row);
+			rowCount++;
+		}
+	}
+
+	/**
+	 * Samples a LineProfile without a user interface and writes the kymograph to
+	 * a file. Used by the -kymograph command line option.
+	 *
+	 * @param panel      the loaded tracker panel
+	 * @param trackName  the LineProfile name
+	 * @param outputPath the file to write, binary if it ends with ".bin",
+	 *                   otherwise comma-separated text, or null to write a .csv
+	 *                   file next to the panel's data file
+	 * @return true if successful
+	 */
+	static boolean runHeadless(TrackerPanel panel, String trackName, String outputPath) {
+		TTrack track = panel.getTrack(trackName.trim());
+		if (!(track instanceof LineProfile)) {
+			System.err.println("Tracker -kymograph: no line profile named " + trackName); //$NON-NLS-1$
+			return false;
+		}
+		if (outputPath == null) {
+			String dataFile = panel.getDataFile() == null ? null : panel.getDataFile().getPath();
+			if (dataFile == null) {
+				System.err.println("Tracker -kymograph: no -output file specified"); //$NON-NLS-1$
+				return false;
+			}
+			outputPath = dataFile.substring(0, dataFile.lastIndexOf('.')) + "_" + track.getName() + ".csv"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		File file = new File(outputPath);
+		BatchLineProfiler profiler = new BatchLineProfiler(panel, (LineProfile) track);
+		profiler.setOutput(file, outputPath.toLowerCase().endsWith(".bin")); //$NON-NLS-1$
+		profiler.setProgressListener((n, done, total) -> {
+			if (done % 100 == 0 || done == total)
+				System.out.println("Tracker -kymograph: " + done + "/" + total); //$NON-NLS-1$ //$NON-NLS-2$
+		});
+		profiler.run();
+		if (profiler.getRowCount() == 0) {
+			System.err.println("Tracker -kymograph: no profile data"); //$NON-NLS-1$
+			return false;
+		}
+		System.out.println("Tracker -kymograph: saved " + profiler.getRowCount() + " x " //$NON-NLS-1$ //$NON-NLS-2$
+				+ profiler.getPositionCount() + " x " + CHANNELS.length + " to " + XML.getAbsolutePath(file)); //$NON-NLS-1$ //$NON-NLS-2$
+		return true;
+	}
+
+	/**
+	 * A destination for the rows of a kymograph, written in order.
+	 */
+	private interface Sink {
+
+		void begin(int rows, int positions) throws IOException;
+
+		void write(int i, double t, float[] row) throws IOException;
+
+		void end(int rows) throws IOException;
+	}
+
+	/**
+	 * Keeps the rows in memory.
+	 */
+	private class MatrixSink implements Sink {
+
+		private float[][] data;
+		private float[] empty;
+
+		MatrixSink(int count) {
+			data = new float[count][];
+		}
+
+		@Override
+		public void begin(int rows, int positions) {
+			empty = new float[positions * CHANNELS.length];
+			Arrays.fill(empty, Float.NaN);
+		}
+
+		@Override
+		public void write(int i, double t, float[] row) {
+			data[i] = (row == null ? empty.clone() : row);
+		}
+
+		@Override
+		public void end(int rows) {
+			matrix = Arrays.copyOf(data, rows);
+		}
+	}
+
+	/**
+	 * Writes comma-separated text with a header row.
+	 */
+	private class TextSink implements Sink {
+
+		private final Writer out;
+		private int length;
+
+		TextSink(File file) throws IOException {
+			out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"))); //$NON-NLS-1$
+		}
+
+		@Override
+		public void begin(int rows, int positions) throws IOException {
+			length = positions * CHANNELS.length;
+			out.write("step,t"); //$NON-NLS-1$
+			for (int p = 0; p < positions; p++) {
+				for (String channel : CHANNELS) {
+					out.write("," + channel + "_" + p); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+			out.write(XML.NEW_LINE);
+		}
+
+		@Override
+		public void write(int i, double t, float[] row) throws IOException {
+			StringBuilder buf = new StringBuilder();
+			buf.append(i).append(',').append(t);
+			for (int j = 0; j < length; j++) {
+				buf.append(',').append(row == null ? Float.NaN : row[j]);
+			}
+			buf.append(XML.NEW_LINE);
+			out.write(buf.toString());
+		}
+
+		@Override
+		public void end(int rows) throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * Writes big-endian floats after a header of rows, positions and channels.
+	 */
+	private class BinarySink implements Sink {
+
+		private final File file;
+		private final DataOutputStream out;
+		private int length;
+		private int count;
+
+		BinarySink(File file) throws IOException {
+			this.file = file;
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		}
+
+		@Override
+		public void begin(int rows, int positions) throws IOException {
+			length = positions * CHANNELS.length;
+			count = rows;
+			out.writeInt(rows);
+			out.writeInt(positions);
+			out.writeInt(CHANNELS.length);
+		}
+
+		@Override
+		public void write(int i, double t, float[] row) throws IOException {
+			out.writeFloat((float) t);
+			for (int j = 0; j < length; j++) {
+				out.writeFloat(row == null ? Float.NaN : row[j]);
+			}
+		}
+
+		@Override
+		public void end(int rows) throws IOException {
+			out.close();
+			if (rows != count) {
+				// canceled: correct the row count in the header
+				RandomAccessFile raf = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+				try {
+					raf.writeInt(rows);
+				} finally {
+					raf.close();
+				}
+			}
+		}
+	}
+
+}
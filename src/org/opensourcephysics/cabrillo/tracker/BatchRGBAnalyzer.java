@@ -0,0 +1,401 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.opensourcephysics.controls.OSPLog;
+import org.opensourcephysics.controls.XML;
+import org.opensourcephysics.media.core.Video;
+import org.opensourcephysics.media.core.VideoClip;
+import org.opensourcephysics.media.core.VideoPlayer;
+
+/**
+ * Measures the RGB data of every step of one or more RGBRegion tracks in a
+ * single pass over the video clip. Frames are read directly from the Video
+ * without stepping the VideoPlayer, as BatchAutoTracker does, and the pixels
+ * within each region are handed to a pool of worker threads that rasterize the
+ * region and accumulate its statistics.
+ *
+ * The results are the same as those measured by RGBStep.getRGBData() when the
+ * player is stepped to each frame, and all steps are filled at once when the
+ * run ends, or is canceled.
+ */
+public class BatchRGBAnalyzer implements BatchAutoTracker.Task {
+
+	private final static int TASKS_PER_THREAD = 4; // limits the pixel data waiting to be measured
+
+	private final List<RGBRegion> regions;
+	private final Video video;
+	private final VideoClip clip;
+	private final VideoPlayer player;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private BatchAutoTracker.ProgressListener progressListener;
+	private volatile boolean canceled;
+	private int measuredCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param panel   the tracker panel
+	 * @param regions the RGBRegion tracks to measure
+	 */
+	public BatchRGBAnalyzer(TrackerPanel panel, List<RGBRegion> regions) {
+		this.regions = new ArrayList<RGBRegion>(regions);
+		video = panel.getVideo();
+		player = panel.getPlayer();
+		clip = player.getVideoClip();
+	}
+
+	/**
+	 * Sets the number of measuring threads.
+	 *
+	 * @param n the number of threads, 1 to measure on the calling thread
+	 */
+	public void setThreads(int n) {
+		threads = Math.max(1, n);
+	}
+
+	/**
+	 * Sets the progress listener.
+	 *
+	 * @param listener the listener, may be null
+	 */
+	@Override
+	public void setProgressListener(BatchAutoTracker.ProgressListener listener) {
+		progressListener = listener;
+	}
+
+	/**
+	 * Cancels a run in progress. Steps already measured are kept.
+	 */
+	@Override
+	public void cancel() {
+		canceled = true;
+	}
+
+	/**
+	 * @return true if the last run was canceled
+	 */
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	/**
+	 * @return the number of steps measured in the last run
+	 */
+	public int getMeasuredCount() {
+		return measuredCount;
+	}
+
+	/**
+	 * Gets the RGBRegion tracks.
+	 *
+	 * @return the tracks
+	 */
+	public List<RGBRegion> getRegions() {
+		return regions;
+	}
+
+	/**
+	 * Starts measuring on a new worker thread.
+	 *
+	 * @return the thread
+	 */
+	public Thread start() {
+		Thread thread = new Thread(this, "BatchRGBAnalyzer"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Measures every step in the clip on the calling thread and its pool.
+	 */
+	@Override
+	public void run() {
+		canceled = false;
+		measuredCount = 0;
+		if (video == null || !video.isVisible() || regions.isEmpty())
+			return;
+		int count = clip.getStepCount();
+		RGBStep[][] steps = new RGBStep[regions.size()][count];
+		Region[][] shapes = new Region[regions.size()][count];
+		double[][][] results = new double[regions.size()][count][];
+		// refresh the steps and get their regions on the event dispatch thread
+		BatchAutoTracker.invoke(() -> {
+			for (int r = 0; r < steps.length; r++) {
+				RGBRegion track = regions.get(r);
+				Region prev = null;
+				for (int i = 0; i < count; i++) {
+					RGBStep step = (RGBStep) track.getStep(clip.stepToFrame(i));
+					Shape shape = (step == null ? null : step.getMeasuredRegion());
+					if (shape == null)
+						continue;
+					steps[r][i] = step;
+					// steps with the same region share its mask
+					shapes[r][i] = prev = (prev != null && isSamePath(prev.shape, shape) ? prev : new Region(shape));
+				}
+			}
+		});
+		int prevFrame = video.getFrameNumber();
+		ExecutorService pool = (threads > 1 ? Executors.newFixedThreadPool(threads, (r) -> {
+			Thread t = new Thread(r, "BatchRGBAnalyzer"); //$NON-NLS-1$
+			t.setDaemon(true);
+			return t;
+		}) : null);
+		Semaphore slots = new Semaphore(threads * TASKS_PER_THREAD);
+		try {
+			for (int i = 0; i < count && !canceled; i++) {
+				int n = clip.stepToFrame(i);
+				BufferedImage image = BatchAutoTracker.getFrameImage(video, n);
+				if (image != null && image.getType() == BufferedImage.TYPE_INT_RGB) {
+					Dimension rgbSize = RGBStep.getRGBSize(video);
+					for (int r = 0; r < shapes.length; r++) {
+						Region region = shapes[r][i];
+						if (region == null)
+							continue;
+						Rectangle rect = region.shape.getBounds();
+						if (rect.isEmpty() || !RGBStep.isWithinRGBSize(rect, rgbSize))
+							continue;
+						// copy just the pixels needed so the frame image can be released
+						int[] pixels = new int[rect.width * rect.height];
+						try {
+							image.getRaster().getDataElements(rect.x, rect.y, rect.width, rect.height, pixels);
+						} catch (ArrayIndexOutOfBoundsException ex) {
+							continue;
+						}
+						double[][] result = results[r];
+						int stepNumber = i;
+						Runnable task = () -> {
+							double[] data = new double[8];
+							if (RGBStep.measureRGB(pixels, region.getMask(), data))
+								result[stepNumber] = data;
+						};
+						if (pool == null) {
+							task.run();
+							continue;
+						}
+						slots.acquire();
+						pool.execute(() -> {
+							try {
+								task.run();
+							} finally {
+								slots.release();
+							}
+						});
+					}
+				}
+				if (progressListener != null)
+					progressListener.progress(n, i + 1, count);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (pool != null) {
+				// let the queued tasks finish so their results are complete
+				pool.shutdown();
+				try {
+					pool.awaitTermination(1, TimeUnit.MINUTES);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			BatchAutoTracker.setFrameNumber(video, prevFrame);
+			finish(steps, results);
+		}
+	}
+
+	/**
+	 * Fills the steps with their results and refreshes the tracks.
+	 */
+	private void finish(RGBStep[][] steps, double[][][] results) {
+		BatchAutoTracker.invoke(() -> {
+			for (int r = 0; r < steps.length; r++) {
+				for (int i = 0; i < steps[r].length; i++) {
+					RGBStep step = steps[r][i];
+					double[] data = results[r][i];
+					if (step == null || data == null)
+						continue;
+					System.arraycopy(data, 0, step.rgbData, 0, data.length);
+					step.dataValid = true;
+					measuredCount++;
+				}
+				regions.get(r).invalidateData(null);
+			}
+		});
+	}
+
+	/**
+	 * Gets the data measured for a step, with the step number and time added.
+	 *
+	 * @param step the step
+	 * @return {t, R, G, B, luma, pixels, step, frame, Rsd, Gsd, Bsd}, or null if
+	 *         not measured
+	 */
+	private double[] getStepData(RGBStep step) {
+		if (step == null || !step.dataValid)
+			return null;
+		double[] rgb = step.rgbData;
+		int stepNumber = clip.frameToStep(step.getFrameNumber());
+		double t = player.getStepTime(stepNumber) / 1000.0;
+		return new double[] { t, rgb[0], rgb[1], rgb[2], rgb[3], rgb[4], stepNumber, step.getFrameNumber(), rgb[5],
+				rgb[6], rgb[7] };
+	}
+
+	/**
+	 * Determines if two shapes have identical paths.
+	 */
+	private static boolean isSamePath(Shape a, Shape b) {
+		PathIterator ia = a.getPathIterator(null);
+		PathIterator ib = b.getPathIterator(null);
+		if (ia.getWindingRule() != ib.getWindingRule())
+			return false;
+		double[] ca = new double[6], cb = new double[6];
+		for (; !ia.isDone() && !ib.isDone(); ia.next(), ib.next()) {
+			if (ia.currentSegment(ca) != ib.currentSegment(cb) || !Arrays.equals(ca, cb))
+				return false;
+		}
+		return ia.isDone() && ib.isDone();
+	}
+
+	/**
+	 * Measures RGBRegion tracks without a user interface and writes the data to a
+	 * tab-delimited text file. Used by the -rgb command line option.
+	 *
+	 * @param panel      the loaded tracker panel
+	 * @param trackNames comma-separated track names, or "all" for every RGBRegion
+	 * @param outputPath the file to write, or null to write next to the panel's
+	 *                   data file
+	 * @return true if successful
+	 */
+	static boolean runHeadless(TrackerPanel panel, String trackNames, String outputPath) {
+		ArrayList<RGBRegion> tracks = new ArrayList<RGBRegion>();
+		if ("all".equalsIgnoreCase(trackNames.trim())) { //$NON-NLS-1$
+			ArrayList<RGBRegion> list = panel.getDrawablesTemp(RGBRegion.class);
+			tracks.addAll(list);
+			list.clear();
+		} else {
+			for (String trackName : trackNames.split(",")) { //$NON-NLS-1$
+				TTrack track = panel.getTrack(trackName.trim());
+				if (!(track instanceof RGBRegion)) {
+					System.err.println("Tracker -rgb: no RGB region named " + trackName); //$NON-NLS-1$
+					return false;
+				}
+				tracks.add((RGBRegion) track);
+			}
+		}
+		if (tracks.isEmpty()) {
+			System.err.println("Tracker -rgb: no RGB regions"); //$NON-NLS-1$
+			return false;
+		}
+		BatchRGBAnalyzer analyzer = new BatchRGBAnalyzer(panel, tracks);
+		analyzer.setProgressListener((n, done, total) -> {
+			if (done % 100 == 0 || done == total)
+				System.out.println("Tracker -rgb: " + done + "/" + total); //$NON-NLS-1$ //$NON-NLS-2$
+		});
+		analyzer.run();
+		System.out.println("Tracker -rgb: measured " + analyzer.getMeasuredCount() + " steps"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (outputPath == null) {
+			String dataFile = panel.getDataFile() == null ? null : panel.getDataFile().getPath();
+			if (dataFile == null) {
+				System.err.println("Tracker -rgb: no -output file specified"); //$NON-NLS-1$
+				return false;
+			}
+			outputPath = dataFile.substring(0, dataFile.lastIndexOf('.')) + "_rgb.txt"; //$NON-NLS-1$
+		}
+		// assemble the data: one row per measured step of each track
+		String[] vars = RGBRegion.dataVariables;
+		StringBuffer buf = new StringBuffer("track"); //$NON-NLS-1$
+		for (String var : vars) {
+			if (!var.equals("x") && !var.equals("y")) //$NON-NLS-1$ //$NON-NLS-2$
+				buf.append('\t').append(var);
+		}
+		buf.append(XML.NEW_LINE);
+		VideoClip clip = analyzer.clip;
+		for (RGBRegion track : tracks) {
+			for (int i = 0, n = clip.getStepCount(); i < n; i++) {
+				double[] data = analyzer.getStepData((RGBStep) track.steps.getStep(clip.stepToFrame(i)));
+				if (data == null)
+					continue;
+				buf.append(track.getName());
+				for (double d : data)
+					buf.append('\t').append(d);
+				buf.append(XML.NEW_LINE);
+			}
+		}
+		File file = new File(outputPath);
+		try {
+			Writer out = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"))); //$NON-NLS-1$
+			out.write(buf.toString());
+			out.close();
+		} catch (IOException ex) {
+			OSPLog.warning("Tracker -rgb: " + ex); //$NON-NLS-1$
+			return false;
+		}
+		System.out.println("Tracker -rgb: saved " + XML.getAbsolutePath(file)); //$NON-NLS-1$
+		return true;
+	}
+
+	/**
+	 * A region shape and its mask, created on demand by the first thread that
+	 * needs it.
+	 */
+	private static class Region {
+
+		private final Shape shape;
+		private RegionMask mask;
+
+		Region(Shape shape) {
+			this.shape = shape;
+		}
+
+		synchronized RegionMask getMask() {
+			if (mask == null)
+				mask = new RegionMask(shape);
+			return mask;
+		}
+	}
+
+}
@@ -27,6 +27,10 @@ package org.opensourcephysics.cabrillo.tracker;
 
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import org.opensourcephysics.display.OSPRuntime;
 
 /**
  * This implements an algorithm for estimating both the first and second 
@@ -59,6 +63,25 @@ public class BounceDerivatives implements Derivative
     // model that tries to fit both the time and size of the step
     private BounceModel step_model;
 
+    // the window size of poly_model and step_model
+    private int poly_model_size;
+
+    // minimum number of time steps to fit in parallel
+    private static final int PARALLEL_MIN_COUNT = 256;
+
+    // data and fits from the previous call, indexed like the data, so windows
+    //	whose data has not changed need not be refit
+    private double[] prev_x, prev_y;
+    private BounceParameters[] prev_poly_fit, prev_step_fit;
+    private int[] prev_c_at;
+    private boolean[] prev_fitted;
+    private double[] prev_step_value;
+    private boolean[] prev_valued;
+    private int prev_window_size, prev_index_step, prev_start = -1, prev_count;
+
+    // reusable second derivative arrays for the first derivative evaluate
+    private double[][] scratch = new double[2][];
+
     
   /**
    * Evaluates two derivatives
@@ -72,7 +95,7 @@ public class BounceDerivatives implements Derivative
    *    data[2] = yData (double[])
    *    data[3] = validData (boolean[])
    *    
-   * Returned result:
+   * Returned result (new arrays on every call, so callers may keep them):
    *		result[0] = xDeriv1 (double[])
    *		result[1] = yDeriv1 (double[])
    *		result[2] = xDeriv2 (double[])
@@ -82,29 +105,65 @@ public class BounceDerivatives implements Derivative
    * @return Object array containing the result
    */
   @Override
-public Object[] evaluate(Object[] data)
+public synchronized Object[] evaluate(Object[] data)
   {
     int[] params = (int[])data[0];
-    window_size = 1+params[0]*2;
-    int start = params[1];
-    int index_step = params[2];
-    int count = params[3];
     double[] x = (double[])data[1];
     double[] y = (double[])data[2];
     boolean[] validData = (boolean[])data[3];
+    
+    int length=x.length;
+    double[][] result = new double[4][];
+    result[0] = new double[length];
+    result[1] = new double[length];
+    result[2] = new double[length];
+    result[3] = new double[length];
+    evaluate(x, y, validData, params[0], params[1], params[2], params[3],
+	    result[0], result[1], result[2], result[3]);
+    return result;
+  }
+
+  /**
+   * Evaluates the first derivative into caller-supplied arrays.
+   * The second derivative is found as well but discarded.
+   */
+  @Override
+  public synchronized void evaluate(double[] x, double[] y, boolean[] valid, int spill, int start, int index_step, int count,
+  		double[] outX, double[] outY)
+  {
+    int length=x.length;
+    if (scratch[0] == null || scratch[0].length != length)
+    {	scratch[0] = new double[length];
+	scratch[1] = new double[length];
+    }
+    evaluate(x, y, valid, spill, start, index_step, count, outX, outY, scratch[0], scratch[1]);
+  }
+
+  /**
+   * Evaluates both derivatives into caller-supplied arrays the same length as x.
+   * All output values not at the count evaluated points are set to NaN.
+   * Note that x and y values are set to NaN where data is not valid.
+   *
+   * @param x the x data
+   * @param y the y data
+   * @param validData the validity of each data point
+   * @param spill the number of points on either side of the center of a fitting window
+   * @param start the first index
+   * @param index_step the index step size
+   * @param count the number of indices
+   * @param xDeriv1 the x first derivative
+   * @param yDeriv1 the y first derivative
+   * @param xDeriv2 the x second derivative
+   * @param yDeriv2 the y second derivative
+   */
+  public synchronized void evaluate(double[] x, double[] y, boolean[] validData, int spill, int start, int index_step, int count,
+  		double[] xDeriv1, double[] yDeriv1, double[] xDeriv2, double[] yDeriv2)
+  {
+    window_size = 1+spill*2;
   	
     int length=x.length;
     assert(x.length==y.length);
     
-    double[] xDeriv1, yDeriv1, xDeriv2, yDeriv2;
-    
-    double[][] result = new double[4][];
-    
-    result[0] = xDeriv1 =new double[length];
-    result[1] = yDeriv1 =new double[length];
-    result[2] = xDeriv2 =new double[length];
-    result[3] = yDeriv2 =new double[length];
-
     for (int n = 0; n < length; n++)
     {	// mark all the outputs as invalid
 	xDeriv1[n] = yDeriv1[n] = Double.NaN;
@@ -118,7 +177,7 @@ public Object[] evaluate(Object[] data)
 
     if (start>=length)
     {	// this was a dummy call, probably with initial (empty) data arrays
-	return result;
+	return;
     }
 
     // reset count so indexing does not run over
@@ -130,87 +189,44 @@ public Object[] evaluate(Object[] data)
     assert (start<length);
     assert (index_step>0);
 
-    poly_model = new BounceModel(window_size, degree, 0);    
-    BounceParameters[] poly_fit=new BounceParameters[count];
+    if (poly_model == null || poly_model_size != window_size)
+    {	// the models depend only on the window size, so keep them for later calls
+	poly_model = new BounceModel(window_size, degree, 0);
+	step_model = new BounceModel(window_size, degree, Double.NaN);
+	poly_model_size = window_size;
+    }
+
+    final BounceParameters[] poly_fit=new BounceParameters[count];
     //	poly_fit[c] are the parameters for polynomial fitted for a window around cth time step
 
-    step_model = new BounceModel(window_size, degree, Double.NaN);
-    BounceParameters[] step_fit=new BounceParameters[count];
+    final BounceParameters[] step_fit=new BounceParameters[count];
     //	step_fit[c] are the parameters for model with unspecified step fit 
     //	They are initially created for windows looking for steps around each c value,
     //  but are later sorted into 
 
-
-    int[]  c_at = new int[count];
+    final int[]  c_at = new int[count];
     //	c_at[i] is the position of c  in the window for the model fitted around	 cth time step
 
-    // fit models at each step 
-    fit_models:
+    // fit models at each step, reusing fits from the previous call
+    //	where none of the data a window could use has changed
+    boolean[][] dirty = findDirtyWindows(x, y, start, index_step, count);
+    final int fit_start = start, fit_count = count;
+    forEachStep(count, (c) ->
+    {	int i = fit_start+index_step*c;
+	if (!dirty[0][i])
+	{   poly_fit[c] = prev_poly_fit[i];
+	    step_fit[c] = prev_step_fit[i];
+	    c_at[c] = prev_c_at[i];
+	    return;
+	}
+	fitWindow(x, y, length, i, index_step, c, poly_fit, step_fit, c_at);
+    });
     for(int c=0; c<count; c++)
     {	int i = start+index_step*c;
-	
-	// We need to find a window (window_size contiguous points around i with valid data)
-	// Ideally, we'd like a symmetric window, but if there is missing data,
-	//	we'll have to move forward or backward.
-	
-	c_at[c] = window_size/2;	// where is position c in the window
-
-	int highest_bad_index=-1;
-	for (int in_w=window_size-1; in_w>=0; in_w--)
-	{   int index=i + index_step*(in_w-c_at[c]);
-	    if (index<0 || index>=length || Double.isNaN(x[index]) || Double.isNaN(y[index]))
-	    {	highest_bad_index = in_w;
-		break;
-	    }
-	}
-//	System.out.format("DEBUG: At %d, highest_bad=%d, that is step %d\n", i, highest_bad_index, i-c_at[c]+highest_bad_index);
-	if (highest_bad_index>=0)
-	{   // The default window won't work.
-	    // We need to try shifting the window.
-
-	    int lowest_bad_index=window_size;
-	    for (int in_w=0; in_w<window_size; in_w++)
-	    {	int index=i + index_step*(in_w-c_at[c]);
-		if (index<0 || index>=length || Double.isNaN(x[index]) || Double.isNaN(y[index]))
-		{   lowest_bad_index = in_w;
-		    break;
-		}
-	    }
-	    
-	    // We either want to move the window up so it starts after highest_bad_index
-	    //	(subtracting highest_bad_index+1 from c_at[c])
-	    // or move the window down so it ends before lowest_bad_index,
-	    //	(subtracting lowest_bad_index-window_size from c_at[c])
-	    // whichever is closest
-	    
-	    int move_up = highest_bad_index+1;
-	    int move_down = window_size-lowest_bad_index;
-	    c_at[c] -= (move_up<=move_down)? move_up: (0-move_down);
-	
-	    for (int in_w=window_size-1; in_w>=0; in_w--)
-	    {	int index=i + index_step*(in_w-c_at[c]);
-		if (index<0 || index>=length || Double.isNaN(x[index]) || Double.isNaN(y[index]))
-		{  
-//		    System.out.format("DEBUG: At %d, no window\n", i);
-		    continue fit_models;	// moved window also failed
-		}
-	    }
-
-	}
-	
-//	  System.out.format("DEBUG: At %d, window is %d to %d\n", i, i-c_at[c], i-c_at[c]+window_size-1);
-
-	poly_fit[c] = poly_model.fit_xy(x,y, i-c_at[c]*index_step, index_step);
-	step_fit[c] = step_model.fit_xy(x,y, i-c_at[c]*index_step, index_step);
-	
-//DEBUG	
-//	if (step_fit[c] != null)
-//	{    System.out.format("DEBUG: frame %d, step at %.3f, saves %.4g = %.2f%%\n",
-//		i, i+index_step*(step_fit[c].getStepAt()-c_at[c]), poly_fit[c].getError()-step_fit[c].getError(),
-//		100.*(poly_fit[c].getError()-step_fit[c].getError())/ poly_fit[c].getError());
-//      }
-//END DEBUG
-    
+	prev_poly_fit[i] = poly_fit[c];
+	prev_step_fit[i] = step_fit[c];
+	prev_c_at[i] = c_at[c];
+	prev_fitted[i] = true;
     }
 
 //DEBUG	
@@ -231,25 +247,29 @@ public Object[] evaluate(Object[] data)
     //    0.5*(window_size-1) of step  for refit model vs polynomial model
     final double[] step_value = new double[count];
     
-    for(int c=0; c<count; c++)
+    forEachStep(count, (c) ->
     {   
-        if (null==step_fit[c]) continue;
+	int i = fit_start+index_step*c;	
+	if (!dirty[1][i])
+	{   step_value[c] = prev_step_value[i];
+	    return;
+	}
+        if (null==step_fit[c]) return;
 	double possible_step_time = step_fit[c].getStepAt();
-        if (possible_step_time==0.0) continue;
+        if (possible_step_time==0.0) return;
 
-	int i = start+index_step*c;	
 	double i_step_time = i + index_step*(possible_step_time -c_at[c]);
 	
 	double[] step_size = step_fit[c].getStepSize();
 
-	for(int i_wind=Math.max(start,     (int)(i_step_time-0.5*(window_size-1)+0.999)); 
+	for(int i_wind=Math.max(fit_start,     (int)(i_step_time-0.5*(window_size-1)+0.999)); 
 		i_wind<=Math.min(length-1, (int)(i_step_time+0.5*(window_size-1)+0.001)); 
 		i_wind++)
-	{   int c_wind = (i_wind-start)/index_step;
-	    if (c_wind >= count) continue;
-	    if (! (0<=c_wind && c_wind<count))
+	{   int c_wind = (i_wind-fit_start)/index_step;
+	    if (c_wind >= fit_count) continue;
+	    if (! (0<=c_wind && c_wind<fit_count))
 	    {    System.out.format("ERROR: c_wind=%d, i_wind=%d, start=%d, i_step_time=%.3f\n", //$NON-NLS-1$
-	    		c_wind, i_wind, start, i_step_time);
+	    		c_wind, i_wind, fit_start, i_step_time);
 	    }
 	    if (null==poly_fit[c_wind]) continue;
 	    double poly_err = poly_fit[c_wind].getError();
@@ -265,6 +285,11 @@ public Object[] evaluate(Object[] data)
 	    step_value[c] += poly_err - step_err;
 	}
 	
+    });
+    for(int c=0; c<count; c++)
+    {	int i = start+index_step*c;
+	prev_step_value[i] = step_value[c];
+	prev_valued[i] = true;
     }
     
 //DEBUG
@@ -419,6 +444,143 @@ public Object[] evaluate(Object[] data)
 	xDeriv2[i] = deriv2[0];
 	yDeriv2[i] = deriv2[1];
     }
-    return result;
+  }
+
+  /**
+   * Fits the polynomial and unknown-step models to a window around index i
+   * (the cth time step), shifting the window if needed to avoid missing data.
+   * Only element c of the result arrays is set.
+   */
+  private void fitWindow(double[] x, double[] y, int length, int i, int index_step, int c,
+  		BounceParameters[] poly_fit, BounceParameters[] step_fit, int[] c_at)
+  {
+	// We need to find a window (window_size contiguous points around i with valid data)
+	// Ideally, we'd like a symmetric window, but if there is missing data,
+	//	we'll have to move forward or backward.
+	
+	c_at[c] = window_size/2;	// where is position c in the window
+
+	int highest_bad_index=-1;
+	for (int in_w=window_size-1; in_w>=0; in_w--)
+	{   int index=i + index_step*(in_w-c_at[c]);
+	    if (index<0 || index>=length || Double.isNaN(x[index]) || Double.isNaN(y[index]))
+	    {	highest_bad_index = in_w;
+		break;
+	    }
+	}
+	if (highest_bad_index>=0)
+	{   // The default window won't work.
+	    // We need to try shifting the window.
+
+	    int lowest_bad_index=window_size;
+	    for (int in_w=0; in_w<window_size; in_w++)
+	    {	int index=i + index_step*(in_w-c_at[c]);
+		if (index<0 || index>=length || Double.isNaN(x[index]) || Double.isNaN(y[index]))
+		{   lowest_bad_index = in_w;
+		    break;
+		}
+	    }
+	    
+	    // We either want to move the window up so it starts after highest_bad_index
+	    //	(subtracting highest_bad_index+1 from c_at[c])
+	    // or move the window down so it ends before lowest_bad_index,
+	    //	(subtracting lowest_bad_index-window_size from c_at[c])
+	    // whichever is closest
+	    
+	    int move_up = highest_bad_index+1;
+	    int move_down = window_size-lowest_bad_index;
+	    c_at[c] -= (move_up<=move_down)? move_up: (0-move_down);
+	
+	    for (int in_w=window_size-1; in_w>=0; in_w--)
+	    {	int index=i + index_step*(in_w-c_at[c]);
+		if (index<0 || index>=length || Double.isNaN(x[index]) || Double.isNaN(y[index]))
+		{  
+		    return;	// moved window also failed
+		}
+	    }
+
+	}
+	
+	poly_fit[c] = poly_model.fit_xy(x,y, i-c_at[c]*index_step, index_step);
+	step_fit[c] = step_model.fit_xy(x,y, i-c_at[c]*index_step, index_step);
+  }
+
+  /**
+   * Compares the data with that of the previous call and finds the indices
+   * whose window fits and step values may have changed. Results cached for
+   * those indices are discarded, and the data is saved for the next call.
+   * 
+   * @return {fits, step values}, each true for each index that must be recomputed
+   */
+  private boolean[][] findDirtyWindows(double[] x, double[] y, int start, int index_step, int count)
+  {
+    int length = x.length;
+    boolean[][] dirty = new boolean[2][length];
+    if (prev_x == null || prev_x.length != length || prev_window_size != window_size 
+    		|| prev_index_step != index_step)
+    {	// nothing can be reused
+	prev_x = new double[length];
+	prev_y = new double[length];
+	prev_poly_fit = new BounceParameters[length];
+	prev_step_fit = new BounceParameters[length];
+	prev_c_at = new int[length];
+	prev_fitted = new boolean[length];
+	prev_step_value = new double[length];
+	prev_valued = new boolean[length];
+	prev_window_size = window_size;
+	prev_index_step = index_step;
+    }
+    if (prev_start != start || prev_count != count)
+    {	// step values depend on which windows are evaluated
+	Arrays.fill(prev_valued, false);
+	prev_start = start;
+	prev_count = count;
+    }
+    
+    // changed[n] is the number of changed data points below index n
+    int[] changed = new int[length+1];
+    for (int n = 0; n < length; n++)
+    {	boolean same = Double.doubleToLongBits(x[n]) == Double.doubleToLongBits(prev_x[n])
+		&& Double.doubleToLongBits(y[n]) == Double.doubleToLongBits(prev_y[n]);
+	changed[n+1] = changed[n] + (same? 0: 1);
+    }
+    
+    // a shifted window may reach up to 3*(window_size/2)+1 steps from its center,
+    //	and a step value uses fits of windows up to about window_size steps away
+    int reach = (3*(window_size/2)+1)*index_step;
+    int value_reach = reach + (window_size+1)*index_step + window_size;
+    for (int n = 0; n < length; n++)
+    {	int lo = Math.max(0, n-reach);
+	int hi = Math.min(length, n+reach+1);
+	if (!prev_fitted[n] || changed[hi] > changed[lo])
+	{   dirty[0][n] = true;
+	    prev_fitted[n] = false;
+	}
+	lo = Math.max(0, n-value_reach);
+	hi = Math.min(length, n+value_reach+1);
+	if (!prev_valued[n] || changed[hi] > changed[lo])
+	{   dirty[1][n] = true;
+	    prev_valued[n] = false;
+	}
+    }
+    System.arraycopy(x, 0, prev_x, 0, length);
+    System.arraycopy(y, 0, prev_y, 0, length);
+    return dirty;
+  }
+
+  /**
+   * Performs an independent task for each of count time steps, in parallel
+   * on the common ForkJoinPool when there are enough steps to be worth it.
+   */
+  private static void forEachStep(int count, IntConsumer task)
+  {
+    if (count >= PARALLEL_MIN_COUNT && !OSPRuntime.isJS)
+    {	IntStream.range(0, count).parallel().forEach(task);
+    }
+    else
+    {	for (int c=0; c<count; c++)
+	{   task.accept(c);
+	}
+    }
   }
 }
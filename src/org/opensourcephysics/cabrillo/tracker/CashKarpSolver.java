@@ -0,0 +1,55 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import org.opensourcephysics.numerics.ODE;
+
+/**
+ * An adaptive solver using the Cash-Karp 5(4) embedded Runge-Kutta method.
+ * The fifth order solution is propagated and each internal step costs six rate
+ * evaluations.
+ */
+public class CashKarpSolver extends AdaptiveStepSolver {
+
+	private final static double[][] A = {
+			{ 1.0 / 5 },
+			{ 3.0 / 40, 9.0 / 40 },
+			{ 3.0 / 10, -9.0 / 10, 6.0 / 5 },
+			{ -11.0 / 54, 5.0 / 2, -70.0 / 27, 35.0 / 27 },
+			{ 1631.0 / 55296, 175.0 / 512, 575.0 / 13824, 44275.0 / 110592, 253.0 / 4096 } };
+	private final static double[] B = { 37.0 / 378, 0, 250.0 / 621, 125.0 / 594, 0, 512.0 / 1771 };
+	private final static double[] E = { 37.0 / 378 - 2825.0 / 27648, 0, 250.0 / 621 - 18575.0 / 48384,
+			125.0 / 594 - 13525.0 / 55296, -277.0 / 14336, 512.0 / 1771 - 1.0 / 4 };
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ode the ODE
+	 */
+	public CashKarpSolver(ODE ode) {
+		super(ode, A, B, E, false);
+	}
+
+}
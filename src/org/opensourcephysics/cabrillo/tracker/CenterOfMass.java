@@ -53,6 +53,10 @@ public class CenterOfMass extends PointMass {
 	private ArrayList<String> massNames = new ArrayList<String>();
 	protected JMenuItem inspectorItem;
 	protected CenterOfMassInspector inspector;
+	// frames with member steps changed since the last update
+	private BitSet changedFrames = new BitSet();
+	// maximum changed frames reported as individual step changes
+	private static final int MAX_STEP_EVENTS = 8;
 
 	/**
 	 * Constructs an empty CenterOfMass.
@@ -316,7 +320,7 @@ public class CenterOfMass extends PointMass {
 					break;
 				case PROPERTY_TTRACK_STEP:
 					int n = ((Integer) e.getNewValue()).intValue();
-					update(n, true);
+					updateLater(n);
 					break;
 				case PROPERTY_TTRACK_STEPS:
 					update();
@@ -351,6 +355,7 @@ public class CenterOfMass extends PointMass {
 	 * Updates all cm steps.
 	 */
 	private void update() {
+		changedFrames.clear();
 		// update mass and count steps
 		mass = 0;
 		int length = getSteps().length;
@@ -370,6 +375,47 @@ public class CenterOfMass extends PointMass {
 		repaint();
 	}
 
+	/**
+	 * Marks a frame for updating when the current event is done. Changes to any
+	 * number of member steps in the same event cycle are handled by a single
+	 * call to updateChangedFrames().
+	 *
+	 * @param n the frame number
+	 */
+	private void updateLater(int n) {
+		if (changedFrames.isEmpty())
+			SwingUtilities.invokeLater(() -> updateChangedFrames());
+		changedFrames.set(n);
+	}
+
+	/**
+	 * Updates the cm steps at the changed frames and the derivatives near them.
+	 */
+	private void updateChangedFrames() {
+		if (changedFrames.isEmpty() || masses.length == 0) { // disposed
+			changedFrames.clear();
+			return;
+		}
+		int first = changedFrames.nextSetBit(0);
+		int last = changedFrames.length() - 1;
+		int count = changedFrames.cardinality();
+		int[] frames = changedFrames.stream().toArray();
+		changedFrames.clear();
+		for (int n : frames)
+			update(n, false);
+		updateDerivativesNear(first, last);
+		if (count <= MAX_STEP_EVENTS) {
+			for (int n : frames)
+				firePropertyChange(PROPERTY_TTRACK_STEP, null, new Integer(n));
+		} else
+			fireStepsChanged();
+		// update inspector, if visible
+		if (inspector != null && inspector.isVisible()) {
+			inspector.updateDisplay();
+		}
+		repaint();
+	}
+
 	/**
 	 * Updates the specified cm step.
 	 *
@@ -53,4 +53,25 @@ public interface Derivative {
    */
   public Object[] evaluate(Object[] data);
 
+  /**
+   * Evaluates the derivative into caller-supplied arrays, with no boxing or
+   * allocation. Derivatives are found at the count indices start, start+step, ...
+   * and written to the same indices of the output arrays, which must be at
+   * least as long as x. Algorithms that find both derivatives write the first.
+   * 
+   * Note: output values are NaN if no derivative could be determined
+   *
+   * @param x the x data
+   * @param y the y data (may be null for 1d data)
+   * @param valid the validity of each data point
+   * @param spill the number of steps on either side used for each derivative
+   * @param start the first index
+   * @param step the index step size
+   * @param count the number of indices
+   * @param outX the x derivative
+   * @param outY the y derivative (may be null if y is null)
+   */
+  public void evaluate(double[] x, double[] y, boolean[] valid, int spill, int start, int step, int count,
+  		double[] outX, double[] outY);
+
 }
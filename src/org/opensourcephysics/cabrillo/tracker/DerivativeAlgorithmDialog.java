@@ -39,12 +39,16 @@ import javax.swing.Box;
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JRadioButton;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JTextPane;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.border.Border;
 import javax.swing.border.TitledBorder;
+import javax.swing.event.ChangeListener;
 
 import org.opensourcephysics.tools.FontSizer;
 
@@ -63,11 +67,14 @@ public class DerivativeAlgorithmDialog extends JDialog {
 	protected ArrayList<PointMass> targetMasses = new ArrayList<PointMass>();
 	protected JButton okButton, cancelButton;
 	JTextPane textPane;
-	int[] types = new int[] { PointMass.FINITE_DIFF, PointMass.BOUNCE_DETECT };
+	int[] types = new int[] { PointMass.FINITE_DIFF, PointMass.BOUNCE_DETECT, PointMass.SAVITZKY_GOLAY };
 //	int[] types = new int[] {PointMass.FINITE_DIFF, PointMass.FINITE_DIFF_VSPILL2, PointMass.BOUNCE_DETECT};
 	JRadioButton[] buttons = new JRadioButton[types.length];
 	TitledBorder choiceBorder;
-	int prevAlgorithm;
+	int prevAlgorithm, prevSGSpill, prevSGOrder;
+	JLabel sgWindowLabel, sgOrderLabel;
+	JSpinner sgWindowSpinner, sgOrderSpinner;
+	boolean refreshing;
 
 	/**
 	 * Constructor.
@@ -128,6 +135,7 @@ public class DerivativeAlgorithmDialog extends JDialog {
 					next.setAlgorithm(i);
 				}
 				refreshInfo(i);
+				refreshSettings(i);
 			}
 		};
 		for (int i = 0; i < types.length; i++) {
@@ -138,7 +146,38 @@ public class DerivativeAlgorithmDialog extends JDialog {
 			group.add(buttons[i]);
 			choicebar.add(buttons[i]);
 		}
-		contentPane.add(choicebar, BorderLayout.NORTH);
+		JPanel north = new JPanel(new BorderLayout());
+		north.add(choicebar, BorderLayout.NORTH);
+		contentPane.add(north, BorderLayout.NORTH);
+
+		// create Savitzky-Golay settings: window size is always odd
+		sgWindowLabel = new JLabel();
+		sgWindowSpinner = new JSpinner(new SpinnerNumberModel(7, 3, 2 * SavitzkyGolayDerivative.MAX_SPILL + 1, 2));
+		sgOrderLabel = new JLabel();
+		sgOrderSpinner = new JSpinner(new SpinnerNumberModel(SavitzkyGolayDerivative.MIN_ORDER,
+				SavitzkyGolayDerivative.MIN_ORDER, SavitzkyGolayDerivative.MAX_ORDER, 1));
+		ChangeListener sgListener = (e) -> {
+			if (refreshing)
+				return;
+			int spill = ((Integer) sgWindowSpinner.getValue() - 1) / 2;
+			int order = (Integer) sgOrderSpinner.getValue();
+			for (PointMass next : targetMasses) {
+				next.setSavitzkyGolay(spill, order);
+			}
+		};
+		sgWindowSpinner.addChangeListener(sgListener);
+		sgOrderSpinner.addChangeListener(sgListener);
+		Box settingsbar = Box.createHorizontalBox();
+		settingsbar.setBorder(BorderFactory.createEmptyBorder(0, 6, 3, 6));
+		settingsbar.add(sgWindowLabel);
+		settingsbar.add(Box.createHorizontalStrut(4));
+		settingsbar.add(sgWindowSpinner);
+		settingsbar.add(Box.createHorizontalStrut(12));
+		settingsbar.add(sgOrderLabel);
+		settingsbar.add(Box.createHorizontalStrut(4));
+		settingsbar.add(sgOrderSpinner);
+		settingsbar.add(Box.createHorizontalGlue());
+		north.add(settingsbar, BorderLayout.SOUTH);
 
 		// create OK button
 		okButton = new JButton();
@@ -188,9 +227,13 @@ public class DerivativeAlgorithmDialog extends JDialog {
 				s = TrackerRes.getString("AlgorithmDialog.Button.BounceDetect"); //$NON-NLS-1$
 			} else if (type == PointMass.FINITE_DIFF_VSPILL2) {
 				s = TrackerRes.getString("AlgorithmDialog.Button.SmoothFiniteDifference"); //$NON-NLS-1$
+			} else if (type == PointMass.SAVITZKY_GOLAY) {
+				s = TrackerRes.getString("AlgorithmDialog.Button.SavitzkyGolay"); //$NON-NLS-1$
 			}
 			buttons[i].setText(s);
 		}
+		sgWindowLabel.setText(TrackerRes.getString("AlgorithmDialog.Label.Window")); //$NON-NLS-1$
+		sgOrderLabel.setText(TrackerRes.getString("AlgorithmDialog.Label.Order")); //$NON-NLS-1$
 	}
 
 	/**
@@ -212,16 +255,37 @@ public class DerivativeAlgorithmDialog extends JDialog {
 			s = TrackerRes.getString("AlgorithmDialog.SmoothFiniteDifference.Message1") //$NON-NLS-1$
 					+ "\n\n    " + TrackerRes.getString("AlgorithmDialog.SmoothFiniteDifference.Message2") //$NON-NLS-1$ //$NON-NLS-2$
 					+ "\n\n    " + TrackerRes.getString("AlgorithmDialog.SmoothFiniteDifference.Message3"); //$NON-NLS-1$ //$NON-NLS-2$
+		} else if (algorithm == PointMass.SAVITZKY_GOLAY) {
+			s = TrackerRes.getString("AlgorithmDialog.SavitzkyGolay.Message1") //$NON-NLS-1$
+					+ "\n\n" + TrackerRes.getString("AlgorithmDialog.SavitzkyGolay.Message2"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 		textPane.setText(s);
 	}
 
+	/**
+	 * Refreshes the Savitzky-Golay settings.
+	 */
+	private void refreshSettings(int algorithm) {
+		boolean enabled = algorithm == PointMass.SAVITZKY_GOLAY;
+		sgWindowLabel.setEnabled(enabled);
+		sgWindowSpinner.setEnabled(enabled);
+		sgOrderLabel.setEnabled(enabled);
+		sgOrderSpinner.setEnabled(enabled);
+	}
+
 	private void initialize() {
 		// save and display current algorithm
 		if (!targetMasses.isEmpty()) {
 			PointMass p = targetMasses.get(0);
 			prevAlgorithm = p.algorithm;
+			prevSGSpill = p.getSavitzkyGolaySpill();
+			prevSGOrder = p.getSavitzkyGolayOrder();
+			refreshing = true;
+			sgWindowSpinner.setValue(2 * prevSGSpill + 1);
+			sgOrderSpinner.setValue(prevSGOrder);
+			refreshing = false;
 		}
+		refreshSettings(prevAlgorithm);
 		for (int i = 0; i < types.length; i++) {
 			int type = types[i];
 			if (type == prevAlgorithm) {
@@ -234,6 +298,7 @@ public class DerivativeAlgorithmDialog extends JDialog {
 
 	private void revert() {
 		for (PointMass next : targetMasses) {
+			next.setSavitzkyGolay(prevSGSpill, prevSGOrder);
 			next.setAlgorithm(prevAlgorithm);
 		}
 	}
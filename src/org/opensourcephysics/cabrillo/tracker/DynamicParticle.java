@@ -29,7 +29,6 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
-import java.util.HashMap;
 
 import org.opensourcephysics.controls.XML;
 import org.opensourcephysics.controls.XMLControl;
@@ -41,6 +40,7 @@ import org.opensourcephysics.media.core.NumberField;
 import org.opensourcephysics.media.core.Trackable;
 import org.opensourcephysics.media.core.VideoClip;
 import org.opensourcephysics.numerics.ODE;
+import org.opensourcephysics.numerics.ODEAdaptiveSolver;
 import org.opensourcephysics.numerics.ODESolver;
 import org.opensourcephysics.numerics.RK4;
 import org.opensourcephysics.tools.Parameter;
@@ -67,8 +67,10 @@ public class DynamicParticle extends ParticleModel implements ODE {
 	protected double[] initialState = new double[5]; // {x, vx, y, vy, t}
 	protected ODESolver solver = new RK4(this);
 	protected int iterationsPerStep = 10;
+	protected double solverTolerance = AdaptiveStepSolver.DEFAULT_TOLERANCE;
+	protected long rateCount; // rate evaluations since reset
 	protected DynamicSystem system;
-	protected HashMap<Integer, double[]> frameStates = new HashMap<Integer, double[]>();
+	protected FrameStateStore frameStates = new FrameStateStore(5);
 
 	protected String[] getBoostVars() {
 		return cartVars;
@@ -155,6 +157,7 @@ public class DynamicParticle extends ParticleModel implements ODE {
 		if (system != null)
 			return;
 		resetState(); // resets state to initial state (ie at startFrame)
+		frameStates.clear();
 		double[] state = getState();
 		// state is {x, vx, y, vy, t} but may be different in subclasses
 		t0 = state[state.length - 1]; // time at start frame
@@ -163,7 +166,9 @@ public class DynamicParticle extends ParticleModel implements ODE {
 			erase();
 			dt = tp.getPlayer().getMeanStepDuration() / (1000 * tracePtsPerStep);
 			dt /= iterationsPerStep;
-			solver.initialize(dt);
+			int iterations = getSolverIterations();
+			solver.initialize(dt * iterationsPerStep / iterations);
+			rateCount = 0;
 			ParticleModel[] models = getModels();
 			VideoClip clip = tp.getPlayer().getVideoClip();
 			// find last frame included in both model and clip
@@ -205,7 +210,7 @@ public class DynamicParticle extends ParticleModel implements ODE {
 				coords = ((ReferenceFrame) coords).getCoords();
 			}
 			// step solver forward to first frame in clip
-			int count = (firstFrameInClip - getStartFrame()) * tracePtsPerStep * iterationsPerStep / clip.getStepSize();
+			int count = (firstFrameInClip - getStartFrame()) * tracePtsPerStep * iterations / clip.getStepSize();
 			for (int i = 0; i < count; i++) {
 				solver.step();
 			}
@@ -252,13 +257,35 @@ public class DynamicParticle extends ParticleModel implements ODE {
 	}
 
 	/**
-	 * Saves the current state.
+	 * Stops the background trace computation of this or its system, if any.
+	 */
+	@Override
+	protected void stopTraceTask() {
+		if (system != null)
+			system.stopTraceTask();
+		else
+			super.stopTraceTask();
+	}
+
+	/**
+	 * Gets the current state to be saved with saveState().
+	 * 
+	 * @return the state
+	 */
+	@Override
+	protected double[] getStateToSave() {
+		return getState();
+	}
+
+	/**
+	 * Saves a state.
 	 * 
 	 * @param frameNumber the frame number
+	 * @param state       the state to save (copied)
 	 */
 	@Override
-	protected void saveState(int frameNumber) {
-		frameStates.put(frameNumber, getState().clone());
+	protected void saveState(int frameNumber, double[] state) {
+		frameStates.put(frameNumber, state);
 	}
 
 	/**
@@ -269,12 +296,7 @@ public class DynamicParticle extends ParticleModel implements ODE {
 	 */
 	@Override
 	protected boolean restoreState(int frameNumber) {
-		double[] savedState = frameStates.get(frameNumber);
-		if (savedState != null) {
-			System.arraycopy(savedState, 0, state, 0, state.length);
-			return true;
-		}
-		return false;
+		return frameStates.get(frameNumber, state);
 	}
 
 	protected double[] temp = new double[5];
@@ -288,7 +310,8 @@ public class DynamicParticle extends ParticleModel implements ODE {
 	 */
 	@Override
 	public void getRate(double[] state, double[] rate) {
-	    getXYForces(state, temp);
+		rateCount++;
+		getXYForces(state, temp);
 		// rate is {vx, ax, vy, ay, 1}
 		rate[0] = state[1]; // dx/dt = vx
 		rate[1] = temp[0] / getMass(); // dvx/dt = ax
@@ -307,13 +330,71 @@ public class DynamicParticle extends ParticleModel implements ODE {
 		Object[] o = { this };
 		try { // create the solver by reflection
 			java.lang.reflect.Constructor<?> constructor = solverClass.getDeclaredConstructor(c);
-			solver = (ODESolver) constructor.newInstance(o);
+			ODESolver newSolver = (ODESolver) constructor.newInstance(o);
+			if (newSolver instanceof ODEAdaptiveSolver)
+				((ODEAdaptiveSolver) newSolver).setTolerance(solverTolerance);
+			setLastValidFrame(-1); // stops the trace computation before the solver changes
+			solver = newSolver;
 			reset();
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
 	}
 
+	/**
+	 * Gets the ODESolver.
+	 * 
+	 * @return the solver
+	 */
+	public ODESolver getSolver() {
+		return solver;
+	}
+
+	/**
+	 * Sets the tolerance used by adaptive solvers.
+	 * 
+	 * @param tol the tolerance
+	 */
+	public void setSolverTolerance(double tol) {
+		if (!(tol > 0) || tol == solverTolerance)
+			return;
+		solverTolerance = tol;
+		if (solver instanceof ODEAdaptiveSolver) {
+			setLastValidFrame(-1); // stops the trace computation before the solver changes
+			((ODEAdaptiveSolver) solver).setTolerance(tol);
+			repaint();
+		}
+	}
+
+	/**
+	 * Gets the tolerance used by adaptive solvers.
+	 * 
+	 * @return the tolerance
+	 */
+	public double getSolverTolerance() {
+		return solverTolerance;
+	}
+
+	/**
+	 * Gets the number of rate evaluations since the model was last reset. This
+	 * measures the cost of computing the current steps.
+	 * 
+	 * @return the number of getRate() calls
+	 */
+	public long getRateCount() {
+		return rateCount;
+	}
+
+	/**
+	 * Gets the number of solver steps per trace point. An AdaptiveStepSolver
+	 * chooses its own internal steps so it needs only one.
+	 * 
+	 * @return the number of steps
+	 */
+	protected int getSolverIterations() {
+		return solver instanceof AdaptiveStepSolver ? 1 : iterationsPerStep;
+	}
+
 	/**
 	 * Gets the initial state {x, vx, y, vy, t}.
 	 * 
@@ -382,7 +463,16 @@ public class DynamicParticle extends ParticleModel implements ODE {
 		else
 			super.setEndFrame(n);
 	}
-	
+
+	/**
+	 * Trims all steps after endFrame and discards the states saved for them.
+	 */
+	@Override
+	protected void trimSteps() {
+		super.trimSteps();
+		frameStates.truncate(getLastValidFrame());
+	}
+
 	@Override
 	public void propertyChange(PropertyChangeEvent e) {
 		super.propertyChange(e);
@@ -467,7 +557,7 @@ public class DynamicParticle extends ParticleModel implements ODE {
 	 */
 	@Override
 	protected boolean getNextTracePositions() {
-		for (int i = 0; i < iterationsPerStep; i++) {
+		for (int i = 0, n = getSolverIterations(); i < n; i++) {
 			solver.step();
 		}
 		setTracePositions(getState());
@@ -660,6 +750,39 @@ public class DynamicParticle extends ParticleModel implements ODE {
 
 	}
 
+	/**
+	 * Saves the solver and tolerance if they differ from the defaults.
+	 *
+	 * @param control the control to save to
+	 * @param p       the particle
+	 */
+	static void saveSolver(XMLControl control, DynamicParticle p) {
+		if (!(p.solver instanceof RK4))
+			control.setValue("solver", p.solver.getClass().getName()); //$NON-NLS-1$
+		if (p.solverTolerance != AdaptiveStepSolver.DEFAULT_TOLERANCE)
+			control.setValue("solver_tolerance", p.solverTolerance); //$NON-NLS-1$
+	}
+
+	/**
+	 * Loads the solver and tolerance, if any.
+	 *
+	 * @param control the control
+	 * @param p       the particle
+	 */
+	static void loadSolver(XMLControl control, DynamicParticle p) {
+		double tol = control.getDouble("solver_tolerance"); //$NON-NLS-1$
+		if (!Double.isNaN(tol))
+			p.setSolverTolerance(tol);
+		String solver = control.getString("solver"); //$NON-NLS-1$
+		if (solver != null) {
+			try { // load the solver class
+				p.setSolver(Class.forName(solver));
+			} catch (Exception ex) {
+				/** empty block */
+			}
+		}
+	}
+
 	/**
 	 * Returns an ObjectLoader to save and load data for this class.
 	 *
@@ -690,6 +813,7 @@ public class DynamicParticle extends ParticleModel implements ODE {
 			if (p.modelBooster != null && p.modelBooster.booster != null) {
 				control.setValue("booster", p.modelBooster.booster.getName()); //$NON-NLS-1$
 			}
+			saveSolver(control, p);
 		}
 
 		/**
@@ -717,6 +841,7 @@ public class DynamicParticle extends ParticleModel implements ODE {
 				XML.getLoader(ParticleModel.class).loadObject(control, obj);
 				p.inSystem = control.getBoolean("in_system"); //$NON-NLS-1$
 				p.boosterName = control.getString("booster"); //$NON-NLS-1$
+				loadSolver(control, p);
 			} catch (Exception ex) {
 				// load legacy xml
 				String solver = control.getString("solver"); //$NON-NLS-1$
@@ -246,6 +246,7 @@ public class DynamicParticlePolar extends DynamicParticle {
 			XML.getLoader(ParticleModel.class).saveObject(control, obj);
 			if (p.system != null)
 				control.setValue("in_system", true); //$NON-NLS-1$
+			saveSolver(control, p);
 		}
 
 		/**
@@ -271,6 +272,7 @@ public class DynamicParticlePolar extends DynamicParticle {
 			DynamicParticle p = (DynamicParticle) obj;
 			XML.getLoader(ParticleModel.class).loadObject(control, obj);
 			p.inSystem = control.getBoolean("in_system"); //$NON-NLS-1$
+			loadSolver(control, p);
 			return obj;
 		}
 	}
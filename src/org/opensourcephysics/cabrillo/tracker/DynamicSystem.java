@@ -35,7 +35,6 @@ import java.awt.event.ActionListener;
 import java.awt.geom.*;
 import java.beans.PropertyChangeEvent;
 import java.util.ArrayList;
-import java.util.TreeMap;
 
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
@@ -73,7 +72,7 @@ public class DynamicSystem extends DynamicParticlePolar {
 	protected StepArray realSteps;
 	protected StepArray noSteps;
 	protected int systemInspectorX = Integer.MIN_VALUE, systemInspectorY;
-	protected TreeMap<Integer, double[]> frameRelativeStates = new TreeMap<Integer, double[]>();
+	protected FrameStateStore frameRelativeStates = new FrameStateStore(5);
 	protected boolean refreshing = false;
 
 	protected final static String[] dataVariables = new String[] {
@@ -174,7 +173,7 @@ public class DynamicSystem extends DynamicParticlePolar {
 			return;
 		}
 		if (tp.getFrameNumber() > getLastValidFrame()) {
-			refreshSteps("DyamSys draw");
+			refreshStepsInBackground("DyamSys draw"); //$NON-NLS-1$
 		}
 		for (ParticleModel next : getModels()) {
 			next.drawMe(panel, _g);
@@ -452,6 +451,7 @@ public class DynamicSystem extends DynamicParticlePolar {
 	 */
 	@Override
 	public void getRate(double[] state, double[] rate) {
+		rateCount++;
 		rate[rate.length - 1] = 1; // dt/dt=1
 		if (particles.length == 0) {
 			return;
@@ -669,12 +669,11 @@ public class DynamicSystem extends DynamicParticlePolar {
 				validData[10][pt] = Math.sqrt(x * x + y * y);
 				validData[11][pt] = Math.atan2(y, x);
 			}
-			double[] relState;
-			if (particles.length == 2 && (relState = frameRelativeStates.get(i)) != null) {
-				validData[21][pt] = relState[0]; // r_rel
-				validData[22][pt] = relState[2]; // theta_rel
-				validData[23][pt] = relState[1]; // vr_rel
-				validData[24][pt] = relState[3]; // omega_rel
+			if (particles.length == 2 && frameRelativeStates.contains(i)) {
+				validData[21][pt] = frameRelativeStates.get(i, 0); // r_rel
+				validData[22][pt] = frameRelativeStates.get(i, 2); // theta_rel
+				validData[23][pt] = frameRelativeStates.get(i, 1); // vr_rel
+				validData[24][pt] = frameRelativeStates.get(i, 3); // omega_rel
 			} else {
 				validData[21][pt] = Double.NaN; // r_rel
 				validData[22][pt] = Double.NaN; // theta_rel
@@ -964,13 +963,31 @@ public class DynamicSystem extends DynamicParticlePolar {
 		polarState[2] = r == 0 ? vang : rang; // theta
 		polarState[3] = r == 0 ? 0 : v * Math.sin(dang) / r; // omega
 		polarState[4] = state[8]; // t
-		double[] toSave = new double[polarState.length];
-		System.arraycopy(polarState, 0, toSave, 0, polarState.length);
-		int frameNum = tp.getFrameNumber();
-		frameRelativeStates.put(frameNum, toSave);
 		return polarState;
 	}
 
+	/**
+	 * Saves a state and, for two particles, the relative polar state.
+	 * 
+	 * @param frameNumber the frame number
+	 * @param state       the state to save (copied)
+	 */
+	@Override
+	protected void saveState(int frameNumber, double[] state) {
+		super.saveState(frameNumber, state);
+		if (particles.length == 2)
+			frameRelativeStates.put(frameNumber, getRelativePolarState(state));
+	}
+
+	/**
+	 * Resets parameters, initializes solver and sets position(s) for start frame.
+	 */
+	@Override
+	public void reset() {
+		frameRelativeStates.clear();
+		super.reset();
+	}
+
 //______________________________ private methods __________________________
 
 	private Parameter createParameter(String name, String expression, String description) {
@@ -1024,6 +1041,7 @@ public class DynamicSystem extends DynamicParticlePolar {
 			}
 			// save particle model data
 			XML.getLoader(ParticleModel.class).saveObject(control, obj);
+			saveSolver(control, system);
 		}
 
 		/**
@@ -1056,6 +1074,7 @@ public class DynamicSystem extends DynamicParticlePolar {
 			}
 			system.systemInspectorX = control.getInt("system_inspector_x"); //$NON-NLS-1$
 			system.systemInspectorY = control.getInt("system_inspector_y"); //$NON-NLS-1$
+			loadSolver(control, system);
 			return obj;
 		}
 	}
@@ -68,47 +68,65 @@ public Object[] evaluate(Object[] data) {
       result[0] = xDeriv = new double[x.length];
       result[1] = yDeriv = new double[x.length];
     }
+    evaluate(x, y, valid, spill, start, step, count, xDeriv, y == null? null: yDeriv);
+    return result;
+  }
+
+  @Override
+  public void evaluate(double[] x, double[] y, boolean[] valid, int spill, int start, int step, int count,
+  		double[] outX, double[] outY) {
+    int length = Math.min(x.length, valid.length);
+    int reach = spill*step;
 
     // get upper and lower index checking limits
     int lower = start;
-    int upper = Math.min(start + step*(count-1), x.length);
-
-    // find v at each step index from lower to upper
-    outer:
-    for (int i = lower; i <= upper; i+=step) {
+    int upper = Math.min(start + step*(count-1), length - 1);
 
-      // derivative at i will be valid only if all step positions
-      // between i-spill*step and i+spill*step are valid
-      for (int j = i - spill*step; j <= i + spill*step; j+=step) {
-        if (j < 0 || j >= valid.length || !valid[j]) {
-        	if (i<valid.length) {
-        		xDeriv[i] = Double.NaN;
-        		if (y != null)
-        			yDeriv[i] = Double.NaN;
-        	}
-          continue outer;
+    // find v at each step index that has data on both sides, ignoring validity:
+    // these loops have no branches so the JIT can vectorize them
+    int first = Math.max(lower, lower + step*((reach - lower + step - 1)/step));
+    int last = Math.min(upper, length - 1 - reach);
+    if (spill == 1) {
+      for (int i = first; i <= last; i+=step) {
+        outX[i] = (- x[i - step]
+                   + x[i + step]) / 2;
+      }
+      if (y != null) {
+        for (int i = first; i <= last; i+=step) {
+          outY[i] = (- y[i - step]
+                     + y[i + step]) / 2;
         }
       }
+    } else { // spill is 2
+      for (int i = first; i <= last; i+=step) {
+        outX[i] = (- 2 * x[i - 2*step]
+                   - x[i - step]
+                   + x[i + step]
+                   + 2 * x[i + 2*step]) / 10;
+      }
+      if (y != null) {
+        for (int i = first; i <= last; i+=step) {
+          outY[i] = (- 2 * y[i - 2*step]
+                     - y[i - step]
+                     + y[i + step]
+                     + 2 * y[i + 2*step]) / 10;
+        }
+      }
+    }
 
-      // use first derivative algorithm
-      if (spill == 1) {
-        xDeriv[i] = (- x[i - step]
-                     + x[i + step]) / 2;
-    		if (y != null)
-	        yDeriv[i] = (- y[i - step]
-	                     + y[i + step]) / 2;
-      } else { // spill is 2
-        xDeriv[i] = (- 2 * x[i - 2*step]
-                     - x[i - step]
-                     + x[i + step]
-                     + 2 * x[i + 2*step]) / 10;
-    		if (y != null)
-	        yDeriv[i] = (- 2 * y[i - 2*step]
-	                     - y[i - step]
-	                     + y[i + step]
-	                     + 2 * y[i + 2*step]) / 10;
+    // derivative at i is valid only if all step positions between
+    // i-spill*step and i+spill*step are valid: count consecutive valid
+    // positions in a single pass instead of checking each window
+    int width = 2*spill + 1;
+    int run = 0;
+    for (int j = lower - reach; j <= upper + reach; j+=step) {
+      run = (j >= 0 && j < length && valid[j])? run + 1: 0;
+      int i = j - reach;
+      if (i >= lower && run < width) {
+        outX[i] = Double.NaN;
+        if (y != null)
+          outY[i] = Double.NaN;
       }
     }
-    return result;
   }
 }
@@ -0,0 +1,176 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.util.Arrays;
+
+/**
+ * A store of model states indexed by frame number. The states are kept in a
+ * single flat array with a fixed stride (the state length), so saving and
+ * restoring a state copies it without boxing the frame number or allocating
+ * an array, and seeking to any frame is a constant-time index calculation.
+ */
+public class FrameStateStore {
+
+	private int stride;
+	private double[] states = new double[0];
+	private long[] saved = new long[0]; // one bit per frame with a saved state
+	private int lastFrame = -1; // highest frame with a saved state
+
+	/**
+	 * Constructor.
+	 *
+	 * @param stride the state length
+	 */
+	public FrameStateStore(int stride) {
+		this.stride = stride;
+	}
+
+	/**
+	 * Gets the state length.
+	 *
+	 * @return the stride
+	 */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+	 * Saves a state. If the state length differs from the stride, all saved
+	 * states are cleared and the stride is set to the new length.
+	 *
+	 * @param frame the frame number
+	 * @param state the state to save (copied)
+	 */
+	public void put(int frame, double[] state) {
+		if (frame < 0)
+			return;
+		if (state.length != stride) {
+			clear();
+			stride = state.length;
+		}
+		ensureCapacity(frame + 1);
+		System.arraycopy(state, 0, states, frame * stride, stride);
+		saved[frame >> 6] |= 1L << frame;
+		lastFrame = Math.max(lastFrame, frame);
+	}
+
+	/**
+	 * Copies a saved state into an array.
+	 *
+	 * @param frame the frame number
+	 * @param dest  the array to copy into, with length equal to the stride
+	 * @return true if a state was saved for the frame and copied
+	 */
+	public boolean get(int frame, double[] dest) {
+		if (!contains(frame) || dest.length != stride)
+			return false;
+		System.arraycopy(states, frame * stride, dest, 0, stride);
+		return true;
+	}
+
+	/**
+	 * Gets a single value of a saved state.
+	 *
+	 * @param frame the frame number
+	 * @param index the index in the state
+	 * @return the value, or NaN if no state was saved for the frame
+	 */
+	public double get(int frame, int index) {
+		return contains(frame) ? states[frame * stride + index] : Double.NaN;
+	}
+
+	/**
+	 * Determines if a state is saved for a frame.
+	 *
+	 * @param frame the frame number
+	 * @return true if saved
+	 */
+	public boolean contains(int frame) {
+		return frame >= 0 && frame <= lastFrame && (saved[frame >> 6] & (1L << frame)) != 0;
+	}
+
+	/**
+	 * Finds the nearest frame at or before a specified frame with a saved state.
+	 * Used by truncate to find the new last frame.
+	 *
+	 * @param frame the frame number
+	 * @return the nearest saved frame, or -1 if none
+	 */
+	private int floor(int frame) {
+		frame = Math.min(frame, lastFrame);
+		if (frame < 0)
+			return -1;
+		int word = frame >> 6;
+		// mask off bits above frame in its word
+		long bits = saved[word] & (-1L >>> (63 - (frame & 63)));
+		while (bits == 0) {
+			if (--word < 0)
+				return -1;
+			bits = saved[word];
+		}
+		return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+	}
+
+	/**
+	 * Discards the states saved for frames after a specified frame.
+	 *
+	 * @param frame the last frame to keep
+	 */
+	public void truncate(int frame) {
+		if (frame >= lastFrame)
+			return;
+		if (frame < 0) {
+			clear();
+			return;
+		}
+		int word = frame >> 6;
+		saved[word] &= -1L >>> (63 - (frame & 63));
+		Arrays.fill(saved, word + 1, saved.length, 0);
+		lastFrame = floor(frame);
+	}
+
+	/**
+	 * Discards all saved states. Storage is retained for reuse.
+	 */
+	public void clear() {
+		Arrays.fill(saved, 0);
+		lastFrame = -1;
+	}
+
+	private void ensureCapacity(int frames) {
+		int words = (frames + 63) >> 6;
+		if (words > saved.length) {
+			// grow geometrically so sequential saves are amortized constant time
+			words = Math.max(words, 2 * saved.length);
+			saved = Arrays.copyOf(saved, words);
+		}
+		if ((long) frames * stride > states.length) {
+			long len = Math.max((long) frames * stride, 2L * states.length);
+			states = Arrays.copyOf(states, (int) Math.min(len, Integer.MAX_VALUE - 8));
+		}
+	}
+
+}
@@ -0,0 +1,294 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * A summed-area table of the red, green and blue values and their squares
+ * over a rectangle of an RGB image. Once built, the sums over any rectangle
+ * are found in constant time and the sums over a RegionMask in time
+ * proportional to its number of runs, so every RGBRegion measured on the same
+ * frame can share one table. Building a table costs several times more than
+ * measuring the same pixels directly, so a Cache builds one only for images
+ * that are measured repeatedly.
+ */
+public class IntegralImage {
+
+	/** largest area for which int channel sums cannot overflow */
+	protected static final int MAX_AREA = Integer.MAX_VALUE / 255;
+
+	/** largest area a Cache builds a table for, about 36 MB */
+	protected static final int MAX_CACHED_AREA = 1 << 20;
+
+	private final int x0, y0, width, height, stride;
+	private final int[][] sums = new int[3][]; // {R, G, B} sums above and left of each corner
+	private final long[][] squares = new long[3][]; // {R, G, B} sums of squares
+
+	/**
+	 * Creates an IntegralImage of a rectangle of a TYPE_INT_RGB image.
+	 *
+	 * @param image the image
+	 * @param rect the rectangle
+	 * @return the IntegralImage, or null if the rectangle is empty, too large
+	 *         or not within the image
+	 */
+	public static IntegralImage create(BufferedImage image, Rectangle rect) {
+		if (!isValidSize(rect) || image.getType() != BufferedImage.TYPE_INT_RGB)
+			return null;
+		int[] pixels = new int[rect.width * rect.height];
+		try {
+			image.getRaster().getDataElements(rect.x, rect.y, rect.width, rect.height, pixels);
+		} catch (ArrayIndexOutOfBoundsException ex) {
+			return null;
+		}
+		return new IntegralImage(pixels, rect);
+	}
+
+	/**
+	 * Determines if a rectangle is neither empty nor too large for a table.
+	 *
+	 * @param rect the rectangle
+	 * @return true if a table of the rectangle can be built
+	 */
+	public static boolean isValidSize(Rectangle rect) {
+		return !rect.isEmpty() && (long) rect.width * rect.height <= MAX_AREA;
+	}
+
+	/**
+	 * Constructs an IntegralImage from the pixels within a rectangle.
+	 *
+	 * @param pixels the RGB pixels within the rectangle, row by row
+	 * @param rect the rectangle in image coordinates
+	 */
+	public IntegralImage(int[] pixels, Rectangle rect) {
+		x0 = rect.x;
+		y0 = rect.y;
+		width = rect.width;
+		height = rect.height;
+		stride = width + 1;
+		int size = stride * (height + 1);
+		for (int c = 0; c < 3; c++) {
+			sums[c] = new int[size];
+			squares[c] = new long[size];
+		}
+		int[] rs = sums[0], gs = sums[1], bs = sums[2];
+		long[] r2s = squares[0], g2s = squares[1], b2s = squares[2];
+		// row 0 and column 0 are zero; each corner adds its row's sums to the corner above
+		for (int j = 0; j < height; j++) {
+			int r = 0, g = 0, b = 0;
+			long r2 = 0, g2 = 0, b2 = 0;
+			int row = j * width;
+			int above = j * stride + 1;
+			int corner = above + stride;
+			for (int i = 0; i < width; i++, corner++, above++) {
+				int pixel = pixels[row + i];
+				int rp = (pixel >> 16) & 0xff; // red
+				r += rp;
+				r2 += rp * rp;
+				int gp = (pixel >> 8) & 0xff; // green
+				g += gp;
+				g2 += gp * gp;
+				int bp = (pixel) & 0xff; // blue
+				b += bp;
+				b2 += bp * bp;
+				rs[corner] = rs[above] + r;
+				gs[corner] = gs[above] + g;
+				bs[corner] = bs[above] + b;
+				r2s[corner] = r2s[above] + r2;
+				g2s[corner] = g2s[above] + g2;
+				b2s[corner] = b2s[above] + b2;
+			}
+		}
+	}
+
+	/**
+	 * Gets the rectangle covered by this table in image coordinates.
+	 *
+	 * @return the bounds
+	 */
+	public Rectangle getBounds() {
+		return new Rectangle(x0, y0, width, height);
+	}
+
+	/**
+	 * Determines if this table covers a rectangle.
+	 *
+	 * @param rect the rectangle in image coordinates
+	 * @return true if covered
+	 */
+	public boolean covers(Rectangle rect) {
+		return rect.x >= x0 && rect.y >= y0 && rect.x + rect.width <= x0 + width
+				&& rect.y + rect.height <= y0 + height;
+	}
+
+	/**
+	 * Measures the mean and standard deviation of the red, green and blue values
+	 * of the pixels in a region mask. A rectangular mask takes constant time and
+	 * any other mask time proportional to its number of runs. May be called on
+	 * any thread.
+	 *
+	 * @param mask the region mask, which must be covered by this table
+	 * @param data array to fill with {R, G, B, luma, pixels, Rsd, Gsd, Bsd}
+	 * @return true if measured, false if the mask is empty or not covered
+	 */
+	public boolean measureRGB(RegionMask mask, double[] data) {
+		Rectangle rect = mask.getBounds();
+		int n = mask.getCount();
+		if (n == 0 || !covers(rect))
+			return false;
+		long[] sum = new long[6];
+		int left = rect.x - x0;
+		int top = rect.y - y0;
+		if (n == rect.width * rect.height) {
+			// every row is full so the mask is its bounds
+			add(sum, top, top + rect.height, left, left + rect.width);
+		} else {
+			for (int j = 0; j < rect.height; j++) {
+				int[] runs = mask.getRuns(j);
+				for (int k = 0; k < runs.length; k += 2) {
+					add(sum, top + j, top + j + 1, left + runs[k], left + runs[k + 1]);
+				}
+			}
+		}
+		RGBStep.fillRGBData(sum, n, data);
+		return true;
+	}
+
+	/**
+	 * Adds the sums of the red, green and blue values and their squares over a
+	 * rectangle to {R, G, B, R2, G2, B2}. The rectangle must be covered by this
+	 * table.
+	 *
+	 * @param x the left edge in image coordinates
+	 * @param y the top edge in image coordinates
+	 * @param w the width
+	 * @param h the height
+	 * @param sum the sums to add to
+	 */
+	public void addSums(int x, int y, int w, int h, long[] sum) {
+		add(sum, y - y0, y - y0 + h, x - x0, x - x0 + w);
+	}
+
+	/**
+	 * Adds the sums over a rectangle of this table to {R, G, B, R2, G2, B2}.
+	 *
+	 * @param sum the sums to add to
+	 * @param top the top row
+	 * @param bottom the exclusive bottom row
+	 * @param left the left column
+	 * @param right the exclusive right column
+	 */
+	private void add(long[] sum, int top, int bottom, int left, int right) {
+		int a = top * stride + left, b = top * stride + right;
+		int c = bottom * stride + left, d = bottom * stride + right;
+		for (int ch = 0; ch < 3; ch++) {
+			int[] s = sums[ch];
+			long[] q = squares[ch];
+			sum[ch] += (long) s[d] - s[b] - s[c] + s[a];
+			sum[ch + 3] += q[d] - q[b] - q[c] + q[a];
+		}
+	}
+
+	/**
+	 * Measures RGB regions in the current image of a video, building a shared
+	 * IntegralImage once the pixels measured directly in the image exceed the
+	 * area of the table. The table covers the measured regions with a margin
+	 * so regions dragged or resized on the same frame reuse it. Cache methods
+	 * are called on the event dispatch thread.
+	 */
+	public static class Cache {
+
+		private BufferedImage image;
+		private IntegralImage table;
+		private long measuredPixels;
+		private Rectangle measuredBounds;
+
+		/**
+		 * Measures the mean and standard deviation of the red, green and blue
+		 * values of the pixels in a region mask.
+		 *
+		 * @param image the TYPE_INT_RGB image
+		 * @param mask the region mask
+		 * @param data array to fill with {R, G, B, luma, pixels, Rsd, Gsd, Bsd}
+		 * @return true if measured, false if the mask is empty or outside the image
+		 */
+		public boolean measureRGB(BufferedImage image, RegionMask mask, double[] data) {
+			if (image != this.image)
+				clear();
+			this.image = image;
+			Rectangle rect = mask.getBounds();
+			if (table != null && table.measureRGB(mask, data))
+				return true;
+			Rectangle imageBounds = new Rectangle(image.getWidth(), image.getHeight());
+			if (!imageBounds.contains(rect))
+				return false;
+			Rectangle tableBounds = getTableBounds(rect, imageBounds);
+			if (tableBounds != null && measuredPixels >= (long) tableBounds.width * tableBounds.height) {
+				table = create(image, tableBounds);
+				measuredPixels = 0;
+				if (table != null && table.measureRGB(mask, data))
+					return true;
+			}
+			if (!RGBStep.measureRGB(image, mask, data))
+				return false;
+			measuredPixels += mask.getCount();
+			measuredBounds = measuredBounds == null ? rect : measuredBounds.union(rect);
+			return true;
+		}
+
+		/**
+		 * Clears the cache. This should be called whenever the image changes,
+		 * since a video may draw each new frame into the same image.
+		 */
+		public void clear() {
+			image = null;
+			table = null;
+			measuredPixels = 0;
+			measuredBounds = null;
+		}
+
+		/**
+		 * Gets the bounds of a table covering a rectangle and a margin of its own
+		 * size on each side, including any other regions measured in the image if
+		 * small enough.
+		 */
+		private Rectangle getTableBounds(Rectangle rect, Rectangle imageBounds) {
+			Rectangle bounds = new Rectangle(rect);
+			bounds.grow(rect.width, rect.height);
+			bounds = bounds.intersection(imageBounds);
+			if (measuredBounds != null) {
+				Rectangle union = bounds.union(measuredBounds);
+				if ((long) union.width * union.height <= MAX_CACHED_AREA)
+					bounds = union;
+			}
+			if ((long) bounds.width * bounds.height > MAX_CACHED_AREA)
+				bounds = rect;
+			return (long) bounds.width * bounds.height > MAX_CACHED_AREA ? null : bounds;
+		}
+	}
+
+}
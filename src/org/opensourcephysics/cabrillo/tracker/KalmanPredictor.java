@@ -0,0 +1,199 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+
+import org.opensourcephysics.media.core.TPoint;
+
+/**
+ * A TargetPredictor that uses a constant-acceleration Kalman filter, one per
+ * axis, run over the recent target positions. Besides the predicted position
+ * it provides the standard deviation of the prediction, which is used to size
+ * the search area: small when the track is steady, larger after missed or weak
+ * matches.
+ *
+ * Time is measured in steps and distance in image pixels.
+ */
+public class KalmanPredictor extends TargetPredictor {
+
+	/**
+	 * the number of previous positions used for prediction
+	 */
+	public final static int KALMAN_LOOKBACK = 10;
+
+	// process noise (white jerk spectral density), pixels^2 per step^5
+	private final static double Q = 0.5;
+	// measurement variance of good and weak matches, pixels^2
+	private final static double R_GOOD = 1, R_WEAK = 16;
+	// initial velocity and acceleration variances
+	private final static double P_VELOCITY = 400, P_ACCELERATION = 25;
+	// search half-size in standard deviations
+	private final static double SIGMAS = 3;
+	// minimum search margin around the template in pixels
+	private final static int MIN_MARGIN = 4;
+
+	private double[] sigma; // x and y standard deviations of the last prediction
+
+	@Override
+	public int getLookback() {
+		return KALMAN_LOOKBACK;
+	}
+
+	@Override
+	public TPoint predict(TPoint[] prevPoints, boolean lookAhead, Dimension imageSize) {
+		return predict(prevPoints, null, lookAhead, imageSize);
+	}
+
+	@Override
+	public TPoint predict(TPoint[] prevPoints, boolean[] weak, boolean lookAhead, Dimension imageSize) {
+		sigma = null;
+		if (prevPoints[0] == null)
+			return null;
+		if (!lookAhead)
+			return new TPoint(prevPoints[0].getX(), prevPoints[0].getY());
+		// find the oldest position
+		int oldest = 0;
+		for (int j = 0; j < prevPoints.length; j++) {
+			if (prevPoints[j] != null)
+				oldest = j;
+		}
+		double[] x = filter(prevPoints, weak, oldest, true);
+		double[] y = filter(prevPoints, weak, oldest, false);
+		sigma = new double[] { Math.sqrt(x[1]), Math.sqrt(y[1]) };
+		TPoint predicted = new TPoint(x[0], y[0]);
+		// make sure prediction is within the video image
+		predicted.x = Math.max(predicted.x, 0);
+		predicted.x = Math.min(predicted.x, imageSize.width);
+		predicted.y = Math.max(predicted.y, 0);
+		predicted.y = Math.min(predicted.y, imageSize.height);
+		return predicted;
+	}
+
+	/**
+	 * Gets the standard deviations of the last prediction.
+	 *
+	 * @return {sigmaX, sigmaY} in pixels, or null if the last prediction was not
+	 *         filtered
+	 */
+	public double[] getSigma() {
+		return sigma;
+	}
+
+	/**
+	 * Gets the search area half-width and half-height for the last prediction.
+	 * The search area must contain the template plus SIGMAS standard deviations
+	 * of position uncertainty, but is never larger than the specified maximum.
+	 *
+	 * @param maskBounds the template mask bounds
+	 * @param maxHalfW   the maximum half-width
+	 * @param maxHalfH   the maximum half-height
+	 * @return {halfWidth, halfHeight}, or null if the last prediction was not
+	 *         filtered
+	 */
+	public double[] getSearchHalfSize(Rectangle maskBounds, double maxHalfW, double maxHalfH) {
+		if (sigma == null)
+			return null;
+		double w = maskBounds.width / 2.0;
+		double h = maskBounds.height / 2.0;
+		double halfW = Math.max(w + MIN_MARGIN, w + SIGMAS * sigma[0]);
+		double halfH = Math.max(h + MIN_MARGIN, h + SIGMAS * sigma[1]);
+		return new double[] { Math.ceil(Math.min(halfW, maxHalfW)), Math.ceil(Math.min(halfH, maxHalfH)) };
+	}
+
+	/**
+	 * Runs the filter along one axis from the oldest position to the present
+	 * and predicts one step ahead.
+	 *
+	 * @return {predicted position, predicted variance}
+	 */
+	private static double[] filter(TPoint[] prevPoints, boolean[] weak, int oldest, boolean isX) {
+		// state: position, velocity, acceleration
+		double[] s = { coord(prevPoints[oldest], isX), 0, 0 };
+		double[][] p = { { R_GOOD, 0, 0 }, { 0, P_VELOCITY, 0 }, { 0, 0, P_ACCELERATION } };
+		for (int j = oldest - 1; j >= -1; j--) {
+			predictStep(s, p);
+			if (j >= 0 && prevPoints[j] != null) {
+				double r = (weak != null && weak[j] ? R_WEAK : R_GOOD);
+				update(s, p, coord(prevPoints[j], isX), r);
+			}
+		}
+		return new double[] { s[0], p[0][0] };
+	}
+
+	private static double coord(TPoint p, boolean isX) {
+		return isX ? p.getX() : p.getY();
+	}
+
+	/**
+	 * Advances the state and covariance one step: s = F s, P = F P F' + Q with
+	 * F = [[1, 1, 1/2], [0, 1, 1], [0, 0, 1]].
+	 */
+	private static void predictStep(double[] s, double[][] p) {
+		s[0] += s[1] + 0.5 * s[2];
+		s[1] += s[2];
+		double[][] f = { { 1, 1, 0.5 }, { 0, 1, 1 }, { 0, 0, 1 } };
+		double[][] fp = new double[3][3];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				for (int k = 0; k < 3; k++)
+					fp[i][j] += f[i][k] * p[k][j];
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++) {
+				double sum = 0;
+				for (int k = 0; k < 3; k++)
+					sum += fp[i][k] * f[j][k];
+				p[i][j] = sum;
+			}
+		// continuous white-jerk process noise for a unit step
+		p[0][0] += Q / 20;
+		p[0][1] += Q / 8;
+		p[1][0] += Q / 8;
+		p[0][2] += Q / 6;
+		p[2][0] += Q / 6;
+		p[1][1] += Q / 3;
+		p[1][2] += Q / 2;
+		p[2][1] += Q / 2;
+		p[2][2] += Q;
+	}
+
+	/**
+	 * Updates the state and covariance with a position measurement z of
+	 * variance r.
+	 */
+	private static void update(double[] s, double[][] p, double z, double r) {
+		double innovation = z - s[0];
+		double var = p[0][0] + r;
+		double[] gain = { p[0][0] / var, p[1][0] / var, p[2][0] / var };
+		for (int i = 0; i < 3; i++)
+			s[i] += gain[i] * innovation;
+		double[] row0 = { p[0][0], p[0][1], p[0][2] };
+		for (int i = 0; i < 3; i++)
+			for (int j = 0; j < 3; j++)
+				p[i][j] -= gain[i] * row0[j];
+	}
+
+}
@@ -119,6 +119,7 @@ public class LineProfile extends TTrack implements MarkingRequired {
 	protected boolean fixedLine = true; // line is the same at all times
 	protected JCheckBoxMenuItem fixedLineItem;
 	protected JMenu orientationMenu;
+	protected JMenu kymographMenu;
 	protected JMenuItem horizOrientationItem;
 	protected JMenuItem xaxisOrientationItem;
 	protected int spread = 0;
@@ -128,6 +129,7 @@ public class LineProfile extends TTrack implements MarkingRequired {
 	protected boolean loading;
 	protected boolean showTimeData = false;
 	protected int datasetIndex = -1; // positive for time data
+	protected LineProfileStep.ProfileWeights profileWeights; // shared by steps with the same geometry
 	protected JLabel unmarkedLabel;
 
 	/**
@@ -224,6 +226,16 @@ public class LineProfile extends TTrack implements MarkingRequired {
 		xaxisOrientationItem = new JRadioButtonMenuItem(TrackerRes.getString("LineProfile.MenuItem.XAxis")); //$NON-NLS-1$
 		orientationMenu.add(xaxisOrientationItem);
 		group.add(xaxisOrientationItem);
+		// create kymograph items, one per channel
+		kymographMenu = new JMenu(TrackerRes.getString("LineProfile.Menu.Kymograph")); //$NON-NLS-1$
+		for (int i = 0; i < BatchLineProfiler.CHANNELS.length; i++) {
+			int channel = i;
+			JMenuItem item = new JMenuItem(BatchLineProfiler.CHANNELS[i]);
+			item.addActionListener((e) -> {
+				showKymograph(channel);
+			});
+			kymographMenu.add(item);
+		}
 		unmarkedLabel = new JLabel();
 		unmarkedLabel.setForeground(Color.red.darker());
 
@@ -772,6 +784,10 @@ public class LineProfile extends TTrack implements MarkingRequired {
 		menu.add(orientationMenu);
 		menu.addSeparator();
 		menu.add(fixedLineItem);
+		kymographMenu.setText(TrackerRes.getString("LineProfile.Menu.Kymograph")); //$NON-NLS-1$
+		kymographMenu.setToolTipText(TrackerRes.getString("LineProfile.Menu.Kymograph.Tooltip")); //$NON-NLS-1$
+		kymographMenu.setEnabled(trackerPanel.getVideo() != null && !steps.isEmpty());
+		menu.add(kymographMenu);
 		// replace delete item
 		if (trackerPanel.isEnabled("track.delete")) { //$NON-NLS-1$
 			TMenuBar.checkAddMenuSep(menu);
@@ -780,6 +796,32 @@ public class LineProfile extends TTrack implements MarkingRequired {
 		return menu;
 	}
 
+	/**
+	 * Samples this profile at every step of the clip on a worker thread and shows
+	 * one channel of the resulting kymograph in DataTool.
+	 *
+	 * @param channel the channel index in BatchLineProfiler.CHANNELS
+	 */
+	protected void showKymograph(int channel) {
+		if (tp == null || tp.getVideo() == null)
+			return;
+		BatchLineProfiler profiler = new BatchLineProfiler(tp, this);
+		TFrame frame = tp.getTFrame();
+		BatchAutoTracker.runInBackground(frame,
+				TrackerRes.getString("LineProfile.ProgressMonitor.Kymograph.Message"), profiler, () -> { //$NON-NLS-1$
+					if (profiler.isCanceled())
+						return;
+					if (profiler.getMatrix() == null || profiler.getRowCount() == 0) {
+						JOptionPane.showMessageDialog(frame,
+								TrackerRes.getString("LineProfile.Dialog.NoKymograph.Message"), //$NON-NLS-1$
+								TrackerRes.getString("LineProfile.Menu.Kymograph"), //$NON-NLS-1$
+								JOptionPane.WARNING_MESSAGE);
+						return;
+					}
+					profiler.showDataTool(channel);
+				});
+	}
+
 	/**
 	 * Overrides TTrack getToolbarTrackComponents method.
 	 *
@@ -846,15 +888,22 @@ public class LineProfile extends TTrack implements MarkingRequired {
 				if (!steps.isEmpty()) { // $NON-NLS-1$
 					int n = tp.getFrameNumber();
 					LineProfileStep step = (LineProfileStep) steps.getStep(n);
-					if (e.getNewValue() == null) {
+					int[] frames = ReferenceFrame.getChangedFrames(e.getNewValue());
+					if (frames == null) {
 						// clear data from all steps
 						for (int i = 0; i < getSteps().length; i++) {
 							if (getSteps()[i] != null)
 								((LineProfileStep) getSteps()[i]).clearData();
 						}
 					}
-					else // clear data from this step only
-						step.clearData();
+					else {
+						// clear data from the changed steps only
+						for (int i = frames[0]; i <= frames[1]; i++) {
+							LineProfileStep changed = (LineProfileStep) steps.getStep(i);
+							if (changed != null)
+								changed.clearData();
+						}
+					}
 					refreshStep(step);
 				}
 				break;
@@ -67,6 +67,7 @@ public class LineProfileStep extends Step {
 	private Intersection[] polygon = new Intersection[8]; // polygon shape vertices
 	private Point polyLoc = new Point();
 	private double[] quadAreas = new double[4]; // used for GridVertex quadrant areas
+	private double[] areas = new double[0]; // pixel areas covered by the current probe, row by row
 	private double[][] profileData;
 
 	/**
@@ -373,14 +374,131 @@ public class LineProfileStep extends Step {
 		if (image == null || image.getType() != BufferedImage.TYPE_INT_RGB)
 			return null;
 
-		Shape bounds = new Rectangle(image.getWidth(), image.getHeight());
+		Rectangle bounds = new Rectangle(image.getWidth(), image.getHeight());
 		// for image videos use RGB bounds for images of varying size
 		if (trackerPanel.getVideo().getTypeName().equals(VideoType.TYPE_IMAGE)) {
 			ImageVideo iVid = (ImageVideo) trackerPanel.getVideo();
 			bounds = new Rectangle(iVid.getRGBSize().width, iVid.getRGBSize().height);
-		}		
+		}
+		// weights are shared by all steps with the same geometry until the line moves
+		ProfileWeights weights = line.profileWeights;
+		if (weights == null || !weights.isFor(this, bounds, false)) {
+			weights = getProfileWeights(length, bounds);
+			if (weights == null)
+				return null;
+			line.profileWeights = weights;
+		}
+		if (weights.len < 1)
+			return null;
+		try {
+			// fill pixels array with pixel data
+			int[] pixels = weights.getPixels();
+			image.getRaster().getDataElements(weights.pixXMin, weights.pixYMin, weights.w, weights.h, pixels);
+			int n = trackerPanel.getFrameNumber();
+			return getProfileData(weights, pixels, trackerPanel.getCoords().getToWorldTransform(n));
+		} catch (ArrayIndexOutOfBoundsException ex) {
+			ex.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Gets line profile data by applying pixel weights to image pixels. May be
+	 * called on any thread.
+	 *
+	 * @param weights the weights
+	 * @param pixels  the image pixels within the weights pixel bounds
+	 * @param at      the image to world transform
+	 * @return an array of values for image pixels along the line, or null if
+	 *         no pixels are covered at some point
+	 */
+	static double[][] getProfileData(ProfileWeights weights, int[] pixels, AffineTransform at) {
+		int len = weights.len;
+		int width = 1 + 2 * weights.spread;
+		double[][] values = new double[8][len];
+		Point2D imagePixel = new Point2D.Double();
+		Point2D worldPixel = new Point2D.Double();
+		int[] index = weights.index;
+		double[] weight = weights.weight;
+		// step along length of the line
+		for (int i = 0; i < len; i++) {
+			// get position data at center of bounds
+			imagePixel.setLocation(weights.centerX[i], weights.centerY[i]);
+			at.transform(imagePixel, worldPixel);
+			values[0][i] = worldPixel.getX();
+			values[1][i] = worldPixel.getY();
+			// find total area and area-weighted RGB values
+			double area = 0, red = 0, green = 0, blue = 0;
+			for (int k = weights.start[i], end = weights.start[i + 1]; k < end; k++) {
+				int pixel = pixels[index[k]];
+				int r = (pixel >> 16) & 0xff; // red
+				int g = (pixel >> 8) & 0xff; // green
+				int b = (pixel) & 0xff; // blue
+				double a = weight[k];
+				red += a * r;
+				green += a * g;
+				blue += a * b;
+				area += a;
+			}
+			if (area == 0)
+				return null;
+			values[2][i] = red = red / area;
+			values[3][i] = green = green / area;
+			values[4][i] = blue = blue / area;
+			values[5][i] = RGBRegion.getLuma(red, green, blue);
+			values[6][i] = width; // should equal 2*spread + 1
+			values[7][i] = i;
+		}
+		return values;
+	}
+
+	/**
+	 * Gets the pixel weights of this step for a horizontal or tilted profile.
+	 * Horizontal weights average the pixels across the spread as in
+	 * getHorizontalProfileData().
+	 *
+	 * @param bounds     the image bounds
+	 * @param horizontal true for a horizontal profile
+	 * @return the weights, or null if the sweep fails
+	 */
+	ProfileWeights getProfileWeights(Rectangle bounds, boolean horizontal) {
+		if (!horizontal) {
+			double length = lineEnd0.distance(lineEnd1);
+			return length < 1 ? new ProfileWeights(this, bounds, false) : getProfileWeights(length, bounds);
+		}
+		ProfileWeights weights = new ProfileWeights(this, bounds, true);
+		int spread = weights.spread;
+		int x0 = Math.max(Math.min((int) lineEnd0.getX(), (int) lineEnd1.getX()), 0);
+		int x1 = Math.min(Math.max((int) lineEnd0.getX(), (int) lineEnd1.getX()), bounds.width);
+		int y = (int) lineEnd0.getY();
+		int length = x1 - x0;
+		if (length <= 0 || bounds.height < y + 0.5)
+			return weights; // empty
+		int width = 1 + 2 * spread;
+		weights.setPixelBounds(x0, y - spread, length, width, length);
+		for (int i = 0; i < length; i++) {
+			weights.centerX[i] = x0 + i + 0.5;
+			weights.centerY[i] = y + 0.5;
+			for (int j = 0; j < width; j++) {
+				weights.add(i + j * length, 1);
+			}
+			weights.start[i + 1] = weights.size;
+		}
+		return weights;
+	}
+
+	/**
+	 * Sweeps the probe along the line to find the area of each image pixel
+	 * covered by the probe at each point along the line.
+	 *
+	 * @param length the line length
+	 * @param bounds the image bounds
+	 * @return the weights, or null if the sweep fails
+	 */
+	private ProfileWeights getProfileWeights(double length, Rectangle bounds) {
+		ProfileWeights weights = new ProfileWeights(this, bounds, false);
 		// get line profile width and angle/slope data
-		int width = 1 + 2 * line.getSpread();
+		int width = 1 + 2 * weights.spread;
 		int len = (int) Math.floor(length); // length of line profile data array
 		double theta = lineEnd0.angle(lineEnd1);
 		cos = Math.cos(theta);
@@ -415,7 +533,7 @@ public class LineProfileStep extends Step {
 			corners[1][1].y -= sin;
 		}
 		if (len < 1)
-			return null;
+			return weights; // empty
 		// get the min and max bounds
 		xMin = xMax = corners[0][0].x;
 		yMin = yMax = corners[0][0].y;
@@ -427,7 +545,6 @@ public class LineProfileStep extends Step {
 				yMax = Math.max(yMax, corners[i][j].y);
 			}
 		}
-		double[][] values = new double[8][len];
 		// use min and max to determine image pixels needed
 		int pixXMin = (int) Math.floor(xMin);
 		int pixYMin = (int) Math.floor(yMin);
@@ -435,7 +552,7 @@ public class LineProfileStep extends Step {
 		int pixYMax = (int) Math.ceil(yMax);
 		int w = pixXMax - pixXMin;
 		int h = pixYMax - pixYMin;
-		int[] pixels = new int[w * h];
+		weights.setPixelBounds(pixXMin, pixYMin, w, h, len);
 		// prepare GridIntersection arrays if needed
 		if (sweepX == null || sweepX[0].length < width) {
 			sweepX = new GridIntersection[2][width];
@@ -450,14 +567,7 @@ public class LineProfileStep extends Step {
 		// find initial "leading edge" intersections
 		leadingIndex = 0;
 		findLeadingIntersections();
-		Point2D imagePixel = new Point2D.Double();
-		Point2D worldPixel = new Point2D.Double();
 		try {
-			// get affine transform
-			int n = trackerPanel.getFrameNumber();
-			AffineTransform at = trackerPanel.getCoords().getToWorldTransform(n);
-			// fill pixels array with pixel data
-			image.getRaster().getDataElements(pixXMin, pixYMin, w, h, pixels);
 			// step along length of the line
 			for (int i = 0; i < len; i++) {
 				Corner end0 = corners[leadingIndex][0];
@@ -481,17 +591,18 @@ public class LineProfileStep extends Step {
 						yMax = Math.max(yMax, corners[k][j].y);
 					}
 				}
-				// get position data at center of bounds
-				imagePixel.setLocation((xMax + xMin) / 2, (yMax + yMin) / 2);
-				at.transform(imagePixel, worldPixel);
-				values[0][i] = worldPixel.getX();
-				values[1][i] = worldPixel.getY();
-				// make areas array
+				// save position at center of bounds
+				weights.centerX[i] = (xMax + xMin) / 2;
+				weights.centerY[i] = (yMax + yMin) / 2;
+				// clear areas array
 				int minCol = (int) Math.floor(xMin);
 				int minRow = (int) Math.floor(yMin);
 				int colCount = (int) Math.ceil(xMax) - minCol;
 				int rowCount = (int) Math.ceil(yMax) - minRow;
-				double[][] areas = new double[colCount][rowCount];
+				if (areas.length < colCount * rowCount)
+					areas = new double[colCount * rowCount];
+				else
+					Arrays.fill(areas, 0, colCount * rowCount, 0);
 				// find and link leading intersections to corners
 				findLeadingIntersections();
 				// find and link end intersections to corners
@@ -499,8 +610,6 @@ public class LineProfileStep extends Step {
 				// find grid segments and vertices
 				findGridSegments();
 				findGridVertices();
-				// define local rgb and area accumulators
-				double area = 0, red = 0, green = 0, blue = 0;
 				double a;
 				int column, row;
 				// step through vertices, if any
@@ -512,18 +621,18 @@ public class LineProfileStep extends Step {
 						column = (int) next.x - minCol;
 						row = (int) next.y - minRow;
 						// set initial quadrant areas
-						quadAreas[0] = areas[column][row];
-						quadAreas[1] = column > 0 ? areas[column - 1][row] : 1;
-						quadAreas[2] = row > 0 && column > 0 ? areas[column - 1][row - 1] : 1;
-						quadAreas[3] = row > 0 ? areas[column][row - 1] : 1;
+						quadAreas[0] = areas[getAreaIndex(column, row, colCount, rowCount)];
+						quadAreas[1] = column > 0 ? areas[getAreaIndex(column - 1, row, colCount, rowCount)] : 1;
+						quadAreas[2] = row > 0 && column > 0 ? areas[getAreaIndex(column - 1, row - 1, colCount, rowCount)] : 1;
+						quadAreas[3] = row > 0 ? areas[getAreaIndex(column, row - 1, colCount, rowCount)] : 1;
 						getAreas(next, quadAreas);
-						areas[column][row] = quadAreas[0];
+						areas[getAreaIndex(column, row, colCount, rowCount)] = quadAreas[0];
 						if (column > 0)
-							areas[column - 1][row] = quadAreas[1];
+							areas[getAreaIndex(column - 1, row, colCount, rowCount)] = quadAreas[1];
 						if (row > 0) {
-							areas[column][row - 1] = quadAreas[3];
+							areas[getAreaIndex(column, row - 1, colCount, rowCount)] = quadAreas[3];
 							if (column > 0)
-								areas[column - 1][row - 1] = quadAreas[2];
+								areas[getAreaIndex(column - 1, row - 1, colCount, rowCount)] = quadAreas[2];
 						}
 					}
 				} else { // no vertices found: single pixel case
@@ -533,12 +642,12 @@ public class LineProfileStep extends Step {
 					column = polyLoc.x - minCol;
 					row = polyLoc.y - minRow;
 					if (a > 0)
-						areas[column][row] = a;
+						areas[getAreaIndex(column, row, colCount, rowCount)] = a;
 					a = getArea(seg.higher, seg.lower);
 					column = polyLoc.x - minCol;
 					row = polyLoc.y - minRow;
 					if (a > 0)
-						areas[column][row] = a;
+						areas[getAreaIndex(column, row, colCount, rowCount)] = a;
 				}
 				// in all cases find corner areas
 				for (int j = 0; j < 2; j++) {
@@ -547,42 +656,39 @@ public class LineProfileStep extends Step {
 						column = polyLoc.x - minCol;
 						row = polyLoc.y - minRow;
 						if (a > 0)
-							areas[column][row] = a;
+							areas[getAreaIndex(column, row, colCount, rowCount)] = a;
 					}
 				}
-				// find total area and area-weighted RGB values
-				for (int ro = 0; ro < areas[0].length; ro++) {
-					for (int col = 0; col < areas.length; col++) {
-						int pixCol = col + minCol - pixXMin;
-						int pixRow = ro + minRow - pixYMin;
-						int pixIndex = pixCol + pixRow * w;
-						int pixel = pixels[pixIndex];
-						int r = (pixel >> 16) & 0xff; // red
-						int g = (pixel >> 8) & 0xff; // green
-						int b = (pixel) & 0xff; // blue
-						a = areas[col][ro];
-						red += a * r;
-						green += a * g;
-						blue += a * b;
-						area += a;
+				// save nonzero areas as weights of their pixels
+				for (int ro = 0; ro < rowCount; ro++) {
+					for (int col = 0; col < colCount; col++) {
+						a = areas[ro * colCount + col];
+						if (a != 0) {
+							int pixCol = col + minCol - pixXMin;
+							int pixRow = ro + minRow - pixYMin;
+							weights.add(pixCol + pixRow * w, a);
+						}
 					}
 				}
-				if (area == 0)
-					return null;
-				values[2][i] = red = red / area;
-				values[3][i] = green = green / area;
-				values[4][i] = blue = blue / area;
-				values[5][i] = RGBRegion.getLuma(red, green, blue);
-				values[6][i] = width; // should equal 2*spread + 1
-				values[7][i] = i;
+				weights.start[i + 1] = weights.size;
 			}
-			return values;
+			return weights;
 		} catch (ArrayIndexOutOfBoundsException ex) {
 			ex.printStackTrace();
 			return null;
 		}
 	}
 
+	/**
+	 * Gets the index of a column and row in the areas array, throwing an
+	 * ArrayIndexOutOfBoundsException if outside the current probe.
+	 */
+	private static int getAreaIndex(int column, int row, int colCount, int rowCount) {
+		if (column < 0 || column >= colCount || row < 0 || row >= rowCount)
+			throw new ArrayIndexOutOfBoundsException(column + "," + row); //$NON-NLS-1$
+		return row * colCount + column;
+	}
+
 	/**
 	 * Finds intersections between the leading sweep and pixel grid lines.
 	 */
@@ -1397,6 +1503,67 @@ public class LineProfileStep extends Step {
 		}
 	}
 
+	/**
+	 * A class to hold the area of each image pixel covered by the probe at each
+	 * point along a line. The weights depend only on the line geometry and image
+	 * bounds, so they are found once and applied to the image of every frame.
+	 */
+	static class ProfileWeights {
+		final double x0, y0, x1, y1; // line ends
+		final int spread;
+		final Rectangle bounds;
+		final boolean horizontal;
+		int len; // number of points along the line
+		int pixXMin, pixYMin, w, h; // image pixels needed
+		double[] centerX, centerY; // image position of each point
+		int[] start; // index of first weight of each point, followed by size
+		int[] index = new int[64]; // pixel indices in the w x h pixels array
+		double[] weight = new double[64]; // pixel areas
+		int size;
+		private int[] pixels; // reused pixels array
+
+		ProfileWeights(LineProfileStep step, Rectangle bounds, boolean horizontal) {
+			x0 = step.lineEnd0.x;
+			y0 = step.lineEnd0.y;
+			x1 = step.lineEnd1.x;
+			y1 = step.lineEnd1.y;
+			spread = step.line.getSpread();
+			this.bounds = bounds;
+			this.horizontal = horizontal;
+		}
+
+		boolean isFor(LineProfileStep step, Rectangle bounds, boolean horizontal) {
+			return this.horizontal == horizontal && x0 == step.lineEnd0.x && y0 == step.lineEnd0.y && x1 == step.lineEnd1.x
+					&& y1 == step.lineEnd1.y && spread == step.line.getSpread() && this.bounds.equals(bounds);
+		}
+
+		void setPixelBounds(int x, int y, int width, int height, int length) {
+			pixXMin = x;
+			pixYMin = y;
+			w = width;
+			h = height;
+			len = length;
+			centerX = new double[len];
+			centerY = new double[len];
+			start = new int[len + 1];
+		}
+
+		void add(int pixelIndex, double area) {
+			if (size == index.length) {
+				index = Arrays.copyOf(index, 2 * size);
+				weight = Arrays.copyOf(weight, 2 * size);
+			}
+			index[size] = pixelIndex;
+			weight[size++] = area;
+		}
+
+		int[] getPixels() {
+			if (pixels == null)
+				pixels = new int[w * h];
+			return pixels;
+		}
+	}
+
 	public void clearData() {
 		profileData = null;
 	}
@@ -30,6 +30,8 @@ import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentListener;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
 import java.beans.PropertyChangeEvent;
 import java.util.ArrayList;
 import java.util.List;
@@ -45,7 +47,10 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import org.opensourcephysics.controls.OSPLog;
+import org.opensourcephysics.media.core.NumberField;
+import org.opensourcephysics.media.core.ScientificField;
 import org.opensourcephysics.media.core.Trackable;
+import org.opensourcephysics.numerics.ODEAdaptiveSolver;
 import org.opensourcephysics.tools.FontSizer;
 import org.opensourcephysics.tools.FunctionPanel;
 import org.opensourcephysics.tools.FunctionTool;
@@ -67,6 +72,8 @@ public class ModelBuilder extends FunctionTool {
 	// GUI
 	
 	private JLabel startFrameLabel, endFrameLabel, boosterLabel;
+	private JLabel solverLabel, toleranceLabel, rateCountLabel;
+	private NumberField toleranceField;
 	private ModelFrameSpinner startFrameSpinner, endFrameSpinner;
 	private JComboBox<FTObject> boosterDropdown;
 	private JComboBox<String> solverDropdown;
@@ -83,7 +90,9 @@ public class ModelBuilder extends FunctionTool {
 	private static String[] solverClassNames = {
 			"org.opensourcephysics.numerics.RK4", 
 			"org.opensourcephysics.numerics.Euler", 
-			"org.opensourcephysics.numerics.Ralston2"};
+			"org.opensourcephysics.numerics.Ralston2",
+			"org.opensourcephysics.cabrillo.tracker.DormandPrinceSolver",
+			"org.opensourcephysics.cabrillo.tracker.CashKarpSolver"};
 
 	/**
 	 * Constructor.
@@ -114,7 +123,8 @@ public class ModelBuilder extends FunctionTool {
 	    // create and set toolbar components
 	    createToolbarComponents();
 	    setToolbarComponents(new Component[] { startFrameLabel, startFrameSpinner, endFrameLabel, endFrameSpinner,
-	        boosterLabel, boosterDropdown });
+	        boosterLabel, boosterDropdown, solverLabel, solverDropdown, toleranceLabel, toleranceField,
+	        rateCountLabel });
 	}
 	/**
 	 * Creates the toolbar components.
@@ -173,8 +183,7 @@ public class ModelBuilder extends FunctionTool {
 		// create solver dropdown
 		String[] solverShortNames = new String[solverClassNames.length];
 		for (int i = 0; i < solverShortNames.length; i++) {
-			int n = "org.opensourcephysics.numerics.".length();
-			solverShortNames[i] = solverClassNames[i].substring(n);
+			solverShortNames[i] = solverClassNames[i].substring(solverClassNames[i].lastIndexOf('.') + 1);
 		}
 		solverDropdown = new JComboBox<String>(solverShortNames);
 		solverDropdown.setBorder(BorderFactory.createEmptyBorder(0, 0, 1, 0));
@@ -183,19 +192,46 @@ public class ModelBuilder extends FunctionTool {
 			public void actionPerformed(ActionEvent e) {
 				if (!solverDropdown.isEnabled() || solverDropdown.getSelectedIndex() < 0)
 					return;
-				ModelFunctionPanel modelpanel = (ModelFunctionPanel)getSelectedPanel();
 				String solver = solverClassNames[solverDropdown.getSelectedIndex()];
-				if (solver != null && modelpanel.model instanceof DynamicParticle) {
-					DynamicParticle dyna = (DynamicParticle)modelpanel.model;
+				DynamicParticle dyna = getSolverModel();
+				if (solver != null && dyna != null) {
 					try { // load the solver class
 						Class<?> solverClass = Class.forName(solver);
 						dyna.setSolver(solverClass);
 					} catch (Exception ex2) {
 						/** empty block */
 					}
+					refreshSolverControls();
 				}
 			}
 		});
+		solverLabel = new JLabel();
+		solverLabel.setBorder(BorderFactory.createEmptyBorder(0, 8, 0, 2));
+
+		// create tolerance field and rate count label
+		toleranceLabel = new JLabel();
+		toleranceLabel.setBorder(BorderFactory.createEmptyBorder(0, 8, 0, 2));
+		toleranceField = new ScientificField(4, 2);
+		toleranceField.setMinValue(0);
+		ActionListener toleranceAction = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				DynamicParticle dyna = getSolverModel();
+				if (dyna == null || !toleranceField.isEnabled())
+					return;
+				dyna.setSolverTolerance(toleranceField.getValue());
+				toleranceField.setValue(dyna.getSolverTolerance());
+			}
+		};
+		toleranceField.addActionListener(toleranceAction);
+		toleranceField.addFocusListener(new FocusAdapter() {
+			@Override
+			public void focusLost(FocusEvent e) {
+				toleranceAction.actionPerformed(null);
+			}
+		});
+		rateCountLabel = new JLabel();
+		rateCountLabel.setBorder(BorderFactory.createEmptyBorder(0, 8, 0, 4));
 
 		trackerPanel.addPropertyChangeListener(TrackerPanel.PROPERTY_TRACKERPANEL_TRACK, this); //$NON-NLS-1$
 
@@ -246,17 +282,64 @@ public class ModelBuilder extends FunctionTool {
 			endFrameLabel.setText(TrackerRes.getString("TrackerPanel.Label.ModelEnd")); //$NON-NLS-1$
 			startFrameSpinner.setToolTipText(TrackerRes.getString("TrackerPanel.Spinner.ModelStart.Tooltip")); //$NON-NLS-1$
 			endFrameSpinner.setToolTipText(TrackerRes.getString("TrackerPanel.Spinner.ModelEnd.Tooltip")); //$NON-NLS-1$
+			solverLabel.setText(TrackerRes.getString("DynamicParticle.Label.Solver")); //$NON-NLS-1$
+			solverDropdown.setToolTipText(TrackerRes.getString("TrackerPanel.Dropdown.Solver.Tooltip")); //$NON-NLS-1$
+			toleranceLabel.setText(TrackerRes.getString("TrackerPanel.Label.SolverTolerance")); //$NON-NLS-1$
+			toleranceField.setToolTipText(TrackerRes.getString("TrackerPanel.Field.SolverTolerance.Tooltip")); //$NON-NLS-1$
+			rateCountLabel.setToolTipText(TrackerRes.getString("TrackerPanel.Label.RateCount.Tooltip")); //$NON-NLS-1$
 			refreshBoosterDropdown();
+			refreshSolverControls();
 		}
 		setTitles();
-//		if (selectedPanel != null) {
-//			ModelFunctionPanel modelpanel = (ModelFunctionPanel)selectedPanel;
-//			if (modelpanel.model instanceof DynamicParticle) {
-//				dropdownbar.add(solverDropdown);
-//			} else {
-//				dropdownbar.remove(solverDropdown);
-//			}
-//		}
+	}
+
+	/**
+	 * Gets the dynamic model whose solver computes the selected panel's model.
+	 * This is the system of a particle in a DynamicSystem.
+	 * 
+	 * @return the dynamic model, or null if the selected model is not dynamic
+	 */
+	private DynamicParticle getSolverModel() {
+		FunctionPanel panel = getSelectedPanel();
+		if (panel == null || !(((ModelFunctionPanel) panel).model instanceof DynamicParticle))
+			return null;
+		DynamicParticle dyna = (DynamicParticle) ((ModelFunctionPanel) panel).model;
+		return dyna.system != null ? dyna.system : dyna;
+	}
+
+	/**
+	 * Refreshes the solver dropdown, tolerance field and rate count label to
+	 * match the selected model. Called after every model refresh so the rate
+	 * count reports the cost of the current steps.
+	 */
+	protected void refreshSolverControls() {
+		if (solverDropdown == null)
+			return;
+		DynamicParticle dyna = getSolverModel();
+		solverDropdown.setEnabled(false); // disabled during refresh to prevent action
+		solverLabel.setEnabled(dyna != null);
+		if (dyna == null) {
+			solverDropdown.setSelectedIndex(-1);
+			toleranceLabel.setEnabled(false);
+			toleranceField.setEnabled(false);
+			rateCountLabel.setText(null);
+			return;
+		}
+		int index = -1;
+		String name = dyna.getSolver().getClass().getName();
+		for (int i = 0; i < solverClassNames.length; i++) {
+			if (solverClassNames[i].equals(name))
+				index = i;
+		}
+		solverDropdown.setSelectedIndex(index);
+		solverDropdown.setEnabled(true);
+		boolean adaptive = dyna.getSolver() instanceof ODEAdaptiveSolver;
+		toleranceLabel.setEnabled(adaptive);
+		toleranceField.setEnabled(false); // disabled during refresh to prevent action
+		toleranceField.setValue(dyna.getSolverTolerance());
+		toleranceField.setEnabled(adaptive);
+		rateCountLabel.setText(TrackerRes.getString("TrackerPanel.Label.RateCount") //$NON-NLS-1$
+				+ " " + dyna.getRateCount()); //$NON-NLS-1$
 	}
 
 	@Override
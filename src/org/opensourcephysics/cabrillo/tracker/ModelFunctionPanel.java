@@ -148,6 +148,8 @@ public abstract class ModelFunctionPanel extends FunctionPanel {
 	 */
 	@Override
 	protected void refreshFunctions() {
+		if (model != null)
+			model.stopTraceTask(); // before the functions change
 		if (paramEditor != null) {
 			UserFunction[] functions = ((UserFunctionEditor) functionEditor).getMainFunctions();
 			for (int i = 0; i < functions.length; i++) {
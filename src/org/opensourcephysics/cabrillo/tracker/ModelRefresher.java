@@ -0,0 +1,101 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Refreshes the steps of the particle models in a TrackerPanel in batches. A
+ * change to the video clip or coordinate system notifies every model. While
+ * the TrackerPanel dispatches such a change, between begin() and end(), each
+ * model adds itself here instead of refreshing at once. The batch is refreshed
+ * by end() before the dispatch returns: first the models that other tracks may
+ * depend on, one at a time, then the independent models concurrently. Outside
+ * a batch, models refresh at once as before.
+ */
+public class ModelRefresher {
+
+	private Set<ParticleModel> pending = new LinkedHashSet<ParticleModel>();
+	private int depth; // nesting depth of begin() calls
+
+	/**
+	 * Begins a batch. Called on the event queue.
+	 */
+	public void begin() {
+		depth++;
+	}
+
+	/**
+	 * Ends a batch, refreshing the models added since the outermost begin().
+	 * Called on the event queue.
+	 */
+	public void end() {
+		if (depth > 0 && --depth == 0)
+			refresh();
+	}
+
+	/**
+	 * Determines if a batch is in progress.
+	 *
+	 * @return true if between begin() and end()
+	 */
+	public boolean isBatching() {
+		return depth > 0;
+	}
+
+	/**
+	 * Adds a model to be refreshed at the end of the batch. Called on the event
+	 * queue.
+	 *
+	 * @param model the model
+	 */
+	public void add(ParticleModel model) {
+		pending.add(model);
+	}
+
+	/**
+	 * Refreshes the models added since the last refresh.
+	 */
+	public void refresh() {
+		if (pending.isEmpty())
+			return;
+		List<ParticleModel> models = new ArrayList<ParticleModel>(pending);
+		pending.clear();
+		List<ParticleModel> independent = new ArrayList<ParticleModel>();
+		for (ParticleModel model : models) {
+			if (model.tp == null)
+				continue; // deleted
+			if (model.isIndependent())
+				independent.add(model);
+			else
+				model.refreshSteps("ModelRefresher"); //$NON-NLS-1$
+		}
+		ParticleModel.refreshConcurrently(independent);
+	}
+
+}
@@ -0,0 +1,229 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opensourcephysics.controls.OSPLog;
+import org.opensourcephysics.media.core.TPoint;
+import org.opensourcephysics.media.core.Video;
+import org.opensourcephysics.media.core.VideoClip;
+
+/**
+ * Autotracks several targets in a single pass over the video. Each frame is
+ * decoded once and searched for every target concurrently, one task per
+ * target, and the resulting matches are then marked on the event dispatch
+ * thread in target order.
+ *
+ * Each target is a BatchAutoTracker for one track point, with its own template
+ * matcher and position history, so the searches share nothing but the
+ * read-only frame image. Targets may be different points of the same track.
+ * The results are the same as autotracking the targets one at a time.
+ */
+public class MultiTargetAutoTracker implements BatchAutoTracker.Task {
+
+	private final List<BatchAutoTracker> targets;
+	private final Video video;
+	private final VideoClip clip;
+	private int threads;
+	private BatchAutoTracker.ProgressListener progressListener;
+	private volatile boolean canceled;
+	private volatile Throwable error;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param panel   the tracker panel
+	 * @param targets the targets, each with a different track point
+	 */
+	public MultiTargetAutoTracker(TrackerPanel panel, List<BatchAutoTracker> targets) {
+		this(panel.getVideo(), panel.getPlayer().getVideoClip(), targets);
+	}
+
+	/**
+	 * Constructs a MultiTargetAutoTracker for a video and clip.
+	 *
+	 * @param video   the video
+	 * @param clip    the video clip
+	 * @param targets the targets, each with a different track point
+	 */
+	MultiTargetAutoTracker(Video video, VideoClip clip, List<BatchAutoTracker> targets) {
+		this.targets = new ArrayList<BatchAutoTracker>(targets);
+		this.video = video;
+		this.clip = clip;
+		threads = Math.min(this.targets.size(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Sets the number of search threads.
+	 *
+	 * @param n the number of threads, 1 to search sequentially
+	 */
+	public void setThreads(int n) {
+		threads = Math.max(1, n);
+	}
+
+	/**
+	 * Sets the progress listener.
+	 *
+	 * @param listener the listener, may be null
+	 */
+	@Override
+	public void setProgressListener(BatchAutoTracker.ProgressListener listener) {
+		progressListener = listener;
+	}
+
+	/**
+	 * Cancels a run in progress. Steps already marked are kept.
+	 */
+	@Override
+	public void cancel() {
+		canceled = true;
+	}
+
+	/**
+	 * Gets the error that stopped the last run, if any. Steps marked before the
+	 * error are kept.
+	 *
+	 * @return the error, or null if the run completed or was canceled
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * Gets the targets.
+	 *
+	 * @return the targets
+	 */
+	public List<BatchAutoTracker> getTargets() {
+		return targets;
+	}
+
+	/**
+	 * Starts autotracking on a new worker thread.
+	 *
+	 * @return the thread
+	 */
+	public Thread start() {
+		Thread thread = new Thread(this, "MultiTargetAutoTracker"); //$NON-NLS-1$
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Autotracks all targets on the calling thread.
+	 */
+	@Override
+	public void run() {
+		if (targets.isEmpty())
+			return;
+		canceled = false;
+		error = null;
+		int startStep = Integer.MAX_VALUE;
+		int endStep = -1;
+		for (BatchAutoTracker target : targets) {
+			BatchAutoTracker.invoke(() -> target.begin());
+			startStep = Math.min(startStep, target.getStartStep());
+			endStep = Math.max(endStep, target.getEndStep());
+		}
+		int total = Math.max(0, endStep - startStep + 1);
+		int prevFrame = video.getFrameNumber();
+		ExecutorService pool = (threads > 1 ? Executors.newFixedThreadPool(threads, (r) -> {
+			Thread t = new Thread(r, "MultiTargetAutoTracker"); //$NON-NLS-1$
+			t.setDaemon(true);
+			return t;
+		}) : null);
+		BatchAutoTracker.setRunning(true);
+		try {
+			List<BatchAutoTracker> active = new ArrayList<BatchAutoTracker>();
+			List<Callable<TPoint>> tasks = new ArrayList<Callable<TPoint>>();
+			BufferedImage[] image = new BufferedImage[1];
+			for (int step = startStep; step <= endStep && !canceled; step++) {
+				int n = clip.stepToFrame(step);
+				int stepNumber = step;
+				active.clear();
+				BatchAutoTracker.invoke(() -> {
+					for (BatchAutoTracker target : targets) {
+						if (target.needsSearch(n, stepNumber))
+							active.add(target);
+					}
+					if (!active.isEmpty()) {
+						// decode the frame once for all targets
+						image[0] = BatchAutoTracker.getFrameImage(video, n);
+						for (BatchAutoTracker target : active)
+							target.prepare(n, stepNumber);
+					}
+				});
+				if (!active.isEmpty()) {
+					TPoint[] found = new TPoint[active.size()];
+					if (pool == null || active.size() == 1) {
+						for (int i = 0; i < found.length; i++)
+							found[i] = active.get(i).search(image[0], n);
+					} else {
+						tasks.clear();
+						BufferedImage frameImage = image[0];
+						for (BatchAutoTracker target : active)
+							tasks.add(() -> target.search(frameImage, n));
+						List<Future<TPoint>> results = pool.invokeAll(tasks);
+						for (int i = 0; i < found.length; i++)
+							found[i] = results.get(i).get();
+					}
+					// commit all matches
+					BatchAutoTracker.invoke(() -> {
+						for (int i = 0; i < found.length; i++)
+							active.get(i).commit(n, found[i]);
+					});
+				}
+				if (progressListener != null)
+					progressListener.progress(n, step - startStep + 1, total);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			error = e.getCause();
+			OSPLog.warning("MultiTargetAutoTracker: " + error); //$NON-NLS-1$
+		} catch (RuntimeException e) {
+			error = e;
+			OSPLog.warning("MultiTargetAutoTracker: " + error); //$NON-NLS-1$
+		} finally {
+			if (pool != null)
+				pool.shutdownNow();
+			BatchAutoTracker.setRunning(false);
+			BatchAutoTracker.setFrameNumber(video, prevFrame);
+			for (BatchAutoTracker target : targets)
+				target.finish();
+		}
+	}
+
+}
@@ -1397,6 +1397,15 @@ public class ParticleDataTrack extends ParticleModel implements DataTrack {
 		createTimeParameter();
 	}
 
+	/**
+	 * Data tracks are fast to refresh so their steps are always computed on the
+	 * calling thread.
+	 */
+	@Override
+	protected boolean isBackgroundRefreshAllowed() {
+		return false;
+	}
+
 	@Override
 	protected void reset() {
 		// clear existing steps
@@ -40,6 +40,7 @@ import java.beans.PropertyChangeListener;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenu;
@@ -47,6 +48,7 @@ import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
+import org.opensourcephysics.controls.OSPLog;
 import org.opensourcephysics.controls.XML;
 import org.opensourcephysics.controls.XMLControl;
 import org.opensourcephysics.display.DrawingPanel;
@@ -119,6 +121,8 @@ abstract public class ParticleModel extends PointMass {
 	protected PropertyChangeListener massParamListener, timeParamListener;
 
 	protected void setLastValidFrame(int i) {
+		if (i == -1)
+			cancelTraceTask();
 		lastValidFrame = i;
 	}
 
@@ -165,7 +169,7 @@ abstract public class ParticleModel extends PointMass {
 		//long t0 = Performance.now(0);
 
 		if (isVisible() && tp.getFrameNumber() > lastValidFrame) {
-				refreshSteps("draw");
+			refreshStepsInBackground("draw"); //$NON-NLS-1$
 		}
 		// OSPLog.debug("!!! " + Performance.now(t0) + "
 		// ParticleModel.paintComponent-draw-refreshsteps");
@@ -321,7 +325,7 @@ abstract public class ParticleModel extends PointMass {
 			// no reset to -1
 			if (dorefresh) {
 				refreshInitialTime();
-				refreshSteps(name);
+				requestRefresh(name);
 			}
 			return;
 		case Trackable.PROPERTY_ADJUSTING: // $NON-NLS-1$
@@ -364,11 +368,11 @@ abstract public class ParticleModel extends PointMass {
 				repaint();
 				break;
 			case "refresh":
-				refreshSteps(name);
+				requestRefresh(name);
 				break;
 			case "time":
 				refreshInitialTime();
-				refreshSteps(name);
+				requestRefresh(name);
 				break;
 			}
 		}
@@ -394,6 +398,7 @@ abstract public class ParticleModel extends PointMass {
 	 */
 	@Override
 	public void setMass(double mass) {
+		stopTraceTask();
 		super.setMass(mass);
 		mass = super.getMass();
 		massField.setValue(mass);
@@ -741,6 +746,72 @@ abstract public class ParticleModel extends PointMass {
 
 	protected static int nCalc = 0;
 
+	/**
+	 * the minimum number of trace points computed on a background thread
+	 */
+	protected static int backgroundTracePts = 5000;
+
+	private TraceTask traceTask; // the background trace computation, if any
+	private boolean backgroundRefresh, refreshAgain;
+
+	/**
+	 * Refreshes step positions for drawing. Long computations are done on a
+	 * background thread and published to the steps as they proceed so the
+	 * display remains responsive.
+	 *
+	 * @param why the reason for refreshing
+	 */
+	protected void refreshStepsInBackground(String why) {
+		backgroundRefresh = true;
+		try {
+			refreshSteps(why);
+		} finally {
+			backgroundRefresh = false;
+		}
+	}
+
+	/**
+	 * Determines if trace points may be computed on a background thread.
+	 * Overridden by ParticleDataTrack.
+	 *
+	 * @return true if background computation is allowed
+	 */
+	protected boolean isBackgroundRefreshAllowed() {
+		return !OSPRuntime.isJS && !loading && SwingUtilities.isEventDispatchThread();
+	}
+
+	/**
+	 * Cancels the background trace computation, if any, and waits for it to stop.
+	 * Steps already published are kept.
+	 */
+	protected void cancelTraceTask() {
+		refreshAgain = false;
+		if (traceTask != null) {
+			TraceTask task = traceTask;
+			traceTask = null;
+			task.cancel();
+		}
+	}
+
+	/**
+	 * Stops the background trace computation, if any, before the functions,
+	 * parameters or solver it uses are changed on the event queue. The steps are
+	 * then recomputed from the start frame, as they are after any such change.
+	 */
+	protected void stopTraceTask() {
+		if (traceTask != null)
+			setLastValidFrame(-1);
+	}
+
+	/**
+	 * Completes the background trace computation, if any, by waiting for it to
+	 * finish and publishing its results.
+	 */
+	protected void completeTraceTask() {
+		if (traceTask != null)
+			traceTask.complete();
+	}
+
 	/**
 	 * Refreshes step positions.
 	 */
@@ -752,6 +823,34 @@ abstract public class ParticleModel extends PointMass {
 		if (refreshStepsLater || tp == null
 				|| this instanceof DynamicSystem && ((DynamicSystem) this).particles.length == 0)
 			return;
+		if (traceTask != null) {
+			if (backgroundRefresh) {
+				// refresh again when the computation in progress is done
+				refreshAgain = true;
+				return;
+			}
+			completeTraceTask();
+		}
+		TraceTask task = createTraceTask();
+		if (task == null)
+			return;
+		if (backgroundRefresh && task.stepCount >= backgroundTracePts && isBackgroundRefreshAllowed()) {
+			traceTask = task;
+			task.start();
+			return;
+		}
+		holdPainting(true);
+		task.run();
+		task.finish();
+	}
+
+	/**
+	 * Resets this model if needed and creates a TraceTask to compute the steps
+	 * from the last valid frame to the current frame.
+	 *
+	 * @return the task, or null if there is nothing to compute
+	 */
+	private TraceTask createTraceTask() {
 		refreshDerivsLater = tp.getPlayer().getClipControl().isPlaying();
 //		trackerPanel.getTFrame().holdPainting(true);
 		int n = tp.getFrameNumber();
@@ -763,20 +862,18 @@ abstract public class ParticleModel extends PointMass {
 			end--;
 		}
 		if (end <= lastValidFrame)
-			return;
+			return null;
 		if (lastValidFrame == -1) {
 			reset(); // initializes model, sets lastValidFrame to marked frame, if any
 			if (lastValidFrame == -1 || end <= lastValidFrame)
-				return;
+				return null;
 		}
-		holdPainting(true);
 		start = lastValidFrame;
 		//OSPLog.debug(Performance.timeCheckStr("ParticleModel.refreshSteps0 " + start + " " + end + " " + nCalc,
 		//		Performance.TIME_MARK));
 		if (Tracker.timeLogEnabled)
 			Tracker.logTime(
 					this.getClass().getSimpleName() + this.hashCode() + " refreshing steps " + start + " to " + end); //$NON-NLS-1$ //$NON-NLS-2$
-		boolean singleStep = (end - start == 1);
 		// step forward to end
 		ImageCoordSystem coords = tp.getCoords();
 		// get underlying coords if appropriate
@@ -784,122 +881,481 @@ abstract public class ParticleModel extends PointMass {
 		while (useDefault && coords instanceof ReferenceFrame) {
 			coords = ((ReferenceFrame) coords).getCoords();
 		}
-		double startTime = t0 + dt * tracePtsPerStep * (start - getStartFrame()) / clip.getStepSize();
-		double stepSize = 1.0 * clip.getStepSize() / tracePtsPerStep;
-		int stepCount = (tracePtsPerStep * (end - start)) / clip.getStepSize();
-		ParticleModel[] models = getModels();
-		// prepare larger trace arrays and copy existing points into them
-		int nmodels = models.length;
-		for (int i = 0; i < nmodels; i++) {
-			ParticleModel model = models[i];
-			model.locked = false;
-			int traceLength = model.traceX.length + stepCount;
-			model.prevX = model.traceX;
-			model.prevY = model.traceY;
-			model.traceX = Arrays.copyOf(model.prevX, traceLength);
-			model.traceY = Arrays.copyOf(model.prevY, traceLength);
-//			model.traceY = new double[traceLength];
-//			System.arraycopy(model.prevX, 0, model.traceX, 0, model.prevX.length);
-//			System.arraycopy(model.prevY, 0, model.traceY, 0, model.prevY.length);
+		return new TraceTask(n, start, end, coords, clip);
+	}
+
+	/**
+	 * Determines if this model can compute its steps concurrently with other
+	 * models. A model cannot if it is a dynamic system or part of one, the origin
+	 * of the current reference frame, or a data track.
+	 *
+	 * @return true if independent
+	 */
+	protected boolean isIndependent() {
+		if (this instanceof DynamicSystem || this instanceof DynamicParticle && ((DynamicParticle) this).system != null
+				|| !isBackgroundRefreshAllowed())
+			return false;
+		ImageCoordSystem coords = tp.getCoords();
+		return !(coords instanceof ReferenceFrame && ((ReferenceFrame) coords).getOriginTrack() == this);
+	}
+
+	/**
+	 * Requests a refresh of the step positions. While the TrackerPanel dispatches
+	 * a change to every model, the refresh is done by the ModelRefresher at the
+	 * end of the dispatch along with those of other models changed by the same
+	 * event, otherwise it is done immediately.
+	 *
+	 * @param why the reason for refreshing
+	 */
+	protected void requestRefresh(String why) {
+		ModelRefresher refresher = tp.getModelRefresher();
+		if (OSPRuntime.isJS || loading || !SwingUtilities.isEventDispatchThread() || !refresher.isBatching()) {
+			refreshSteps(why);
+			return;
 		}
+		refresher.add(this);
+	}
 
-		for (int i = 0; i < stepCount; i++) {
-			int stepNumber = i + 1;
-			int frameNumber = start + (int) (stepNumber * stepSize);
-			time = startTime + stepNumber * dt;
-			if (!getNextTracePositions())
+	/**
+	 * Refreshes the step positions of independent models, computing their traces
+	 * concurrently. Each TraceTask copies its coordinate transforms when created
+	 * here, before any concurrent work starts, and then evaluates only its own
+	 * model's functions, parameters and solver, so the computations share no
+	 * mutable state but the nCalc debugging counter. The results are then
+	 * published on the calling thread in model order, so they are the same as
+	 * refreshing the models one at a time.
+	 *
+	 * @param models the models, each independent
+	 */
+	protected static void refreshConcurrently(List<ParticleModel> models) {
+		List<TraceTask> tasks = new ArrayList<TraceTask>();
+		for (ParticleModel model : models) {
+			model.locked = true;
+			if (model.refreshStepsLater || model.tp == null)
+				continue;
+			model.completeTraceTask();
+			TraceTask task = model.createTraceTask();
+			if (task != null) {
+				task.concurrent = true;
+				tasks.add(task);
+			}
+		}
+		if (tasks.size() > 1) {
+			tasks.parallelStream().forEach(TraceTask::run);
+		} else {
+			for (TraceTask task : tasks)
+				task.run();
+		}
+		for (TraceTask task : tasks) {
+			ParticleModel model = task.getModel();
+			if (task.canceled) {
+				// failed: start over when next drawn
+				model.setLastValidFrame(-1);
+				model.repaint();
 				continue;
-			AffineTransform transform = coords.getToImageTransform(frameNumber);
+			}
+			model.holdPainting(true);
+			task.finish();
+		}
+	}
+
+	/**
+	 * Computes trace points and step positions from a start frame to an end frame.
+	 * The computation may be done on the calling thread or on a background thread;
+	 * in the latter case the results are buffered and published to the trace
+	 * arrays and steps on the event queue, and the computation can be canceled at
+	 * any trace point. Either way the results are identical.
+	 * 
+	 * The coordinate transforms are copied when the task is created and the saved
+	 * states are buffered until published, so the computation reads no coords and
+	 * writes no model data shared with the event queue. The event queue stops the
+	 * computation before changing the functions, parameters or solver it uses
+	 * (see stopTraceTask()).
+	 */
+	private class TraceTask implements Runnable {
+
+		// trace points between publications when running in the background
+		private static final int PUBLISH_INTERVAL = 1000;
+
+		private final int n, start, end, stepCount;
+		private final double startTime, stepSize;
+		private final boolean singleStep;
+		private final AffineTransform[] transforms; // image transforms from start to end frame
+		private final VideoClip clip;
+		private final ParticleModel[] models;
+		private final TraceBuffer[] bufferX, bufferY;
+		private final int[] traceStart; // trace lengths before the first publication
+		private final boolean[] computedStep; // true if trace point was computed
+		private final double[] states; // states to save, buffered until published
+		private final int stateLength;
+		private Thread thread; // the background thread, if any
+		private boolean concurrent; // true if run concurrently with other models
+		private volatile int computed; // trace points computed
+		private volatile boolean canceled;
+		private int published; // trace points published
+
+		TraceTask(int n, int start, int end, ImageCoordSystem coords, VideoClip clip) {
+			this.n = n;
+			this.start = start;
+			this.end = end;
+			this.clip = clip;
+			transforms = new AffineTransform[end - start + 1];
+			for (int i = end; i >= start; i--) { // from end since coords grows when asked for a later frame
+				transforms[i - start] = new AffineTransform(coords.getToImageTransform(i));
+			}
+			singleStep = (end - start == 1);
+			startTime = t0 + dt * tracePtsPerStep * (start - getStartFrame()) / clip.getStepSize();
+			stepSize = 1.0 * clip.getStepSize() / tracePtsPerStep;
+			stepCount = (tracePtsPerStep * (end - start)) / clip.getStepSize();
+			models = getModels();
+			bufferX = new TraceBuffer[models.length];
+			bufferY = new TraceBuffer[models.length];
+			for (int j = 0; j < models.length; j++) {
+				bufferX[j] = new TraceBuffer(stepCount);
+				bufferY[j] = new TraceBuffer(stepCount);
+			}
+			traceStart = new int[models.length];
+			computedStep = new boolean[stepCount];
+			double[] state = getStateToSave();
+			stateLength = (state == null ? 0 : state.length);
+			states = new double[stateLength * (stepCount / tracePtsPerStep)];
+		}
+
+		/**
+		 * Starts the computation on a new background thread.
+		 */
+		void start() {
+			concurrent = true;
+			thread = new Thread(this, "ParticleModel trace"); //$NON-NLS-1$
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		/**
+		 * Computes the trace points. Called on the background thread, if any.
+		 */
+		@Override
+		public void run() {
+			int nmodels = models.length;
+			try {
+				for (int i = 0; i < stepCount && !canceled; i++) {
+					int stepNumber = i + 1;
+					int frameNumber = start + (int) (stepNumber * stepSize);
+					time = startTime + stepNumber * dt;
+					if (!getNextTracePositions()) {
+						// leave the trace point at the origin as before
+						for (int j = 0; j < nmodels; j++) {
+							bufferX[j].add(0);
+							bufferY[j].add(0);
+						}
+						computed = stepNumber;
+						continue;
+					}
+					computedStep[i] = true;
+					AffineTransform transform = transforms[frameNumber - start];
+					for (int j = 0; j < nmodels; j++) {
+						transform.transform(points[j], points[j]);
+						// determine if point is invalid due to out of bounds
+						boolean valid = Math.abs(points[j].x) < xLimit && Math.abs(points[j].y) < yLimit;
+						if (!valid && !invalidWarningShown) {
+							invalidWarningShown = true;
+							SwingUtilities.invokeLater(() -> {
+								JOptionPane.showMessageDialog(tp,
+										TrackerRes.getString("ParticleModel.Dialog.Offscreen.Message1") + XML.NEW_LINE //$NON-NLS-1$
+												+ TrackerRes.getString("ParticleModel.Dialog.Offscreen.Message2"), //$NON-NLS-1$
+										TrackerRes.getString("ParticleModel.Dialog.Offscreen.Title"), //$NON-NLS-1$
+										JOptionPane.WARNING_MESSAGE);
+							});
+						}
+						bufferX[j].add(valid ? points[j].x : Double.NaN);
+						bufferY[j].add(valid ? points[j].y : Double.NaN);
+					}
+					if (stepNumber % tracePtsPerStep == 0 && stateLength > 0) {
+						System.arraycopy(getStateToSave(), 0, states, (stepNumber / tracePtsPerStep - 1) * stateLength,
+								stateLength);
+					}
+					computed = stepNumber;
+					if (thread != null && stepNumber % PUBLISH_INTERVAL == 0) {
+						SwingUtilities.invokeLater(() -> publish());
+					}
+				}
+			} catch (RuntimeException ex) {
+				if (!concurrent)
+					throw ex;
+				canceled = true;
+				OSPLog.warning("ParticleModel trace computation failed: " + ex); //$NON-NLS-1$
+			}
+			if (thread != null) {
+				SwingUtilities.invokeLater(() -> {
+					if (traceTask != this)
+						return;
+					if (canceled) {
+						traceTask = null;
+						trimTrace();
+						return;
+					}
+					holdPainting(true);
+					finish();
+				});
+			}
+		}
+
+		ParticleModel getModel() {
+			return ParticleModel.this;
+		}
+
+		/**
+		 * Cancels the computation and waits for the background thread to stop.
+		 */
+		void cancel() {
+			canceled = true;
+			join();
+			trimTrace();
+		}
+
+		/**
+		 * Waits for the background computation to stop and, unless canceled,
+		 * finishes it. Called on the event queue.
+		 */
+		void complete() {
+			join();
+			if (traceTask != this)
+				return;
+			if (canceled) {
+				traceTask = null;
+				trimTrace();
+				return;
+			}
+			holdPainting(true);
+			finish();
+		}
+
+		private void join() {
+			if (thread == null)
+				return;
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Appends the trace points computed since the last publication to the trace
+		 * arrays and sets the corresponding step positions. Called on the event queue.
+		 */
+		void publish() {
+			if (thread != null && traceTask != this)
+				return; // stale
+			int count = computed;
+			if (count <= published)
+				return;
+			int nmodels = models.length;
 			for (int j = 0; j < nmodels; j++) {
-				transform.transform(points[j], points[j]);
-				// determine if point is invalid due to out of bounds
-				boolean valid = Math.abs(points[j].x) < xLimit && Math.abs(points[j].y) < yLimit;
-				if (!valid && !invalidWarningShown) {
-					invalidWarningShown = true;
-					SwingUtilities.invokeLater(() -> {
-						JOptionPane.showMessageDialog(tp,
-								TrackerRes.getString("ParticleModel.Dialog.Offscreen.Message1") + XML.NEW_LINE //$NON-NLS-1$
-										+ TrackerRes.getString("ParticleModel.Dialog.Offscreen.Message2"), //$NON-NLS-1$
-								TrackerRes.getString("ParticleModel.Dialog.Offscreen.Title"), //$NON-NLS-1$
-								JOptionPane.WARNING_MESSAGE);
-					});
+				ParticleModel model = models[j];
+				model.locked = false;
+				if (published == 0) {
+					// allocate the whole trace once, with undrawn NaN points not yet computed
+					int length = traceStart[j] = model.traceX.length;
+					model.prevX = model.traceX;
+					model.prevY = model.traceY;
+					model.traceX = Arrays.copyOf(model.prevX, length + stepCount);
+					model.traceY = Arrays.copyOf(model.prevY, length + stepCount);
+					Arrays.fill(model.traceX, length, length + stepCount, Double.NaN);
+					Arrays.fill(model.traceY, length, length + stepCount, Double.NaN);
 				}
-				models[j].traceX[models[j].prevX.length + i] = valid ? points[j].x : Double.NaN;
-				models[j].traceY[models[j].prevY.length + i] = valid ? points[j].y : Double.NaN;
-				if (stepNumber % tracePtsPerStep == 0) { // refresh position step
-					saveState(frameNumber);
-					PositionStep step = (PositionStep) models[j].getStep(frameNumber);
+				bufferX[j].copy(published, count, model.traceX, traceStart[j] + published);
+				bufferY[j].copy(published, count, model.traceY, traceStart[j] + published);
+			}
+			int lastFrame = -1;
+			Point2D.Double point = new Point2D.Double();
+			double[] state = new double[stateLength];
+			for (int i = published; i < count; i++) {
+				int stepNumber = i + 1;
+				if (!computedStep[i] || stepNumber % tracePtsPerStep != 0)
+					continue;
+				int frameNumber = start + (int) (stepNumber * stepSize);
+				if (stateLength > 0) {
+					System.arraycopy(states, (stepNumber / tracePtsPerStep - 1) * stateLength, state, 0, stateLength);
+					saveState(frameNumber, state);
+				}
+				// refresh position step
+				for (int j = 0; j < nmodels; j++) {
+					ParticleModel model = models[j];
+					PositionStep step = (PositionStep) model.getStep(frameNumber);
 					if (step == null) {
-						step = createPositionStep(models[j], frameNumber, 0, 0);
-						step.setFootprint(models[j].getFootprint());
-						models[j].steps.setStep(frameNumber, step);
+						step = createPositionStep(model, frameNumber, 0, 0);
+						step.setFootprint(model.getFootprint());
+						model.steps.setStep(frameNumber, step);
+					}
+					double x = bufferX[j].get(i), y = bufferY[j].get(i);
+					if (Double.isNaN(x)) {
+						step.getPosition().setPosition(nan); // this method is fast
+					} else {
+						point.setLocation(x, y);
+						step.getPosition().setPosition(point); // this method is fast
 					}
-					step.getPosition().setPosition(valid ? points[j] : nan); // this method is fast
+				}
+				lastFrame = frameNumber;
+			}
+			published = count;
+			if (thread != null) {
+				for (int j = 0; j < nmodels; j++) {
+					models[j].locked = true;
+				}
+				if (count < stepCount && lastFrame > lastValidFrame) {
+					// show the steps published so far
+					lastValidFrame = lastFrame;
+					TFrame.repaintT(tp);
 				}
 			}
 		}
-		int count = 4 + (end - start);
-		int startUpdate = start;
-		// step back twice to pick up possible valid derivatives
-		if (startUpdate > clip.getStepSize())
-			startUpdate -= clip.getStepSize();
-		if (startUpdate > clip.getStepSize())
-			startUpdate -= clip.getStepSize();
-		setLastValidFrame(end);
-		for (int m = 0; m < nmodels; m++) {
-			ParticleModel model = models[m];
-			model.steps.setLength(end + 1);
-			coords = tp.getCoords(); // get active coords
-			// special treatment if this is the origin of current reference frame
-			if (coords instanceof ReferenceFrame && ((ReferenceFrame) coords).getOriginTrack() == model) {
-				// set origins of reference frame
-				boolean prev = model.refreshing; // save refreshing value
-				model.refreshing = true;
-				((ReferenceFrame) coords).setOrigins();
-				// then set positions to zero wrt origins
-				for (int i = 0, ns = clip.getStepCount(); i < ns; i++) {
-					int frameNumber = clip.stepToFrame(i);
-					PositionStep step = (PositionStep) model.getStep(frameNumber);
-					if (step == null)
-						continue;
-					AffineTransform transform = coords.getToImageTransform(frameNumber);
-					Point2D.Double point = model.points[model.myPoint];
-					point.setLocation(0, 0);
-					transform.transform(point, point);
-					step.getPosition().setPosition(point); // this method is fast
+
+		/**
+		 * Shortens the trace arrays to the points published by a canceled
+		 * computation. Called on the event queue.
+		 */
+		private void trimTrace() {
+			if (published == 0)
+				return;
+			for (int j = 0; j < models.length; j++) {
+				ParticleModel model = models[j];
+				int length = traceStart[j] + published;
+				if (model.traceX.length > length) {
+					model.traceX = Arrays.copyOf(model.traceX, length);
+					model.traceY = Arrays.copyOf(model.traceY, length);
 				}
-				model.refreshing = prev; // restore refreshing value
-//				if (!refreshDerivsLater) {
-//					model.updateDerivatives(startUpdate, count);
-//				}
-// BH this was duplicated with an else { } clause next.
 			}
-			if (!refreshDerivsLater) {
-				model.updateDerivatives(startUpdate, count);
+		}
+
+		/**
+		 * Publishes the remaining results, updates derivatives and notifies
+		 * listeners. Called on the event queue with painting held.
+		 */
+		void finish() {
+			publish();
+			if (traceTask == this)
+				traceTask = null;
+			int nmodels = models.length;
+			int count = 4 + (end - start);
+			int startUpdate = start;
+			// step back twice to pick up possible valid derivatives
+			if (startUpdate > clip.getStepSize())
+				startUpdate -= clip.getStepSize();
+			if (startUpdate > clip.getStepSize())
+				startUpdate -= clip.getStepSize();
+			setLastValidFrame(end);
+			for (int m = 0; m < nmodels; m++) {
+				ParticleModel model = models[m];
+				model.locked = false;
+				model.steps.setLength(end + 1);
+				ImageCoordSystem coords = tp.getCoords(); // get active coords
+				// special treatment if this is the origin of current reference frame
+				if (coords instanceof ReferenceFrame && ((ReferenceFrame) coords).getOriginTrack() == model) {
+					// set origins of reference frame
+					boolean prev = model.refreshing; // save refreshing value
+					model.refreshing = true;
+					((ReferenceFrame) coords).setOrigins();
+					// then set positions to zero wrt origins
+					for (int i = 0, ns = clip.getStepCount(); i < ns; i++) {
+						int frameNumber = clip.stepToFrame(i);
+						PositionStep step = (PositionStep) model.getStep(frameNumber);
+						if (step == null)
+							continue;
+						AffineTransform transform = coords.getToImageTransform(frameNumber);
+						Point2D.Double point = model.points[model.myPoint];
+						point.setLocation(0, 0);
+						transform.transform(point, point);
+						step.getPosition().setPosition(point); // this method is fast
+					}
+					model.refreshing = prev; // restore refreshing value
+				}
+				if (!refreshDerivsLater) {
+					model.updateDerivatives(startUpdate, count);
+				}
+				if (model.vAtOrigin)
+					model.vTailsToOriginItem.doClick();
+				if (model.aAtOrigin)
+					model.aTailsToOriginItem.doClick();
+				if (!refreshDerivsLater && singleStep) {
+					holdPainting(false);
+					model.firePropertyChange(TTrack.PROPERTY_TTRACK_STEP, null, new Integer(n));
+				}
+				// erase refreshed steps
+				for (int i = start + 1; i <= end; i++) {
+					Step step = model.getStep(i);
+					if (step != null)
+						step.erase();
+				}
+				model.locked = true;
 			}
-			if (model.vAtOrigin)
-				model.vTailsToOriginItem.doClick();
-			if (model.aAtOrigin)
-				model.aTailsToOriginItem.doClick();
-			if (!refreshDerivsLater && singleStep) {
-				holdPainting(false);
-				model.firePropertyChange(TTrack.PROPERTY_TTRACK_STEP, null, new Integer(n));
+
+			//OSPLog.debug(Performance.timeCheckStr("ParticleModel.refreshSteps " + nCalc, Performance.TIME_MARK));
+			holdPainting(false);
+			if (!refreshDerivsLater && !singleStep) {
+				fireStepsChanged();
 			}
-			// erase refreshed steps
-			for (int i = start + 1; i <= end; i++) {
-				Step step = model.getStep(i);
-				if (step != null)
-					step.erase();
+			TFrame.repaintT(tp);
+			if (ParticleModel.this instanceof DynamicParticle) {
+				// report the cost so solvers and tolerances can be compared
+				OSPLog.fine(getName() + " rate evaluations: " //$NON-NLS-1$
+						+ ((DynamicParticle) ParticleModel.this).getRateCount());
+				if (modelBuilder != null)
+					modelBuilder.refreshSolverControls();
 			}
-			model.locked = true;
+			if (refreshAgain) {
+				refreshAgain = false;
+				refreshStepsInBackground("refresh again"); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * A growable array of trace coordinates stored in fixed-size chunks so that
+	 * growing never copies the points already added.
+	 */
+	protected static class TraceBuffer {
+
+		private static final int CHUNK = 4096;
+
+		private double[][] chunks;
+		private int size;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param capacity the expected number of points
+		 */
+		TraceBuffer(int capacity) {
+			chunks = new double[Math.max(1, (capacity + CHUNK - 1) / CHUNK)][];
 		}
 
-		//OSPLog.debug(Performance.timeCheckStr("ParticleModel.refreshSteps " + nCalc, Performance.TIME_MARK));
-		holdPainting(false);
-		if (!refreshDerivsLater && !singleStep) {
-			fireStepsChanged();
+		void add(double value) {
+			int c = size / CHUNK;
+			if (c == chunks.length)
+				chunks = Arrays.copyOf(chunks, 2 * c);
+			if (chunks[c] == null)
+				chunks[c] = new double[CHUNK];
+			chunks[c][size % CHUNK] = value;
+			size++;
+		}
+
+		double get(int i) {
+			return chunks[i / CHUNK][i % CHUNK];
+		}
+
+		/**
+		 * Copies the points from index i0 (inclusive) to i1 (exclusive) into an array.
+		 */
+		void copy(int i0, int i1, double[] dest, int destPos) {
+			while (i0 < i1) {
+				int c = i0 / CHUNK, offset = i0 % CHUNK;
+				int len = Math.min(CHUNK - offset, i1 - i0);
+				System.arraycopy(chunks[c], offset, dest, destPos, len);
+				i0 += len;
+				destPos += len;
+			}
 		}
-		TFrame.repaintT(tp);
 	}
 
 	protected void holdPainting(boolean b) {
@@ -950,6 +1406,7 @@ abstract public class ParticleModel extends PointMass {
 	 * Trims all steps after endFrame.
 	 */
 	protected void trimSteps() {
+		completeTraceTask();
 		// return if trimming not needed
 		VideoClip clip = tp.getPlayer().getVideoClip();
 		int n = clip.getFrameCount() - 1;
@@ -988,12 +1445,22 @@ abstract public class ParticleModel extends PointMass {
 	}
 
 	/**
-	 * Saves the current state. Does nothing by default, but DynamicParticle
-	 * overrides.
+	 * Gets the current state to be saved with saveState(). Returns null by
+	 * default, but DynamicParticle overrides.
+	 * 
+	 * @return the state, or null if no states are saved
+	 */
+	protected double[] getStateToSave() {
+		return null;
+	}
+
+	/**
+	 * Saves a state. Does nothing by default, but DynamicParticle overrides.
 	 * 
 	 * @param frameNumber the frame number
+	 * @param state       the state to save (copied)
 	 */
-	protected void saveState(int frameNumber) {
+	protected void saveState(int frameNumber, double[] state) {
 	}
 
 	/**
@@ -1341,6 +1808,7 @@ abstract public class ParticleModel extends PointMass {
 
 	@Override
 	public void dispose() {
+		cancelTraceTask();
 		if (modelBuilder != null) {
 			getParamEditor().removePropertyChangeListener(massParamListener);
 			getInitEditor().removePropertyChangeListener(timeParamListener);
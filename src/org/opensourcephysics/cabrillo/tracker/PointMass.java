@@ -177,12 +177,13 @@ public class PointMass extends TTrack {
 	protected static final int FINITE_DIFF = 0;
 	protected static final int BOUNCE_DETECT = 1;
 	protected static final int FINITE_DIFF_VSPILL2 = 2;
+	protected static final int SAVITZKY_GOLAY = 3;
 	protected static final double MINIMUM_MASS = 1E-30;
 
 	// static fields
 	protected final static Derivative vDeriv = new FirstDerivative();
 	protected final static Derivative aDeriv = new SecondDerivative();
-	protected final static BounceDerivatives bounceDerivs = new BounceDerivatives();
+	protected final BounceDerivatives bounceDerivs = new BounceDerivatives();
 	protected final static String[] dataVariables = new String[] { 
 			"t", //$NON-NLS-1$ 0
 			"x", //$NON-NLS-1$ 1
@@ -385,11 +386,15 @@ public class PointMass extends TTrack {
 	protected int vDerivSpill = 1;
 	protected int aDerivSpill = 2;
 	protected int bounceDerivsSpill = 3;
+	protected int sgDerivSpill = 3;
+	protected SavitzkyGolayDerivative sgDerivs = new SavitzkyGolayDerivative();
 	protected int[] params = new int[4];
 	protected double[] xData = new double[5];
 	protected double[] yData = new double[5];
 	protected boolean[] validData = new boolean[5];
 	protected Object[] derivData = new Object[] { params, xData, yData, validData };
+	// ID of the panel whose world positions fill xData and yData, or null if none
+	private Integer derivDataPanelID;
 	// identify skipped steps
 	protected TreeSet<Integer> skippedSteps = new TreeSet<Integer>();
 	protected boolean isAutofill = false;
@@ -1016,14 +1021,15 @@ public class PointMass extends TTrack {
 	}
 
 	/**
-	 * Sets the derivative algorithm type. Defined types: FINITE_DIFF, BOUNCE_DETECT
+	 * Sets the derivative algorithm type. Defined types: FINITE_DIFF, BOUNCE_DETECT,
+	 * FINITE_DIFF_VSPILL2, SAVITZKY_GOLAY
 	 *
 	 * @param type one of the defined algorithm types
 	 */
 	public void setAlgorithm(int type) {
 		if (type == algorithm)
 			return;
-		if (type == FINITE_DIFF || type == BOUNCE_DETECT || type == FINITE_DIFF_VSPILL2) {
+		if (type == FINITE_DIFF || type == BOUNCE_DETECT || type == FINITE_DIFF_VSPILL2 || type == SAVITZKY_GOLAY) {
 			algorithm = type;
 			refreshDataLater = false;
 			updateDerivatives();
@@ -1031,6 +1037,43 @@ public class PointMass extends TTrack {
 		}
 	}
 
+	/**
+	 * Sets the window and polynomial order of the Savitzky-Golay algorithm.
+	 *
+	 * @param spill the number of steps on either side of each window
+	 * @param order the polynomial order
+	 */
+	public void setSavitzkyGolay(int spill, int order) {
+		spill = Math.max(1, Math.min(spill, SavitzkyGolayDerivative.MAX_SPILL));
+		if (spill == sgDerivSpill && order == sgDerivs.getOrder())
+			return;
+		sgDerivSpill = spill;
+		sgDerivs.setOrder(order);
+		if (algorithm == SAVITZKY_GOLAY) {
+			refreshDataLater = false;
+			updateDerivatives();
+			fireStepsChanged();
+		}
+	}
+
+	/**
+	 * Gets the number of steps on either side of each Savitzky-Golay window.
+	 *
+	 * @return the spill
+	 */
+	public int getSavitzkyGolaySpill() {
+		return sgDerivSpill;
+	}
+
+	/**
+	 * Gets the Savitzky-Golay polynomial order.
+	 *
+	 * @return the order
+	 */
+	public int getSavitzkyGolayOrder() {
+		return sgDerivs.getOrder();
+	}
+
 	/**
 	 * Gets the autofill flag.
 	 * 
@@ -2128,6 +2171,27 @@ public class PointMass extends TTrack {
 		updateDerivatives(panel, startFrame, 5);
 	}
 
+	/**
+	 * Updates the velocity and acceleration steps that depend on the positions in
+	 * a range of frames, ie those within the derivative reach of the range.
+	 * 
+	 * @param firstFrame the first frame with a changed position
+	 * @param lastFrame  the last frame with a changed position
+	 */
+	protected void updateDerivativesNear(int firstFrame, int lastFrame) {
+		if (isEmpty() || refreshDataLater)
+			return;
+		int reach = getDerivativeReach();
+		for (int i = tList.size(); --i >= 0;) {
+			TrackerPanel panel = panel(tList.get(i));
+			VideoClip clip = panel.getPlayer().getVideoClip();
+			int stepSize = clip.getStepSize();
+			int startFrame = Math.max(firstFrame - reach * stepSize, clip.getStartFrameNumber());
+			int stepCount = (lastFrame + reach * stepSize - startFrame) / stepSize + 1;
+			updateDerivatives(panel, startFrame, stepCount);
+		}
+	}
+
 	/**
 	 * Updates all velocity and acceleration steps on a TrackerPanel.
 	 * 
@@ -2140,6 +2204,23 @@ public class PointMass extends TTrack {
 		updateDerivatives(panel, clip.getStartFrameNumber(), clip.getStepCount());
 	}
 
+	/**
+	 * Gets the number of steps on either side of a frame whose positions may
+	 * affect the derivatives at that frame with the current algorithm.
+	 * 
+	 * @return the reach in steps
+	 */
+	protected int getDerivativeReach() {
+		if (algorithm == BOUNCE_DETECT) {
+			// bounce windows may shift by up to their full width
+			return 2 * (2 * bounceDerivsSpill + 1);
+		}
+		if (algorithm == SAVITZKY_GOLAY)
+			return sgDerivSpill;
+		int vSpill = algorithm == FINITE_DIFF_VSPILL2 ? 2 : vDerivSpill;
+		return Math.max(vSpill, aDerivSpill);
+	}
+
 	/**
 	 * Updates velocity and acceleration steps for a specified start frame and step
 	 * count.
@@ -2159,20 +2240,33 @@ public class PointMass extends TTrack {
 		// initialize data arrays
 		if (derivData[2] == null)
 			derivData[2] = yData;
-		if (xData.length < steps.array.length) {
-			derivData[1] = xData = new double[steps.array.length + 5];
-			derivData[2] = yData = new double[steps.array.length + 5];
-			derivData[3] = validData = new boolean[steps.array.length + 5];
+		Step[] stepArray = steps.array;
+		boolean newArrays = xData.length < stepArray.length;
+		if (newArrays) {
+			derivData[1] = xData = new double[stepArray.length + 5];
+			derivData[2] = yData = new double[stepArray.length + 5];
+			derivData[3] = validData = new boolean[stepArray.length + 5];
 		}
 		// set up derivative parameters
+		int stepSize = clip.getStepSize();
 		params[1] = startFrame;
-		params[2] = clip.getStepSize();
+		params[2] = stepSize;
 		params[3] = stepCount;
-		// set up position data
-		for (int i = 0; i < validData.length; i++)
+		// set up position data only within reach of the derivatives being updated:
+		// data outside this window was set by earlier calls for the same panel and
+		// is not read. The arrays are shared by all panels, so after another panel
+		// or the rotation data has filled them they are refreshed in full.
+		int endFrame = startFrame + (stepCount - 1) * stepSize;
+		int lo = 0, hi = validData.length - 1;
+		if (!newArrays && panel.getID().equals(derivDataPanelID)
+				&& (startFrame > clip.getStartFrameNumber() || endFrame < clip.getEndFrameNumber())) {
+			int reach = getDerivativeReach() * stepSize;
+			lo = Math.max(0, startFrame - reach);
+			hi = Math.min(hi, endFrame + reach);
+		}
+		for (int i = lo; i <= hi; i++)
 			validData[i] = false;
-		Step[] stepArray = steps.array;
-		for (int n = 0; n < stepArray.length; n++) {
+		for (int n = lo, last = Math.min(hi, stepArray.length - 1); n <= last; n++) {
 			if (stepArray[n] != null && clip.includesFrame(n)) {
 				PositionStep step = (PositionStep) stepArray[n];
 				Point2D p = step.getPosition().getWorldPosition(panel);
@@ -2181,6 +2275,7 @@ public class PointMass extends TTrack {
 				validData[n] = true;
 			}
 		}
+		derivDataPanelID = panel.getID();
 		// unlock track while updating
 		boolean isLocked = locked; // save for later restoration
 		locked = false;
@@ -2201,6 +2296,13 @@ public class PointMass extends TTrack {
 			yDeriv1 = (double[]) result[1];
 			xDeriv2 = (double[]) result[2];
 			yDeriv2 = (double[]) result[3];
+		} else if (algorithm == SAVITZKY_GOLAY) {
+			params[0] = sgDerivSpill; // spill
+			Object[] result = sgDerivs.evaluate(derivData);
+			xDeriv1 = (double[]) result[0];
+			yDeriv1 = (double[]) result[1];
+			xDeriv2 = (double[]) result[2];
+			yDeriv2 = (double[]) result[3];
 		} else {
 			params[0] = algorithm == FINITE_DIFF_VSPILL2 ? 2 : vDerivSpill; // spill
 			Object[] result = vDeriv.evaluate(derivData);
@@ -2214,7 +2316,6 @@ public class PointMass extends TTrack {
 
 		// create, delete and/or set components of velocity vectors
 		StepArray array = panelVMap.get(panel.getID());
-		int endFrame = startFrame + (stepCount - 1) * clip.getStepSize();
 		int end = Math.min(endFrame, xDeriv1.length - 1);
 		for (int n = startFrame; n <= end; n++) {
 			VectorStep v = (VectorStep) array.getStep(n);
@@ -2305,6 +2406,7 @@ public class PointMass extends TTrack {
 		}
 		for (int i = 0; i < steps.array.length; i++)
 			validData[i] = false;
+		derivDataPanelID = null; // arrays no longer hold world positions
 		// set up derivative parameters
 		VideoClip clip = tp.getPlayer().getVideoClip();
 		params[1] = clip.getStartFrameNumber();
@@ -2367,6 +2469,7 @@ public class PointMass extends TTrack {
 		}
 		for (int i = 0; i < steps.array.length; i++)
 			validData[i] = false;
+		derivDataPanelID = null; // arrays no longer hold world positions
 		// set up derivative parameters
 		VideoClip clip = tp.getPlayer().getVideoClip();
 		params[1] = startFrame;
@@ -2440,6 +2543,29 @@ public class PointMass extends TTrack {
 		}
 	}
 
+	/**
+	 * Overrides TTrack eraseFrame method to include v and a.
+	 *
+	 * @param n the frame number
+	 */
+	@Override
+	protected void eraseFrame(int n) {
+		if (tp == null)
+			return;
+		super.eraseFrame(n);
+		for (int j = 0; j < tp.andWorld.size(); j++) {
+			Integer panelID = tp.andWorld.get(j);
+			if (panelVMap.get(panelID) != null) {
+				Step[] stepArray = getVelocities(panelID);
+				if (n < stepArray.length && stepArray[n] != null)
+					stepArray[n].erase(panelID);
+				stepArray = getAccelerations(panelID);
+				if (n < stepArray.length && stepArray[n] != null)
+					stepArray[n].erase(panelID);
+			}
+		}
+	}
+
 	/**
 	 * Overrides TTrack remark method.
 	 */
@@ -2862,6 +2988,14 @@ public class PointMass extends TTrack {
 				i++;
 			}
 			control.setValue("keyFrames", keys); //$NON-NLS-1$
+			// save derivative algorithm if not default
+			if (p.algorithm != FINITE_DIFF) {
+				control.setValue("derivative_algorithm", p.algorithm); //$NON-NLS-1$
+			}
+			if (p.algorithm == SAVITZKY_GOLAY) {
+				control.setValue("savitzky_golay_spill", p.sgDerivSpill); //$NON-NLS-1$
+				control.setValue("savitzky_golay_order", p.sgDerivs.getOrder()); //$NON-NLS-1$
+			}
 		}
 
 		@Override
@@ -2904,6 +3038,20 @@ public class PointMass extends TTrack {
 			else
 				p.setAccelerationFootprint(p.getAccelerationFootprints()[0].getName());
 
+			// load derivative algorithm before the derivatives are updated
+			if (control.getPropertyNamesRaw().contains("derivative_algorithm")) { //$NON-NLS-1$
+				int type = control.getInt("derivative_algorithm"); //$NON-NLS-1$
+				if (type == BOUNCE_DETECT || type == FINITE_DIFF_VSPILL2 || type == SAVITZKY_GOLAY)
+					p.algorithm = type;
+			}
+			if (control.getPropertyNamesRaw().contains("savitzky_golay_spill")) { //$NON-NLS-1$
+				p.sgDerivSpill = Math.max(1,
+						Math.min(control.getInt("savitzky_golay_spill"), SavitzkyGolayDerivative.MAX_SPILL)); //$NON-NLS-1$
+			}
+			if (control.getPropertyNamesRaw().contains("savitzky_golay_order")) { //$NON-NLS-1$
+				p.sgDerivs.setOrder(control.getInt("savitzky_golay_order")); //$NON-NLS-1$
+			}
+
 			// load step and keyframe data
 			FrameData[] data = (FrameData[]) control.getObject("framedata"); //$NON-NLS-1$
 			if (data != null) {
@@ -0,0 +1,405 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.opensourcephysics.media.core.TPoint;
+import org.opensourcephysics.media.core.TemplateMatcher;
+
+/**
+ * A coarse-to-fine template search using Gaussian image pyramids. The template
+ * and search area are repeatedly blurred and halved, the coarsest level is
+ * searched exhaustively, and the best few locations are refined at each finer
+ * level within a small window. The final search is done by the TemplateMatcher
+ * itself in a template-sized window around the best refined location, so
+ * subpixel interpolation is unchanged.
+ *
+ * The TemplateMatcher scores a match by the mean difference over all the
+ * positions it searches divided by the difference at the match, so a score
+ * from the small final window is not comparable to one from the whole search
+ * area. getMatchWidthAndHeight() rescales it by the ratio of the mean
+ * differences over the whole area and the window. Both means are found
+ * exactly from a summed-area table of the search area, so the rescaled score
+ * is the one a full-resolution search of the whole area would give when it
+ * finds the same match.
+ */
+public class PyramidMatcher {
+
+	/**
+	 * the maximum number of reduced levels
+	 */
+	public final static int MAX_LEVELS = 3;
+
+	// search radius in pixels at each reduced level
+	private final static int REFINE_RADIUS = 2;
+	// number of coarsest-level locations refined
+	private final static int CANDIDATES = 3;
+	// minimum template size in pixels at the coarsest level
+	private final static int MIN_TEMPLATE_SIZE = 3;
+	// binomial approximation of a Gaussian
+	private final static float[] KERNEL = { 1 / 16f, 4 / 16f, 6 / 16f, 4 / 16f, 1 / 16f };
+
+	/**
+	 * One level of a pyramid: RGB values and mask weights.
+	 */
+	private static class Level {
+		int w, h;
+		float[] rgb; // 3 values per pixel
+		float[] weight; // 1 value per pixel
+
+		Level(int w, int h, boolean weighted) {
+			this.w = w;
+			this.h = h;
+			rgb = new float[3 * w * h];
+			if (weighted)
+				weight = new float[w * h];
+		}
+	}
+
+	private int levels;
+	// mean difference over the whole search area / that over the final window
+	private double scoreScale = 1;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param levels the number of reduced levels (0 for full resolution only)
+	 */
+	public PyramidMatcher(int levels) {
+		setLevels(levels);
+	}
+
+	/**
+	 * Sets the number of reduced levels. Level 1 is half scale, level 2 quarter
+	 * scale and so on.
+	 *
+	 * @param levels the number of levels, 0 to MAX_LEVELS
+	 */
+	public void setLevels(int levels) {
+		this.levels = Math.max(0, Math.min(levels, MAX_LEVELS));
+	}
+
+	/**
+	 * Gets the number of reduced levels.
+	 *
+	 * @return the number of levels
+	 */
+	public int getLevels() {
+		return levels;
+	}
+
+	/**
+	 * Gets the location of the best match for the matcher's current template
+	 * within a search rectangle. Falls back to a full-resolution search when
+	 * the template or search area is too small to reduce.
+	 *
+	 * @param matcher    the template matcher
+	 * @param image      the image to search
+	 * @param searchRect the search rectangle of template centers
+	 * @return the match location, or null if no match found
+	 */
+	public TPoint getMatchLocation(TemplateMatcher matcher, BufferedImage image, Rectangle searchRect) {
+		scoreScale = 1;
+		BufferedImage template = matcher.getTemplate();
+		int tw = template.getWidth();
+		int th = template.getHeight();
+		int n = levels;
+		// use fewer levels if the template would become too small
+		while (n > 0 && (Math.min(tw, th) >> n) < MIN_TEMPLATE_SIZE)
+			n--;
+		int margin = getFinalRadius(tw, th);
+		Rectangle centers = getCenterRect(searchRect, tw, th, image.getWidth(), image.getHeight());
+		int left = tw / 2, top = th / 2;
+		Rectangle area = new Rectangle(centers.x - left, centers.y - top, centers.width + tw, centers.height + th);
+		if (n == 0 || centers.width <= 2 * margin || centers.height <= 2 * margin
+				|| !IntegralImage.isValidSize(area))
+			return matcher.getMatchLocation(image, searchRect, null);
+
+		// build the pyramids of the area covered by the template at all centers
+		int[] pixels = image.getRGB(area.x, area.y, area.width, area.height, null, 0, area.width);
+		int[] templatePixels = template.getRGB(0, 0, tw, th, null, 0, tw);
+		Level[] areas = new Level[n + 1];
+		Level[] temps = new Level[n + 1];
+		areas[0] = toLevel(pixels, area.width, area.height, false);
+		temps[0] = toLevel(templatePixels, tw, th, true);
+		for (int i = 1; i <= n; i++) {
+			areas[i] = reduce(areas[i - 1]);
+			temps[i] = reduce(temps[i - 1]);
+		}
+
+		// search the coarsest level exhaustively and refine the best few
+		// locations down to full resolution, since a similar feature may score
+		// best when blurred
+		int[] loc = null;
+		double min = Double.MAX_VALUE;
+		for (int[] candidate : getCandidates(areas[n], temps[n])) {
+			for (int i = n - 1; i >= 0; i--) {
+				int x = 2 * candidate[0], y = 2 * candidate[1];
+				candidate = search(areas[i], temps[i], x - REFINE_RADIUS, x + REFINE_RADIUS, y - REFINE_RADIUS,
+						y + REFINE_RADIUS);
+			}
+			double diff = getDifference(areas[0], temps[0], candidate[0], candidate[1], min);
+			if (loc == null || diff < min) {
+				min = diff;
+				loc = candidate;
+			}
+		}
+
+		// final search by the TemplateMatcher around the best location
+		int x = area.x + loc[0] + left;
+		int y = area.y + loc[1] + top;
+		Rectangle fineRect = new Rectangle(x - margin, y - margin, 2 * margin, 2 * margin).intersection(centers);
+		IntegralImage table = new IntegralImage(pixels, area);
+		double fineMean = getMeanDifference(table, templatePixels, tw, th, fineRect);
+		if (fineMean > 0)
+			scoreScale = getMeanDifference(table, templatePixels, tw, th, centers) / fineMean;
+		return matcher.getMatchLocation(image, fineRect, null);
+	}
+
+	/**
+	 * Gets the peak width and height of the last match. The height is the
+	 * matcher's, rescaled to the whole search area after a reduced search.
+	 *
+	 * @param matcher the template matcher used for the last match
+	 * @return {width, height}
+	 */
+	public double[] getMatchWidthAndHeight(TemplateMatcher matcher) {
+		double[] widthAndHeight = matcher.getMatchWidthAndHeight();
+		return new double[] { widthAndHeight[0], (widthAndHeight[1] + 1) * scoreScale - 1 };
+	}
+
+	/**
+	 * Gets the radius of the final full-resolution search.
+	 */
+	private static int getFinalRadius(int tw, int th) {
+		return Math.max(2 * REFINE_RADIUS, Math.min(tw, th) / 2);
+	}
+
+	/**
+	 * Gets the rectangle of template centers the TemplateMatcher searches: the
+	 * search rectangle trimmed so the template stays within the image. Centers
+	 * run from x to x + width inclusive, and likewise for y.
+	 */
+	private static Rectangle getCenterRect(Rectangle searchRect, int tw, int th, int w, int h) {
+		int left = tw / 2, right = tw - left;
+		int top = th / 2, bottom = th - top;
+		Rectangle rect = new Rectangle(searchRect);
+		rect.x = Math.max(left, Math.min(w - right, rect.x));
+		rect.y = Math.max(top, Math.min(h - bottom, rect.y));
+		rect.width = Math.min(w - rect.x - right, rect.width);
+		rect.height = Math.min(h - rect.y - bottom, rect.height);
+		return rect;
+	}
+
+	/**
+	 * Gets the mean difference the TemplateMatcher finds over a rectangle of
+	 * template centers: the sum over all centers of the squared RGB differences
+	 * at the opaque template pixels, divided by width * height as the matcher
+	 * does. Each template pixel sees a rectangle of image pixels as the center
+	 * moves, so the sum takes one table lookup per template pixel.
+	 *
+	 * @param table    the summed-area table, covering the template at every center
+	 * @param template the template pixels
+	 * @param tw       the template width
+	 * @param th       the template height
+	 * @param centers  the rectangle of centers
+	 * @return the mean difference
+	 */
+	private static double getMeanDifference(IntegralImage table, int[] template, int tw, int th, Rectangle centers) {
+		int nx = centers.width + 1, ny = centers.height + 1;
+		int x0 = centers.x - tw / 2, y0 = centers.y - th / 2;
+		long count = (long) nx * ny;
+		long[] sum = new long[6];
+		long total = 0;
+		for (int j = 0; j < th; j++) {
+			for (int i = 0; i < tw; i++) {
+				int p = template[j * tw + i];
+				if ((p >>> 24) == 0)
+					continue; // transparent
+				Arrays.fill(sum, 0);
+				table.addSums(x0 + i, y0 + j, nx, ny, sum);
+				for (int c = 0; c < 3; c++) {
+					long t = (p >> (16 - 8 * c)) & 0xff;
+					total += count * t * t - 2 * t * sum[c] + sum[c + 3];
+				}
+			}
+		}
+		return (double) total / ((long) centers.width * centers.height);
+	}
+
+	/**
+	 * Finds the template positions with the smallest weighted sums of squared
+	 * differences in a whole level, at most CANDIDATES of them and each at least
+	 * half a template from the others.
+	 *
+	 * @return {x, y} of each position, best first
+	 */
+	private static ArrayList<int[]> getCandidates(Level area, Level temp) {
+		int nx = area.w - temp.w + 1, ny = area.h - temp.h + 1;
+		double[] diffs = new double[nx * ny];
+		for (int y = 0; y < ny; y++) {
+			for (int x = 0; x < nx; x++)
+				diffs[y * nx + x] = getDifference(area, temp, x, y, Double.MAX_VALUE);
+		}
+		int dx = Math.max(1, temp.w / 2), dy = Math.max(1, temp.h / 2);
+		ArrayList<int[]> candidates = new ArrayList<int[]>();
+		while (candidates.size() < CANDIDATES) {
+			int best = -1;
+			for (int k = 0; k < diffs.length; k++) {
+				if (diffs[k] < Double.MAX_VALUE && (best < 0 || diffs[k] < diffs[best]))
+					best = k;
+			}
+			if (best < 0)
+				break;
+			int x = best % nx, y = best / nx;
+			candidates.add(new int[] { x, y });
+			// exclude the neighborhood
+			for (int j = Math.max(0, y - dy); j <= Math.min(ny - 1, y + dy); j++) {
+				for (int i = Math.max(0, x - dx); i <= Math.min(nx - 1, x + dx); i++)
+					diffs[j * nx + i] = Double.MAX_VALUE;
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Finds the template position with the smallest weighted sum of squared
+	 * differences within the given (clamped) range of positions.
+	 *
+	 * @return {x, y} of the best position
+	 */
+	private static int[] search(Level area, Level temp, int x0, int x1, int y0, int y1) {
+		x0 = Math.max(0, x0);
+		y0 = Math.max(0, y0);
+		x1 = Math.min(x1, area.w - temp.w);
+		y1 = Math.min(y1, area.h - temp.h);
+		int[] best = { Math.max(0, Math.min(x0, x1)), Math.max(0, Math.min(y0, y1)) };
+		double min = Double.MAX_VALUE;
+		for (int y = y0; y <= y1; y++) {
+			for (int x = x0; x <= x1; x++) {
+				double sum = getDifference(area, temp, x, y, min);
+				if (sum < min) {
+					min = sum;
+					best[0] = x;
+					best[1] = y;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Gets the weighted sum of squared differences between a template and an
+	 * area at a template position.
+	 *
+	 * @param limit the sum above which to stop adding
+	 * @return the sum, or a value of at least limit
+	 */
+	private static double getDifference(Level area, Level temp, int x, int y, double limit) {
+		float[] a = area.rgb, t = temp.rgb, wt = temp.weight;
+		double sum = 0;
+		for (int j = 0; j < temp.h && sum < limit; j++) {
+			int ti = j * temp.w;
+			int ai = (y + j) * area.w + x;
+			for (int i = 0; i < temp.w; i++, ti++, ai++) {
+				float w = wt[ti];
+				if (w == 0)
+					continue;
+				float dr = a[3 * ai] - t[3 * ti];
+				float dg = a[3 * ai + 1] - t[3 * ti + 1];
+				float db = a[3 * ai + 2] - t[3 * ti + 2];
+				sum += w * (dr * dr + dg * dg + db * db);
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Copies ARGB pixels into a level, with alpha as weights if requested.
+	 */
+	private static Level toLevel(int[] pixels, int w, int h, boolean weighted) {
+		Level level = new Level(w, h, weighted);
+		for (int i = 0; i < pixels.length; i++) {
+			int p = pixels[i];
+			level.rgb[3 * i] = (p >> 16) & 0xff;
+			level.rgb[3 * i + 1] = (p >> 8) & 0xff;
+			level.rgb[3 * i + 2] = p & 0xff;
+			if (weighted)
+				level.weight[i] = ((p >> 24) & 0xff) / 255f;
+		}
+		return level;
+	}
+
+	/**
+	 * Blurs a level with a 5-tap binomial (Gaussian) kernel and halves its size.
+	 */
+	private static Level reduce(Level src) {
+		int w = src.w, h = src.h;
+		int w2 = (w + 1) / 2, h2 = (h + 1) / 2;
+		boolean weighted = src.weight != null;
+		int nc = weighted ? 4 : 3;
+		// horizontal pass at even columns
+		float[] tmp = new float[nc * w2 * h];
+		for (int y = 0; y < h; y++) {
+			for (int x2 = 0; x2 < w2; x2++) {
+				int x = 2 * x2;
+				int out = nc * (y * w2 + x2);
+				for (int k = -2; k <= 2; k++) {
+					int xx = Math.max(0, Math.min(w - 1, x + k));
+					float f = KERNEL[k + 2];
+					int in = y * w + xx;
+					tmp[out] += f * src.rgb[3 * in];
+					tmp[out + 1] += f * src.rgb[3 * in + 1];
+					tmp[out + 2] += f * src.rgb[3 * in + 2];
+					if (weighted)
+						tmp[out + 3] += f * src.weight[in];
+				}
+			}
+		}
+		// vertical pass at even rows
+		Level dest = new Level(w2, h2, weighted);
+		for (int y2 = 0; y2 < h2; y2++) {
+			int y = 2 * y2;
+			for (int x2 = 0; x2 < w2; x2++) {
+				int out = y2 * w2 + x2;
+				for (int k = -2; k <= 2; k++) {
+					int yy = Math.max(0, Math.min(h - 1, y + k));
+					float f = KERNEL[k + 2];
+					int in = nc * (yy * w2 + x2);
+					dest.rgb[3 * out] += f * tmp[in];
+					dest.rgb[3 * out + 1] += f * tmp[in + 1];
+					dest.rgb[3 * out + 2] += f * tmp[in + 2];
+					if (weighted)
+						dest.weight[out] += f * tmp[in + 3];
+				}
+			}
+		}
+		return dest;
+	}
+}
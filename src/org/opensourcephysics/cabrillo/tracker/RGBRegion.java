@@ -43,6 +43,7 @@ import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 import java.beans.PropertyChangeEvent;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeSet;
@@ -54,6 +55,7 @@ import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
+import javax.swing.JMenuItem;
 import javax.swing.SwingUtilities;
 
 import org.opensourcephysics.controls.XML;
@@ -159,6 +161,7 @@ public class RGBRegion extends TTrack implements MarkingRequired {
 	protected boolean fixedPosition = true; // region has same position at all times
 	protected boolean fixedShape = true; // region has same shape and size at all times
 	protected JCheckBoxMenuItem fixedPositionItem, fixedShapeItem;
+	protected JMenuItem measureAllItem;
 	protected JLabel widthLabel, heightLabel, helpLabel;
 	protected TButton editPolygonButton;
 	protected JLabel unmarkedLabel;
@@ -286,6 +289,14 @@ public class RGBRegion extends TTrack implements MarkingRequired {
 				setFixedShape(fixedShapeItem.isSelected());
 			}
 		});
+		measureAllItem = new JMenuItem(TrackerRes.getString("RGBRegion.MenuItem.MeasureAll")); //$NON-NLS-1$
+		measureAllItem.addActionListener((e) -> {
+			if (tp == null || tp.getVideo() == null)
+				return;
+			BatchRGBAnalyzer analyzer = new BatchRGBAnalyzer(tp, Collections.singletonList(this));
+			BatchAutoTracker.runInBackground(tp.getTFrame(),
+					TrackerRes.getString("RGBRegion.ProgressMonitor.MeasureAll.Message"), analyzer, null); //$NON-NLS-1$
+		});
 		// position action
 		Action positionAction = new AbstractAction() {
 			@Override
@@ -908,6 +919,10 @@ public class RGBRegion extends TTrack implements MarkingRequired {
 		TMenuBar.checkAddMenuSep(menu);
 		menu.add(fixedPositionItem);
 		menu.add(fixedShapeItem);
+		measureAllItem.setText(TrackerRes.getString("RGBRegion.MenuItem.MeasureAll")); //$NON-NLS-1$
+		measureAllItem.setToolTipText(TrackerRes.getString("RGBRegion.MenuItem.MeasureAll.Tooltip")); //$NON-NLS-1$
+		measureAllItem.setEnabled(trackerPanel.getVideo() != null);
+		menu.add(measureAllItem);
 		// replace delete item
 		if (trackerPanel.isEnabled("track.delete")) { //$NON-NLS-1$
 			TMenuBar.checkAddMenuSep(menu);
@@ -385,76 +385,142 @@ public Object clone() {
 	    BufferedImage image = vid.getImage();
 	    if (image != null 
 	    			&& image.getType() == BufferedImage.TYPE_INT_RGB) {
-	    	RGBStep step = rgbRegion.isFixedPosition()? 
-	    				(RGBStep)rgbRegion.getStep(0): this;	
-	    	TPoint pt = step.getPosition();
-	      Shape region = getRGBShape(pt);
+	      Shape region = getMeasuredRegion();
 	      if (region == null)
 	      	return null;
-	      Rectangle rect = region.getBounds();
-	      int h = rect.height;
-	      int w = rect.width;
-        // locate starting pixel
-        int x0 = rect.x;
-        int y0 = rect.y;
-        Point2D centerPt = new Point2D.Double();
-	      try {
-	        int[] pixels = new int[h*w];
-	        int n = 0, r = 0, g = 0, b = 0, r2 = 0, g2 = 0, b2 = 0;
-	        // fill pixels array with pixel data
-	        image.getRaster().getDataElements(x0, y0, w, h, pixels);
-	        // step thru pixels horizontally
-	        for (int i = 0; i < w; i++) {
-	          // step vertically
-	          for (int j = 0; j < h; j++) {
-	          	// include pixel if center is inside region
-	          	centerPt.setLocation(x0+i+.5, y0+j+.5);
-	          	// if image video, check that centerPt is within image bounds
-	        		if (vid.getTypeName().equals(VideoType.TYPE_IMAGE)) {
-	        			ImageVideo iVid = (ImageVideo) vid;
-	        			int wid = iVid.getRGBSize().width;
-	        			int ht = iVid.getRGBSize().height;
-	        			if (wid < centerPt.getX() || ht < centerPt.getY())
-	        				return null;
-	        		}
-	          	if (region.contains(centerPt)) {
-		            int pixel = pixels[i + j*w];
-		            n++; // pixel count
-		            int rp = (pixel >> 16) & 0xff; // red
-		            r += rp;
-		            r2 += rp * rp;
-		            int gp = (pixel >> 8) & 0xff; // green
-		            g += gp;
-		            g2 += gp * gp;
-		            int bp = (pixel) & 0xff; // blue
-		            b += bp;
-		            b2 += bp * bp;		            
-	          	}
-	          }
-	        }
-	        if (n == 0) return null;
-	        double rMean = 1.0*r/n;
-	        double rSD = n == 1? Double.NaN: Math.sqrt((r2 - r*rMean) / (n - 1));
-	        double gMean = 1.0*g/n;
-	        double gSD = n == 1? Double.NaN: Math.sqrt((g2 - g*gMean) / (n - 1));
-	        double bMean = 1.0*b/n;
-	        double bSD = n == 1? Double.NaN: Math.sqrt((b2 - b*bMean) / (n - 1));
-	        rgbData[0] = rMean;
-	        rgbData[1] = gMean;
-	        rgbData[2] = bMean;
-	        rgbData[3] = RGBRegion.getLuma(rMean, gMean, bMean);
-	        rgbData[4] = n;
-	        rgbData[5] = rSD;
-	        rgbData[6] = gSD;
-	        rgbData[7] = bSD;
-	  	    dataValid = true;
-	      } catch(ArrayIndexOutOfBoundsException ex) {return null;}
+	      RegionMask mask = new RegionMask(region);
+	      if (!isWithinRGBSize(mask.getBounds(), getRGBSize(vid))
+	      		|| !trackerPanel.rgbCache.measureRGB(image, mask, rgbData))
+	      	return null;
+  	    dataValid = true;
 	    }
   	}
     dataVisible = true;
     return rgbData;
   }
 
+  /**
+   * Gets the region measured by this step: its shape at its own position,
+   * or at the position of step 0 if the region position is fixed.
+   *
+   * @return the region in image coordinates
+   */
+  protected Shape getMeasuredRegion() {
+  	RGBStep step = rgbRegion.isFixedPosition()? 
+  				(RGBStep)rgbRegion.getStep(0): this;	
+  	return getRGBShape(step.getPosition());
+  }
+
+  /**
+   * Measures the mean and standard deviation of the red, green and blue values
+   * of the pixels in a region mask. May be called on any thread.
+   *
+   * @param image the TYPE_INT_RGB image
+   * @param mask the region mask
+   * @param data array to fill with {R, G, B, luma, pixels, Rsd, Gsd, Bsd}
+   * @return true if measured, false if the mask is empty or outside the image
+   */
+  protected static boolean measureRGB(BufferedImage image, RegionMask mask, double[] data) {
+  	Rectangle rect = mask.getBounds();
+  	if (mask.getCount() == 0) return false;
+    int[] pixels = new int[rect.width*rect.height];
+    try {
+      image.getRaster().getDataElements(rect.x, rect.y, rect.width, rect.height, pixels);
+    } catch(ArrayIndexOutOfBoundsException ex) {return false;}
+    return measureRGB(pixels, mask, data);
+  }
+
+  /**
+   * Measures the mean and standard deviation of the red, green and blue values
+   * of the pixels in a region mask. May be called on any thread.
+   *
+   * @param pixels the pixels within the mask bounds, row by row
+   * @param mask the region mask
+   * @param data array to fill with {R, G, B, luma, pixels, Rsd, Gsd, Bsd}
+   * @return true if measured, false if the mask is empty
+   */
+  protected static boolean measureRGB(int[] pixels, RegionMask mask, double[] data) {
+    int n = mask.getCount();
+    if (n == 0) return false;
+    int w = mask.getBounds().width;
+    int h = mask.getBounds().height;
+    // long sums of squares do not overflow for large regions
+    long r = 0, g = 0, b = 0, r2 = 0, g2 = 0, b2 = 0;
+    for (int j = 0; j < h; j++) {
+    	int[] runs = mask.getRuns(j);
+    	int row = j*w;
+    	for (int k = 0; k < runs.length; k += 2) {
+	    	for (int i = row + runs[k], end = row + runs[k + 1]; i < end; i++) {
+	        int pixel = pixels[i];
+	        int rp = (pixel >> 16) & 0xff; // red
+	        r += rp;
+	        r2 += rp * rp;
+	        int gp = (pixel >> 8) & 0xff; // green
+	        g += gp;
+	        g2 += gp * gp;
+	        int bp = (pixel) & 0xff; // blue
+	        b += bp;
+	        b2 += bp * bp;
+	    	}
+    	}
+    }
+    fillRGBData(new long[] {r, g, b, r2, g2, b2}, n, data);
+    return true;
+  }
+
+  /**
+   * Fills an RGB data array from the sums of the red, green and blue values
+   * of a number of pixels and the sums of their squares.
+   *
+   * @param sum {R, G, B, R2, G2, B2}
+   * @param n the number of pixels
+   * @param data array to fill with {R, G, B, luma, pixels, Rsd, Gsd, Bsd}
+   */
+  protected static void fillRGBData(long[] sum, int n, double[] data) {
+    double rMean = 1.0*sum[0]/n;
+    double rSD = n == 1? Double.NaN: Math.sqrt((sum[3] - sum[0]*rMean) / (n - 1));
+    double gMean = 1.0*sum[1]/n;
+    double gSD = n == 1? Double.NaN: Math.sqrt((sum[4] - sum[1]*gMean) / (n - 1));
+    double bMean = 1.0*sum[2]/n;
+    double bSD = n == 1? Double.NaN: Math.sqrt((sum[5] - sum[2]*bMean) / (n - 1));
+    data[0] = rMean;
+    data[1] = gMean;
+    data[2] = bMean;
+    data[3] = RGBRegion.getLuma(rMean, gMean, bMean);
+    data[4] = n;
+    data[5] = rSD;
+    data[6] = gSD;
+    data[7] = bSD;
+  }
+
+  /**
+   * Gets the size of the RGB images of an image video, whose images may vary
+   * in size.
+   *
+   * @param vid the video
+   * @return the RGB size, or null if not an image video
+   */
+  protected static Dimension getRGBSize(Video vid) {
+		if (vid.getTypeName().equals(VideoType.TYPE_IMAGE))
+			return ((ImageVideo) vid).getRGBSize();
+		return null;
+  }
+
+  /**
+   * Determines if the centers of all pixels in a rectangle lie within an
+   * RGB size.
+   *
+   * @param rect the rectangle
+   * @param rgbSize the RGB size, may be null
+   * @return true if rgbSize is null or includes all pixel centers
+   */
+  protected static boolean isWithinRGBSize(Rectangle rect, Dimension rgbSize) {
+  	if (rgbSize == null || rect.width <= 0 || rect.height <= 0)
+  		return true;
+  	return rgbSize.width >= rect.x + rect.width - 0.5 
+  			&& rgbSize.height >= rect.y + rect.height - 0.5;
+  }
+
 //____________________ inner Position class ______________________
 
   protected class Position extends TPoint {
@@ -25,6 +25,7 @@
 package org.opensourcephysics.cabrillo.tracker;
 
 import java.beans.*;
+import java.util.BitSet;
 
 import org.opensourcephysics.media.core.*;
 
@@ -43,6 +44,8 @@ public class ReferenceFrame extends ImageCoordSystem
   private ImageCoordSystem coords; // parent coords
   private boolean lockEnabled = false;
   private boolean originLocked;
+  private BitSet unsyncedFrames = new BitSet(); // frames with angle or scale not yet copied to parent
+  private boolean syncing; // true while setting values that need not be copied to parent
 
   /**
    * Constructs a ReferenceFrame with a default initial length.
@@ -68,6 +71,7 @@ public class ReferenceFrame extends ImageCoordSystem
     lockEnabled = true;
     ignoreUpdateRequests = false;
     updateAllTransforms();
+    addPropertyChangeListener(ImageCoordSystem.PROPERTY_COORDS_TRANSFORM, this); //$NON-NLS-1$
   }
 
   /**
@@ -119,16 +123,35 @@ public boolean isLocked() {
 	public void propertyChange(PropertyChangeEvent e) {
 		switch (e.getPropertyName()) {
 		case TTrack.PROPERTY_TTRACK_STEP:
+			// from PointMass: only the origins that depend on this step have changed
+			// (model steps may signal changes to all frames, so are excluded)
+			if (e.getNewValue() instanceof Integer && !(originTrack instanceof ParticleModel)) {
+				setOrigins(((Integer) e.getNewValue()).intValue());
+				break;
+			}
 		case TTrack.PROPERTY_TTRACK_STEPS:
 			// from PointMass
 			setOrigins();
 			break;
 		case ImageCoordSystem.PROPERTY_COORDS_TRANSFORM:
+			if (e.getSource() == this) {
+				// angle or scale may have changed, so parent needs these frames
+				if (syncing)
+					break;
+				int[] frames = getChangedFrames(e.getNewValue());
+				if (frames != null)
+					unsyncedFrames.set(frames[0], frames[1] + 1);
+				else
+					unsyncedFrames.set(0, getLength());
+				break;
+			}
 			Integer integer = (Integer) e.getNewValue();
+			syncing = true;
 			if (integer != null) {
 				int n = integer.intValue();
 				setScaleXY(n, coords.getScaleX(n), coords.getScaleY(n));
 				setCosineSine(n, coords.getCosine(n), coords.getSine(n));
+				syncing = false;
 				if (originTrack.isEmpty() && n == 0)
 					setOrigins();
 			} else {
@@ -136,6 +159,7 @@ public boolean isLocked() {
 					setScaleXY(n, coords.getScaleX(n), coords.getScaleY(n));
 					setCosineSine(n, coords.getCosine(n), coords.getSine(n));
 				}
+				syncing = false;
 				if (originTrack.isEmpty())
 					setOrigins();
 			}
@@ -151,19 +175,26 @@ public boolean isLocked() {
 
   /**
    * Gets the parent image coordinate system. The parent coords are returned
-   * after setting its angles and scales to match this.
+   * after setting its angles and scales to match this. Only frames whose angle
+   * or scale has changed since the last call are copied.
    *
    * @return the parent image coordinate system
    */
   public ImageCoordSystem getCoords() {
+    int len = coords.getLength();
+    if (coords.isFixedAngle() != isFixedAngle() || coords.isFixedScale() != isFixedScale()
+    		|| len != getLength())
+      unsyncedFrames.set(0, len);
+    if (unsyncedFrames.isEmpty())
+      return coords;
     coords.removePropertyChangeListener(ImageCoordSystem.PROPERTY_COORDS_TRANSFORM, this); //$NON-NLS-1$
     coords.setFixedAngle(isFixedAngle());
     coords.setFixedScale(isFixedScale());
-    boolean doScale = true;
-    for (int n = 0; n < coords.getLength(); n++) {
-      doScale = doScale && coords.setScaleXY(n, getScaleX(n), getScaleY(n));
+    for (int n = unsyncedFrames.nextSetBit(0); n >= 0 && n < len; n = unsyncedFrames.nextSetBit(n + 1)) {
+      coords.setScaleXY(n, getScaleX(n), getScaleY(n));
       coords.setCosineSine(n, getCosine(n),  getSine(n));
     }
+    unsyncedFrames.clear();
     coords.addPropertyChangeListener(ImageCoordSystem.PROPERTY_COORDS_TRANSFORM, this); //$NON-NLS-1$
     return coords;
   }
@@ -207,7 +238,78 @@ public boolean isLocked() {
     }
     firePropChange = true;
     // fire property change for overall updates
+    syncing = true;
     firePropertyChange(PROPERTY_COORDS_TRANSFORM, null, null); //$NON-NLS-1$
+    syncing = false;
+  }
+
+  /**
+   * Gets the frames changed by a transform event from a ReferenceFrame or its
+   * parent coords. The new value of the event is null if all frames may have
+   * changed, an Integer frame number or an int[] {first, last} frame range.
+   *
+   * @param newValue the new value of the event
+   * @return {first, last} changed frame, or null if all frames may have changed
+   */
+  static int[] getChangedFrames(Object newValue) {
+    if (newValue instanceof Integer) {
+      int n = ((Integer) newValue).intValue();
+      return new int[] {n, n};
+    }
+    return newValue instanceof int[]? (int[]) newValue: null;
+  }
+
+  /**
+   * Sets the origins that depend on the origin track step at a single frame:
+   * those from that frame (or from frame 0 if no earlier step exists) up to the
+   * next step. A single transform event is fired with the range of frames
+   * whose origins change: an Integer for one frame, otherwise an int[]
+   * {first, last}.
+   *
+   * @param frameNumber the frame number of the added, moved or removed step
+   */
+  protected void setOrigins(int frameNumber) {
+    int n = coords.getLength();
+    if (frameNumber < 0 || frameNumber >= n || originTrack.isEmpty()) {
+      setOrigins();
+      return;
+    }
+    // find the steps that determine the origins near the frame
+    int prev = frameNumber - 1;
+    while (prev >= 0 && originTrack.getStep(prev) == null)
+      prev--;
+    int next = frameNumber + 1;
+    while (next < n && originTrack.getStep(next) == null)
+      next++;
+    int start = prev < 0? 0: frameNumber;
+    Step step = originTrack.getStep(frameNumber);
+    if (step == null)
+      step = prev >= 0? originTrack.getStep(prev): next < n? originTrack.getStep(next): null;
+    if (step == null) {
+      setOrigins();
+      return;
+    }
+    TPoint p = ((PositionStep)step).getPosition();
+    double x = p.getX();
+    double y = p.getY();
+    // set coord system origins, noting the range that changes
+    int first = -1, last = -1;
+    firePropChange = false;
+    for (int i = start; i < next; i++) {
+      if (getOriginX(i) != x || getOriginY(i) != y) {
+        setOriginXY(i, x, y);
+        if (first < 0)
+          first = i;
+        last = i;
+      }
+    }
+    firePropChange = true;
+    if (first < 0)
+      return;
+    syncing = true;
+    Object frames = first == last? (Object) new Integer(first): new int[] {first, last};
+    firePropertyChange(PROPERTY_COORDS_TRANSFORM, null, frames); //$NON-NLS-1$
+    syncing = false;
   }
 
 }
@@ -0,0 +1,351 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * A shape rasterized into runs of pixels along each row of its bounds. A pixel
+ * is in the mask if its center is inside the shape, exactly as determined by
+ * Shape.contains(). For shapes made of straight lines the crossings of each
+ * row with the outline are counted the same way Path2D does, so contains() is
+ * never called. For curved shapes the outline is flattened and contains() is
+ * called only for pixels close enough to it to be in doubt.
+ */
+public class RegionMask {
+
+	private final static double FLATNESS = 0.02;
+	private final static double BAND = 2 * FLATNESS; // pixels this close to a flattened curve are in doubt
+
+	private final int x0, y0, width, height;
+	private final int[][] runs; // for each row {start, end, start, end...}, ends exclusive
+	private int count;
+
+	/**
+	 * Constructs a RegionMask for a shape in image coordinates.
+	 *
+	 * @param region the shape
+	 */
+	public RegionMask(Shape region) {
+		Rectangle rect = region.getBounds();
+		x0 = rect.x;
+		y0 = rect.y;
+		width = Math.max(0, rect.width);
+		height = Math.max(0, rect.height);
+		runs = new int[height][];
+
+		// collect the line segments {xa, ya, xb, yb} of the (flattened) outline
+		boolean curved = false;
+		for (PathIterator it = region.getPathIterator(null); !it.isDone(); it.next()) {
+			int type = it.currentSegment(new double[6]);
+			if (type == PathIterator.SEG_QUADTO || type == PathIterator.SEG_CUBICTO) {
+				curved = true;
+				break;
+			}
+		}
+		PathIterator it = region.getPathIterator(null, FLATNESS);
+		boolean nonZero = it.getWindingRule() == PathIterator.WIND_NON_ZERO;
+		double[] segs = new double[64];
+		int nsegs = 0, points = 0;
+		double[] coords = new double[6];
+		double movx = 0, movy = 0, curx = 0, cury = 0;
+		for (; !it.isDone(); it.next()) {
+			int type = it.currentSegment(coords);
+			points++;
+			switch (type) {
+			case PathIterator.SEG_MOVETO:
+				if (points > 1 && cury != movy)
+					segs = addSegment(segs, nsegs++, curx, cury, movx, movy);
+				movx = curx = coords[0];
+				movy = cury = coords[1];
+				break;
+			case PathIterator.SEG_LINETO:
+				segs = addSegment(segs, nsegs++, curx, cury, coords[0], coords[1]);
+				curx = coords[0];
+				cury = coords[1];
+				break;
+			case PathIterator.SEG_CLOSE:
+				if (cury != movy)
+					segs = addSegment(segs, nsegs++, curx, cury, movx, movy);
+				curx = movx;
+				cury = movy;
+				break;
+			}
+		}
+		if (points > 1 && cury != movy)
+			segs = addSegment(segs, nsegs++, curx, cury, movx, movy);
+		if (points < 2)
+			nsegs = 0; // an empty path contains nothing
+
+		// order the segments by their top edges so each row visits only the
+		// segments that span it
+		Integer[] byTop = new Integer[nsegs];
+		for (int k = 0; k < nsegs; k++)
+			byTop[k] = k;
+		double[] s0 = segs;
+		Arrays.sort(byTop, (a, b) -> Double.compare(Math.min(s0[4 * a + 1], s0[4 * a + 3]),
+				Math.min(s0[4 * b + 1], s0[4 * b + 3])));
+		int[] active = new int[nsegs];
+		int nactive = 0, added = 0;
+		double reach = curved ? BAND : 0;
+
+		// rasterize each row
+		double[] crossings = new double[16];
+		int[] dirs = new int[16];
+		int[] order = new int[16];
+		int[] doubtful = new int[16];
+		int[] row = new int[width + 2], tested = new int[width + 2];
+		for (int j = 0; j < height; j++) {
+			double py = y0 + j + 0.5;
+			// update the active segments
+			while (added < nsegs && Math.min(segs[4 * byTop[added] + 1], segs[4 * byTop[added] + 3]) <= py + reach)
+				active[nactive++] = byTop[added++];
+			int kept = 0;
+			for (int k = 0; k < nactive; k++) {
+				int s = 4 * active[k];
+				if (Math.max(segs[s + 1], segs[s + 3]) >= py - reach)
+					active[kept++] = active[k];
+			}
+			nactive = kept;
+			// find the crossings to the right of which a pixel center is counted
+			int m = 0;
+			for (int k = 0; k < nactive; k++) {
+				int s = 4 * active[k];
+				double xa = segs[s], ya = segs[s + 1], xb = segs[s + 2], yb = segs[s + 3];
+				if ((py < ya && py < yb) || (py >= ya && py >= yb))
+					continue;
+				double xint = xa + (py - ya) * (xb - xa) / (yb - ya);
+				double t = Math.min(Math.max(xint, Math.min(xa, xb)), Math.max(xa, xb));
+				if (m == crossings.length) {
+					crossings = Arrays.copyOf(crossings, 2 * m);
+					dirs = Arrays.copyOf(dirs, 2 * m);
+					order = Arrays.copyOf(order, 2 * m);
+				}
+				crossings[m] = t;
+				dirs[m] = ya < yb ? 1 : -1;
+				m++;
+			}
+			// sort the crossings by position
+			int total = 0;
+			for (int k = 0; k < m; k++) {
+				order[k] = k;
+				total += dirs[k];
+			}
+			sortByPosition(order, crossings, m);
+			// the winding at a pixel is the sum of the directions of the crossings
+			// to its right, so it is constant between crossings
+			int n = 0, wind = total, pos = 0;
+			for (int k = 0; k < m && pos < width; k++) {
+				int end = firstPixelAtOrRight(crossings[order[k]]);
+				if (end > pos && (nonZero ? wind != 0 : (wind & 1) != 0))
+					n = addRun(row, n, pos, end);
+				pos = Math.max(pos, end);
+				wind -= dirs[order[k]];
+			}
+			if (pos < width && (nonZero ? wind != 0 : (wind & 1) != 0))
+				n = addRun(row, n, pos, width);
+			if (curved) {
+				// find pixels near the flattened outline
+				int nd = 0;
+				for (int k = 0; k < nactive; k++) {
+					int s = 4 * active[k];
+					double xa = segs[s], ya = segs[s + 1], xb = segs[s + 2], yb = segs[s + 3];
+					double lo = Math.max(Math.min(ya, yb), py - BAND);
+					double hi = Math.min(Math.max(ya, yb), py + BAND);
+					if (lo > hi)
+						continue;
+					double xlo = xa, xhi = xb;
+					if (ya != yb) {
+						xlo = xa + (lo - ya) * (xb - xa) / (yb - ya);
+						xhi = xa + (hi - ya) * (xb - xa) / (yb - ya);
+					}
+					int first = Math.max(0, (int) Math.ceil(Math.min(xlo, xhi) - BAND - x0 - 0.5));
+					int last = Math.min(width - 1, (int) Math.floor(Math.max(xlo, xhi) + BAND - x0 - 0.5));
+					if (first > last)
+						continue;
+					if (nd + 2 > doubtful.length)
+						doubtful = Arrays.copyOf(doubtful, 2 * doubtful.length);
+					doubtful[nd++] = first;
+					doubtful[nd++] = last;
+				}
+				if (nd > 0) {
+					// test those pixels exactly and splice the results into the runs
+					nd = mergeIntervals(doubtful, nd);
+					int nt = 0, from = 0;
+					for (int d = 0; d < nd; d += 2) {
+						nt = copyRuns(row, n, from, doubtful[d], tested, nt);
+						for (int i = doubtful[d]; i <= doubtful[d + 1]; i++) {
+							if (region.contains(x0 + i + 0.5, py))
+								nt = addRun(tested, nt, i, i + 1);
+						}
+						from = doubtful[d + 1] + 1;
+					}
+					nt = copyRuns(row, n, from, width, tested, nt);
+					int[] swap = row;
+					row = tested;
+					tested = swap;
+					n = nt;
+				}
+			}
+			for (int k = 0; k < n; k += 2)
+				count += row[k + 1] - row[k];
+			runs[j] = Arrays.copyOf(row, n);
+		}
+	}
+
+	/**
+	 * Gets the bounds of the mask in image coordinates.
+	 *
+	 * @return the bounds
+	 */
+	public Rectangle getBounds() {
+		return new Rectangle(x0, y0, width, height);
+	}
+
+	/**
+	 * Gets the number of pixels in the mask.
+	 *
+	 * @return the pixel count
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the runs of pixels in a row of the bounds as pairs of start and
+	 * exclusive end indices relative to the left edge of the bounds.
+	 *
+	 * @param row the row index relative to the top edge of the bounds
+	 * @return {start, end, start, end...}
+	 */
+	public int[] getRuns(int row) {
+		return runs[row];
+	}
+
+	/**
+	 * Gets the index of the first pixel whose center is not to the left of a
+	 * crossing, clamped to the bounds.
+	 */
+	private int firstPixelAtOrRight(double t) {
+		if (!(t > x0 - 1))
+			return 0;
+		if (t > x0 + width + 1)
+			return width;
+		int i = (int) Math.ceil(t - x0 - 0.5);
+		// make the comparisons exactly as for the pixel centers
+		while (i > 0 && x0 + i - 1 + 0.5 >= t)
+			i--;
+		while (x0 + i + 0.5 < t)
+			i++;
+		return Math.max(0, Math.min(i, width));
+	}
+
+	/**
+	 * Appends a run, merging it with the previous run if they touch.
+	 */
+	private static int addRun(int[] runs, int n, int start, int end) {
+		if (n > 0 && runs[n - 1] == start)
+			runs[n - 1] = end;
+		else {
+			runs[n++] = start;
+			runs[n++] = end;
+		}
+		return n;
+	}
+
+	/**
+	 * Appends the parts of runs that lie between two pixel indices.
+	 */
+	private static int copyRuns(int[] runs, int n, int from, int to, int[] dest, int nDest) {
+		for (int k = 0; k < n; k += 2) {
+			int start = Math.max(runs[k], from);
+			int end = Math.min(runs[k + 1], to);
+			if (start < end)
+				nDest = addRun(dest, nDest, start, end);
+		}
+		return nDest;
+	}
+
+	/**
+	 * Sorts inclusive intervals {first, last, first, last...} and merges those
+	 * that overlap or touch.
+	 *
+	 * @return the length of the merged intervals
+	 */
+	private static int mergeIntervals(int[] intervals, int n) {
+		for (int i = 2; i < n; i += 2) {
+			int first = intervals[i], last = intervals[i + 1];
+			int j = i - 2;
+			while (j >= 0 && intervals[j] > first) {
+				intervals[j + 2] = intervals[j];
+				intervals[j + 3] = intervals[j + 1];
+				j -= 2;
+			}
+			intervals[j + 2] = first;
+			intervals[j + 3] = last;
+		}
+		int merged = 2;
+		for (int i = 2; i < n; i += 2) {
+			if (intervals[i] <= intervals[merged - 1] + 1)
+				intervals[merged - 1] = Math.max(intervals[merged - 1], intervals[i + 1]);
+			else {
+				intervals[merged++] = intervals[i];
+				intervals[merged++] = intervals[i + 1];
+			}
+		}
+		return merged;
+	}
+
+	private static double[] addSegment(double[] segs, int k, double xa, double ya, double xb, double yb) {
+		if (4 * k + 4 > segs.length)
+			segs = Arrays.copyOf(segs, 2 * segs.length);
+		segs[4 * k] = xa;
+		segs[4 * k + 1] = ya;
+		segs[4 * k + 2] = xb;
+		segs[4 * k + 3] = yb;
+		return segs;
+	}
+
+	/**
+	 * Sorts indices by crossing position with an insertion sort, since rows
+	 * rarely cross the outline more than a few times.
+	 */
+	private static void sortByPosition(int[] order, double[] crossings, int m) {
+		for (int i = 1; i < m; i++) {
+			int key = order[i];
+			double x = crossings[key];
+			int j = i - 1;
+			while (j >= 0 && crossings[order[j]] > x) {
+				order[j + 1] = order[j];
+				j--;
+			}
+			order[j + 1] = key;
+		}
+	}
+
+}
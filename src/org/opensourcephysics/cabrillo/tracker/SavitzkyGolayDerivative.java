@@ -0,0 +1,269 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This implements the Savitzky-Golay algorithm for finding both the first and
+ * second derivatives. A polynomial of the specified order is fit by least
+ * squares to the 2*spill+1 positions centered on each step, and the derivatives
+ * of the polynomial at the center are the results. Since the positions are
+ * uniformly spaced the fit reduces to a fixed convolution, so the coefficients
+ * are computed once for each spill and order and the cost is linear in the
+ * number of steps.
+ *
+ * With order 2 the second derivative is the same as that of SecondDerivative
+ * with spill 2, and with spill 1 both derivatives are the same as simple finite
+ * differences. Larger spills smooth noisy data more.
+ */
+public class SavitzkyGolayDerivative implements Derivative {
+
+	/**
+	 * the minimum and maximum polynomial orders
+	 */
+	public final static int MIN_ORDER = 2, MAX_ORDER = 5;
+
+	/**
+	 * the maximum spill (half the window size)
+	 */
+	public final static int MAX_SPILL = 12;
+
+	// coefficients for each spill and order: {first derivative, second derivative}
+	private static Map<Integer, double[][]> coefficients = new HashMap<Integer, double[][]>();
+
+	// instance fields
+	private int order = MIN_ORDER;
+	private double[][] result = new double[4][];
+	private double[][] scratch = new double[2][];
+
+	/**
+	 * Sets the polynomial order.
+	 *
+	 * @param order the order, MIN_ORDER to MAX_ORDER
+	 */
+	public void setOrder(int order) {
+		this.order = Math.max(MIN_ORDER, Math.min(order, MAX_ORDER));
+	}
+
+	/**
+	 * Gets the polynomial order.
+	 *
+	 * @return the order
+	 */
+	public int getOrder() {
+		return order;
+	}
+
+	/**
+	 * Evaluates both derivatives.
+	 *
+	 * Input data:
+	 *    data[0] = parameters (int[] {spill, start, stepsize, count})
+	 *    data[1] = xData (double[])
+	 *    data[2] = yData (double[]) (may be null for 1d data)
+	 *    data[3] = validData (boolean[])
+	 *
+	 * Returned result:
+	 *    result[0] = xDeriv1 (double[]) (invalid values are NaN)
+	 *    result[1] = yDeriv1 (double[]) (invalid values are NaN)
+	 *    result[2] = xDeriv2 (double[]) (invalid values are NaN)
+	 *    result[3] = yDeriv2 (double[]) (invalid values are NaN)
+	 *
+	 * @param data the input data
+	 * @return Object[] the result
+	 */
+	@Override
+	public Object[] evaluate(Object[] data) {
+		int[] params = (int[]) data[0];
+		double[] x = (double[]) data[1];
+		double[] y = (double[]) data[2];
+		boolean[] valid = (boolean[]) data[3];
+		if (result[0] == null || result[0].length != x.length) {
+			for (int i = 0; i < result.length; i++)
+				result[i] = new double[x.length];
+		}
+		evaluate(x, y, valid, params[0], params[1], params[2], params[3], result[0], y == null ? null : result[1],
+				result[2], y == null ? null : result[3]);
+		return result;
+	}
+
+	/**
+	 * Evaluates the first derivative into caller-supplied arrays.
+	 */
+	@Override
+	public void evaluate(double[] x, double[] y, boolean[] valid, int spill, int start, int step, int count,
+			double[] outX, double[] outY) {
+		if (scratch[0] == null || scratch[0].length != x.length) {
+			scratch[0] = new double[x.length];
+			scratch[1] = new double[x.length];
+		}
+		evaluate(x, y, valid, spill, start, step, count, outX, outY, scratch[0], y == null ? null : scratch[1]);
+	}
+
+	/**
+	 * Evaluates both derivatives into caller-supplied arrays at least as long as
+	 * x. Only the indices start, start+step, ... are written.
+	 *
+	 * @param x       the x data
+	 * @param y       the y data (may be null for 1d data)
+	 * @param valid   the validity of each data point
+	 * @param spill   the number of steps on either side of each fitting window
+	 * @param start   the first index
+	 * @param step    the index step size
+	 * @param count   the number of indices
+	 * @param xDeriv1 the x first derivative
+	 * @param yDeriv1 the y first derivative (may be null if y is null)
+	 * @param xDeriv2 the x second derivative
+	 * @param yDeriv2 the y second derivative (may be null if y is null)
+	 */
+	public void evaluate(double[] x, double[] y, boolean[] valid, int spill, int start, int step, int count,
+			double[] xDeriv1, double[] yDeriv1, double[] xDeriv2, double[] yDeriv2) {
+		spill = Math.max(1, Math.min(spill, MAX_SPILL));
+		double[][] coeffs = getCoefficients(spill, order);
+		int length = Math.min(x.length, valid.length);
+		int reach = spill * step;
+
+		// get upper and lower index checking limits
+		int lower = start;
+		int upper = Math.min(start + step * (count - 1), length - 1);
+
+		// convolve at each step index that has data on both sides, ignoring validity
+		int first = Math.max(lower, lower + step * ((reach - lower + step - 1) / step));
+		int last = Math.min(upper, length - 1 - reach);
+		convolve(x, coeffs[0], spill, step, first, last, xDeriv1);
+		convolve(x, coeffs[1], spill, step, first, last, xDeriv2);
+		if (y != null) {
+			convolve(y, coeffs[0], spill, step, first, last, yDeriv1);
+			convolve(y, coeffs[1], spill, step, first, last, yDeriv2);
+		}
+
+		// derivatives at i are valid only if all step positions between
+		// i-spill*step and i+spill*step are valid
+		int width = 2 * spill + 1;
+		int run = 0;
+		for (int j = lower - reach; j <= upper + reach; j += step) {
+			run = (j >= 0 && j < length && valid[j]) ? run + 1 : 0;
+			int i = j - reach;
+			if (i >= lower && run < width) {
+				xDeriv1[i] = xDeriv2[i] = Double.NaN;
+				if (y != null)
+					yDeriv1[i] = yDeriv2[i] = Double.NaN;
+			}
+		}
+	}
+
+	/**
+	 * Gets the convolution coefficients for a spill and polynomial order.
+	 *
+	 * @param spill the spill
+	 * @param order the polynomial order
+	 * @return {first derivative coefficients, second derivative coefficients},
+	 *         each indexed from -spill to +spill
+	 */
+	public static synchronized double[][] getCoefficients(int spill, int order) {
+		// the polynomial is fully determined by the window when order >= 2*spill
+		order = Math.min(order, 2 * spill);
+		Integer key = spill * (MAX_ORDER + 1) + order;
+		double[][] coeffs = coefficients.get(key);
+		if (coeffs == null) {
+			coeffs = new double[][] { fitCoefficients(spill, order, 1), fitCoefficients(spill, order, 2) };
+			coefficients.put(key, coeffs);
+		}
+		return coeffs;
+	}
+
+	/**
+	 * Adds the convolution of data with coefficients to the output at each step
+	 * index from first to last. The loop over indices has no branches so the JIT
+	 * can vectorize it.
+	 */
+	private static void convolve(double[] data, double[] coeffs, int spill, int step, int first, int last,
+			double[] out) {
+		for (int i = first; i <= last; i += step)
+			out[i] = 0;
+		for (int k = -spill; k <= spill; k++) {
+			double c = coeffs[k + spill];
+			if (c == 0)
+				continue;
+			int offset = k * step;
+			for (int i = first; i <= last; i += step)
+				out[i] += c * data[i + offset];
+		}
+	}
+
+	/**
+	 * Computes the coefficients that give a derivative at the center of a least
+	 * squares polynomial fit: row d of (A'A)^-1 A' times d!, where A[k][j] = k^j.
+	 *
+	 * @param spill the spill
+	 * @param order the polynomial order
+	 * @param d     the derivative
+	 * @return the coefficients from -spill to +spill
+	 */
+	private static double[] fitCoefficients(int spill, int order, int d) {
+		int n = order + 1;
+		// normal matrix G[r][c] = sum of k^(r+c), augmented with unit vector e_d
+		double[][] g = new double[n][n + 1];
+		for (int r = 0; r < n; r++) {
+			for (int c = 0; c < n; c++) {
+				double sum = 0;
+				for (int k = -spill; k <= spill; k++)
+					sum += Math.pow(k, r + c);
+				g[r][c] = sum;
+			}
+			g[r][n] = r == d ? 1 : 0;
+		}
+		// solve G z = e_d by Gaussian elimination with partial pivoting
+		for (int col = 0; col < n; col++) {
+			int pivot = col;
+			for (int r = col + 1; r < n; r++) {
+				if (Math.abs(g[r][col]) > Math.abs(g[pivot][col]))
+					pivot = r;
+			}
+			double[] tmp = g[col];
+			g[col] = g[pivot];
+			g[pivot] = tmp;
+			for (int r = 0; r < n; r++) {
+				if (r == col)
+					continue;
+				double f = g[r][col] / g[col][col];
+				for (int c = col; c <= n; c++)
+					g[r][c] -= f * g[col][c];
+			}
+		}
+		double factorial = d == 2 ? 2 : 1;
+		double[] coeffs = new double[2 * spill + 1];
+		for (int k = -spill; k <= spill; k++) {
+			double sum = 0;
+			for (int j = 0; j < n; j++)
+				sum += g[j][n] / g[j][j] * Math.pow(k, j);
+			coeffs[k + spill] = factorial * sum;
+		}
+		return coeffs;
+	}
+
+}
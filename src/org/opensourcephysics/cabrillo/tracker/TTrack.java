@@ -214,7 +214,12 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 				if (ttype != TTrack.TYPE_POINTMASS) {
 					dataValid = false;
 				}
-				erase();
+				int[] frames = ReferenceFrame.getChangedFrames(e.getNewValue());
+				if (frames != null) { // transform changed at a range of frames
+					for (int n = frames[0]; n <= frames[1]; n++)
+						eraseFrame(n);
+				} else
+					erase();
 				TFrame.repaintT(trackerPanel);
 				break;
 			}
@@ -2520,6 +2525,18 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 		}
 	}
 
+	/**
+	 * Erases the steps on all panels that are affected by a change at a single
+	 * frame.
+	 *
+	 * @param n the frame number
+	 */
+	protected void eraseFrame(int n) {
+		Step step = getStep(n);
+		if (step != null)
+			step.erase();
+	}
+
 	/**
 	 * Remarks all steps on all panels.
 	 */
@@ -3210,8 +3227,9 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 	protected class StepArray {
 
 		// instance fields
-		protected int delta = 5;
-		protected Step[] array = new Step[delta];
+		protected int delta = 5; // minimum growth
+		// replaced, never resized, when the array grows so reads need no lock
+		protected volatile Step[] array = new Step[delta];
 		private boolean autofill = false;
 
 		/**
@@ -3231,7 +3249,7 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 			autofill = true;
 			step.n = 0;
 			array[0] = step;
-			fill(array, step);
+			fill(array, step, 1);
 		}
 
 		/**
@@ -3253,10 +3271,10 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 		 * @return the step
 		 */
 		public Step getStep(int n) {
-			if (n >= array.length) {
-				int len = Math.max(n + delta, n - array.length + 1);
-				setLength(len);
-			}
+			Step[] a = array;
+			if (n < a.length)
+				return a[n];
+			ensureLength(n + 1);
 			return array[n];
 		}
 
@@ -3270,11 +3288,8 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 		public void setStep(int n, Step step) {
 			if (autofill && step == null)
 				return;
-			if (n >= array.length) {
-				int len = Math.max(n + delta, n - array.length + 1);
-				setLength(len);
-			}
-			synchronized (array) {
+			synchronized (this) {
+				ensureLength(n + 1);
 				array[n] = step;
 			}
 		}
@@ -3286,11 +3301,10 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 		 * @return <code>true</code> if this contains the step
 		 */
 		public boolean contains(Step step) {
-			synchronized (array) {
-				for (int i = 0; i < array.length; i++)
-					if (array[i] == step)
-						return true;
-			}
+			Step[] a = array;
+			for (int i = 0; i < a.length; i++)
+				if (a[i] == step)
+					return true;
 			return false;
 		}
 
@@ -3299,12 +3313,13 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 		 *
 		 * @param len the new length of the array
 		 */
-		public void setLength(int len) {
+		public synchronized void setLength(int len) {
+			Step[] a = array;
 			Step[] newArray = new Step[len];
-			System.arraycopy(array, 0, newArray, 0, Math.min(len, array.length));
-			if (len > array.length && autofill) {
-				Step step = array[array.length - 1];
-				fill(newArray, step);
+			System.arraycopy(a, 0, newArray, 0, Math.min(len, a.length));
+			if (len > a.length && autofill) {
+				Step step = a[a.length - 1];
+				fill(newArray, step, 0);
 			}
 			array = newArray;
 		}
@@ -3315,11 +3330,10 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 		 * @return true if empty
 		 */
 		public boolean isEmpty() {
-			synchronized (array) {
-				for (int i = 0; i < array.length; i++)
-					if (array[i] != null)
-						return false;
-			}
+			Step[] a = array;
+			for (int i = 0; i < a.length; i++)
+				if (a[i] != null)
+					return false;
 			return true;
 		}
 
@@ -3330,12 +3344,11 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 		 * @return true if the step is preceded
 		 */
 		public boolean isPreceded(int n) {
-			synchronized (array) {
-				int k = Math.min(n, array.length);
-				for (int i = 0; i < k; i++)
-					if (array[i] != null)
-						return true;
-			}
+			Step[] a = array;
+			int k = Math.min(n, a.length);
+			for (int i = 0; i < k; i++)
+				if (a[i] != null)
+					return true;
 			return false;
 		}
 
@@ -3345,14 +3358,29 @@ public abstract class TTrack extends OSPRuntime.Supported implements Interactive
 
 		// __________________________ private methods _________________________
 
+		/**
+		 * Grows the array if needed to at least the specified length. A default
+		 * array grows geometrically so filling n steps one at a time copies O(n)
+		 * elements in total. An autofill array grows to exactly the specified length
+		 * since every new element is a cloned step that callers will see.
+		 *
+		 * @param len the minimum length
+		 */
+		private synchronized void ensureLength(int len) {
+			int length = array.length;
+			if (len > length)
+				setLength(autofill ? len : Math.max(len + delta, length + (length >> 1)));
+		}
+
 		/**
 		 * Replaces null elements of the the array with clones of the specified step.
 		 *
 		 * @param array the Step[] to fill
 		 * @param step  the step to clone
+		 * @param start the first index to fill
 		 */
-		private void fill(Step[] array, Step step) {
-			for (int n = 0; n < array.length; n++) {
+		private void fill(Step[] array, Step step, int start) {
+			for (int n = start; n < array.length; n++) {
 				if (array[n] == null) {
 					Step clone = (Step) step.clone();
 					clone.n = n;
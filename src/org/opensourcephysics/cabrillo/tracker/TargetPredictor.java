@@ -0,0 +1,263 @@
+/*
+ * The tracker package defines a set of video/image analysis tools
+ * built on the Open Source Physics framework by Wolfgang Christian.
+ *
+ * Copyright (c) 2024 Douglas Brown, Wolfgang Christian, Robert M. Hanson
+ *
+ * Tracker is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Tracker is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Tracker; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at <http://www.gnu.org/copyleft/gpl.html>
+ *
+ * For additional Tracker information and documentation, please see
+ * <http://physlets.org/tracker/>.
+ */
+package org.opensourcephysics.cabrillo.tracker;
+
+import java.awt.Dimension;
+
+import org.opensourcephysics.media.core.TPoint;
+
+/**
+ * Predicts the location of an autotracker target in the next step from its
+ * positions in previous steps, using finite differences to extrapolate by
+ * velocity or acceleration when they are consistent. Used by both the
+ * interactive AutoTracker and the BatchAutoTracker so they place search areas
+ * identically.
+ */
+public class TargetPredictor {
+
+	/**
+	 * the number of previous positions used for prediction
+	 */
+	public final static int LOOKBACK = 4;
+
+	private double[][] derivatives1 = new double[LOOKBACK - 1][];
+	private double[][] derivatives2 = new double[LOOKBACK - 1][];
+	private double[][] derivatives3 = new double[LOOKBACK - 1][];
+
+	/**
+	 * Gets the number of previous positions this predictor uses.
+	 *
+	 * @return the lookback
+	 */
+	public int getLookback() {
+		return LOOKBACK;
+	}
+
+	/**
+	 * Predicts the next target position, taking into account which previous
+	 * positions came from weak matches. This predictor ignores match quality.
+	 *
+	 * @param prevPoints the previous positions, most recent first
+	 * @param weak       true for positions from weak matches; may be null
+	 * @param lookAhead  true to extrapolate, false to use the previous position
+	 * @param imageSize  the video image size used to bound the prediction
+	 * @return the predicted position, or null if no prediction is possible
+	 */
+	public TPoint predict(TPoint[] prevPoints, boolean[] weak, boolean lookAhead, Dimension imageSize) {
+		return predict(prevPoints, lookAhead, imageSize);
+	}
+
+	/**
+	 * Predicts the next target position.
+	 *
+	 * @param prevPoints the previous positions, most recent first; may contain
+	 *                   nulls for steps with no position
+	 * @param lookAhead  true to extrapolate, false to use the previous position
+	 * @param imageSize  the video image size used to bound the prediction
+	 * @return the predicted position, or null if no prediction is possible
+	 */
+	public TPoint predict(TPoint[] prevPoints, boolean lookAhead, Dimension imageSize) {
+		// return null (no prediction) if there is no recent position data
+		if (prevPoints[0] == null)
+			return null;
+
+		boolean success = false;
+		// set prediction to prev position
+		TPoint predicted = new TPoint(prevPoints[0].getX(), prevPoints[0].getY());
+		if (!lookAhead || prevPoints[1] == null) {
+			// no recent velocity or acceleration data available
+			success = true;
+		}
+
+		if (!success) {
+			// get derivatives
+			double[][] veloc = getDerivatives(prevPoints, 1);
+			double[][] accel = getDerivatives(prevPoints, 2);
+			double[][] jerk = getDerivatives(prevPoints, 3);
+
+			double vxmean = 0, vymean = 0;
+			int n = 0;
+			for (int i = 0; i < veloc.length; i++) {
+				if (veloc[i] != null) {
+					n++;
+					vxmean += veloc[i][0];
+					vymean += veloc[i][1];
+				}
+			}
+			vxmean = Math.abs(vxmean / n);
+			vymean = Math.abs(vymean / n);
+
+			double axmean = 0, aymean = 0;
+			n = 0;
+			for (int i = 0; i < accel.length; i++) {
+				if (accel[i] != null) {
+					n++;
+					axmean += accel[i][0];
+					aymean += accel[i][1];
+				}
+			}
+			axmean = Math.abs(axmean / n);
+			aymean = Math.abs(aymean / n);
+
+			boolean xVelocValid = prevPoints[2] == null || Math.abs(accel[0][0]) < vxmean;
+			boolean yVelocValid = prevPoints[2] == null || Math.abs(accel[0][1]) < vymean;
+			boolean xAccelValid = prevPoints[2] != null && (prevPoints[3] == null || Math.abs(jerk[0][0]) < axmean);
+			boolean yAccelValid = prevPoints[2] != null && (prevPoints[3] == null || Math.abs(jerk[0][1]) < aymean);
+
+			if (xAccelValid) {
+				// base x-coordinate prediction on acceleration
+				TPoint loc0 = prevPoints[2];
+				TPoint loc1 = prevPoints[1];
+				TPoint loc2 = prevPoints[0];
+				double x = 3 * loc2.getX() - 3 * loc1.getX() + loc0.getX();
+				predicted.setLocation(x, predicted.y);
+				success = true;
+			} else if (xVelocValid) {
+				// else base x-coordinate prediction on velocity
+				TPoint loc0 = prevPoints[1];
+				TPoint loc1 = prevPoints[0];
+				double x = 2 * loc1.getX() - loc0.getX();
+				predicted.setLocation(x, predicted.y);
+				success = true;
+			}
+			if (yAccelValid) {
+				// base y-coordinate prediction on acceleration
+				TPoint loc0 = prevPoints[2];
+				TPoint loc1 = prevPoints[1];
+				TPoint loc2 = prevPoints[0];
+				double y = 3 * loc2.getY() - 3 * loc1.getY() + loc0.getY();
+				predicted.setLocation(predicted.x, y);
+				success = true;
+			} else if (yVelocValid) {
+				// else base y-coordinate prediction on velocity
+				TPoint loc0 = prevPoints[1];
+				TPoint loc1 = prevPoints[0];
+				double y = 2 * loc1.getY() - loc0.getY();
+				predicted.setLocation(predicted.x, y);
+				success = true;
+			}
+		}
+		if (!success)
+			return null;
+		// make sure prediction is within the video image
+		predicted.x = Math.max(predicted.x, 0);
+		predicted.x = Math.min(predicted.x, imageSize.width);
+		predicted.y = Math.max(predicted.y, 0);
+		predicted.y = Math.min(predicted.y, imageSize.height);
+		return predicted;
+	}
+
+	/**
+	 * Gets the available derivatives of the specified order. These are NOT time
+	 * derivatives, but simply differences in pixel units: order 1 is deltaPosition,
+	 * order 2 is change in deltaPosition, order 3 is change in order 2. Note the
+	 * TPoint positions are in image units, not world units.
+	 *
+	 * @param positions an array of positions
+	 * @param order     may be 1 (v), 2 (a) or 3 (jerk)
+	 * @return the derivative data
+	 */
+	public double[][] getDerivatives(TPoint[] positions, int order) {
+		// return null if insufficient data
+		if (positions.length < order + 1)
+			return null;
+
+		if (order == 1) { // velocity
+			for (int i = 0; i < derivatives1.length; i++) {
+				if (i >= positions.length - 1) {
+					derivatives1[i] = null;
+					continue;
+				}
+				TPoint loc0 = positions[i + 1];
+				TPoint loc1 = positions[i];
+				if (loc0 == null || loc1 == null) {
+					derivatives1[i] = null;
+					continue;
+				}
+				double x = loc1.getX() - loc0.getX();
+				double y = loc1.getY() - loc0.getY();
+				if (derivatives1[i] == null) {
+					derivatives1[i] = new double[] { x, y };
+				} else {
+					derivatives1[i][0] = x;
+					derivatives1[i][1] = y;
+
+				}
+			}
+			return derivatives1;
+		} else if (order == 2) { // acceleration
+			for (int i = 0; i < derivatives2.length; i++) {
+				if (i >= positions.length - 2) {
+					derivatives2[i] = null;
+					continue;
+				}
+				TPoint loc0 = positions[i + 2];
+				TPoint loc1 = positions[i + 1];
+				TPoint loc2 = positions[i];
+				if (loc0 == null || loc1 == null || loc2 == null) {
+					derivatives2[i] = null;
+					continue;
+				}
+				double x = loc2.getX() - 2 * loc1.getX() + loc0.getX();
+				double y = loc2.getY() - 2 * loc1.getY() + loc0.getY();
+				if (derivatives2[i] == null) {
+					derivatives2[i] = new double[] { x, y };
+				} else {
+					derivatives2[i][0] = x;
+					derivatives2[i][1] = y;
+
+				}
+			}
+			return derivatives2;
+		} else if (order == 3) { // jerk
+			for (int i = 0; i < derivatives3.length; i++) {
+				if (i >= positions.length - 3) {
+					derivatives3[i] = null;
+					continue;
+				}
+				TPoint loc0 = positions[i + 3];
+				TPoint loc1 = positions[i + 2];
+				TPoint loc2 = positions[i + 1];
+				TPoint loc3 = positions[i];
+				if (loc0 == null || loc1 == null || loc2 == null || loc3 == null) {
+					derivatives3[i] = null;
+					continue;
+				}
+				double x = loc3.getX() - 3 * loc2.getX() + 3 * loc1.getX() - loc0.getX();
+				double y = loc3.getY() - 3 * loc2.getY() + 3 * loc1.getY() - loc0.getY();
+				if (derivatives3[i] == null) {
+					derivatives3[i] = new double[] { x, y };
+				} else {
+					derivatives3[i][0] = x;
+					derivatives3[i][1] = y;
+
+				}
+			}
+			return derivatives3;
+		}
+		return null;
+	}
+
+}
@@ -562,11 +562,23 @@ public class Tracker {
 				|| "true".equals(System.getProperty("java.awt.headless"));
 		String importVideoName = (String) options.get("-importVideo");
 		String exportVideoName = (String) options.get("-exportVideo");
+		String autotrackName = (String) options.get("-autotrack");
+		String rgbName = (String) options.get("-rgb");
+		String kymographName = (String) options.get("-kymograph");
+		String outputName = (String) options.get("-output");
 		if (headless) {
-			if (exportVideoName == null && whenLoaded == null) {
+			if (exportVideoName == null && autotrackName == null && rgbName == null && kymographName == null
+					&& whenLoaded == null) {
 				// nothing to do;
 				return;
 			}
+			// each batch option writes its own file, so -output can name only one
+			int batchCount = (autotrackName == null ? 0 : 1) + (rgbName == null ? 0 : 1)
+					+ (kymographName == null ? 0 : 1);
+			if (outputName != null && batchCount > 1) {
+				System.err.println("Tracker: -output may be used with only one of -autotrack, -rgb and -kymograph"); //$NON-NLS-1$
+				System.exit(1);
+			}
 			Runnable r = whenLoaded;
 			whenLoaded = () -> {
 				try {
@@ -576,7 +588,6 @@ public class Tracker {
 				} catch (Throwable t) {
 					t.printStackTrace();
 				}
-				System.exit(0);
 			};
 		}
 
@@ -633,10 +644,26 @@ public class Tracker {
 		}
 
 		if (loader != null) {
-			if (exportVideoName != null)
-				TrackerIO.exportVideoImages(loader.panel(), exportVideoName);
+			boolean ok = true;
+			try {
+				if (exportVideoName != null)
+					TrackerIO.exportVideoImages(loader.panel(), exportVideoName);
+				if (autotrackName != null)
+					ok &= BatchAutoTracker.runHeadless(loader.panel(), autotrackName, outputName);
+				if (rgbName != null)
+					ok &= BatchRGBAnalyzer.runHeadless(loader.panel(), rgbName, outputName);
+				if (kymographName != null)
+					ok &= BatchLineProfiler.runHeadless(loader.panel(), kymographName, outputName);
+			} catch (Throwable t) {
+				t.printStackTrace();
+				ok = false;
+			}
 			whenLoaded.run();
-			System.exit(0);
+			System.exit(ok ? 0 : 1);
+		}
+		if (headless && (autotrackName != null || rgbName != null || kymographName != null)) {
+			System.err.println("Tracker: no file to open"); //$NON-NLS-1$
+			System.exit(1);
 		}
 		if (addTabIfEmpty) {
 			// add an empty tab if requested
@@ -688,6 +715,30 @@ public class Tracker {
 					options.put("-exportVideo", exportName);
 					args[i] = null;
 					break;
+				case "-autotrack":
+					args[i] = null;
+					String trackName = args[++i];
+					options.put("-autotrack", trackName);
+					args[i] = null;
+					break;
+				case "-rgb":
+					args[i] = null;
+					String rgbName = args[++i];
+					options.put("-rgb", rgbName);
+					args[i] = null;
+					break;
+				case "-kymograph":
+					args[i] = null;
+					String kymographName = args[++i];
+					options.put("-kymograph", kymographName);
+					args[i] = null;
+					break;
+				case "-output":
+					args[i] = null;
+					String outputName = args[++i];
+					options.put("-output", outputName);
+					args[i] = null;
+					break;
 				case "-adaptive":
 					args[i] = null;
 					options.put("-adaptive", true);
@@ -224,6 +224,7 @@ public class TrackerPanel extends VideoPanel implements Scrollable {
 	protected int infoX = Integer.MIN_VALUE, infoY; // TFrame sets info dialog location
 	protected String defaultSavePath, openedFromPath;
 	protected ModelBuilder modelBuilder;
+	protected ModelRefresher modelRefresher;
 	protected TrackControl trackControl;
 	protected boolean isModelBuilderVisible;
 	protected boolean isShiftKeyDown, isControlKeyDown, isEnterKeyDown;
@@ -260,6 +261,7 @@ public class TrackerPanel extends VideoPanel implements Scrollable {
 	protected TCoordinateStringBuilder coordStringBuilder;
 	protected ArrayList<Integer> andWorld = new ArrayList<Integer>();
 	protected double[] dividerFractions = new double[4];
+	protected IntegralImage.Cache rgbCache = new IntegralImage.Cache(); // shared by RGBRegion tracks
 
 	private int enabledCount;
 	
@@ -597,6 +599,36 @@ public class TrackerPanel extends VideoPanel implements Scrollable {
 		description = (desc == null ? "" : desc);
 	}
 
+	/**
+	 * Gets the model refresher.
+	 *
+	 * @return the model refresher
+	 */
+	public ModelRefresher getModelRefresher() {
+		if (modelRefresher == null)
+			modelRefresher = new ModelRefresher();
+		return modelRefresher;
+	}
+
+	/**
+	 * Fires a property change to which every particle model may respond with a
+	 * refresh. The models are refreshed together by the ModelRefresher before
+	 * this returns.
+	 *
+	 * @param name     the property name
+	 * @param oldValue the old value
+	 * @param newValue the new value
+	 */
+	protected void fireToModels(String name, Object oldValue, Object newValue) {
+		ModelRefresher refresher = getModelRefresher();
+		refresher.begin();
+		try {
+			firePropertyChange(name, oldValue, newValue);
+		} finally {
+			refresher.end();
+		}
+	}
+
 	/**
 	 * Gets the model builder.
 	 *
@@ -1300,7 +1332,7 @@ public class TrackerPanel extends VideoPanel implements Scrollable {
 			getSnapPoint().setXY(coords.getOriginX(n), coords.getOriginY(n));
 			try {
 				firePropertyChange(Video.PROPERTY_VIDEO_COORDS, null, coords);
-				firePropertyChange(ImageCoordSystem.PROPERTY_COORDS_TRANSFORM, null, null);
+				fireToModels(ImageCoordSystem.PROPERTY_COORDS_TRANSFORM, null, null);
 			} catch (Exception e) {
 			}
 		} else {
@@ -2770,6 +2802,7 @@ public class TrackerPanel extends VideoPanel implements Scrollable {
 			break;
 		case VideoPlayer.PROPERTY_VIDEOPLAYER_STEPNUMBER: // from videoPlayer //$NON-NLS-1$
 			// overrides VideoPanel repaint
+			rgbCache.clear();
 			setSelectedPoint(null);
 			selectedSteps.clear();
 			if (getVideo() != null && !getVideo().getFilterStack().isEmpty()) {
@@ -2801,10 +2834,11 @@ public class TrackerPanel extends VideoPanel implements Scrollable {
 			coords = (ImageCoordSystem) e.getNewValue();
 			coords.addPropertyChangeListener(this);
 			firePropertyChange(Video.PROPERTY_VIDEO_COORDS, null, coords); // to tracks //$NON-NLS-1$
-			firePropertyChange(ImageCoordSystem.PROPERTY_COORDS_TRANSFORM, null, null); // to tracks/views //$NON-NLS-1$
+			fireToModels(ImageCoordSystem.PROPERTY_COORDS_TRANSFORM, null, null); // to tracks/views //$NON-NLS-1$
 			doSnap = true;
 			break;
 		case Video.PROPERTY_VIDEO_IMAGE: // from video //$NON-NLS-1$
+			rgbCache.clear(); // image may be redrawn in place
 			firePropertyChange(PROPERTY_TRACKERPANEL_IMAGE, null, null); // to tracks/views //$NON-NLS-1$
 			mbar = getMenuBar(false);
 			if (mbar != null)
@@ -2829,8 +2863,8 @@ public class TrackerPanel extends VideoPanel implements Scrollable {
 			for (int i = 0; i < tracks.size(); i++) {
 				tracks.get(i).dataValid = false;
 			}
-			// pass this on to TView classes
-			firePropertyChange(ImageCoordSystem.PROPERTY_COORDS_TRANSFORM, null, null); // to tracks/views //$NON-NLS-1$
+			// pass this on to TView classes with the changed frame number, if any
+			fireToModels(ImageCoordSystem.PROPERTY_COORDS_TRANSFORM, null, e.getNewValue()); // to tracks/views //$NON-NLS-1$
 			break;
 		case ImageCoordSystem.PROPERTY_COORDS_LOCKED: // from coords //$NON-NLS-1$
 			// pass this on
@@ -2866,7 +2900,7 @@ public class TrackerPanel extends VideoPanel implements Scrollable {
 																													// views
 																													// //$NON-NLS-1$
 			// pass this on to particle models and PencilControl
-			firePropertyChange(name, e.getSource(), name == Trackable.PROPERTY_ADJUSTING ? e.getNewValue() : null);
+			fireToModels(name, e.getSource(), name == Trackable.PROPERTY_ADJUSTING ? e.getNewValue() : null);
 			if (getSelectedPoint() != null) {
 				getSelectedPoint().showCoordinates(this);
 				TFrame frame = getTFrame();
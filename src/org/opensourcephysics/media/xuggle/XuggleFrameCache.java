@@ -0,0 +1,250 @@
+/*
+ * The org.opensourcephysics.media.xuggle package provides Xuggle
+ * services including implementations of the Video and VideoRecorder interfaces.
+ *
+ * Copyright (c) 2024  Douglas Brown and Wolfgang Christian.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * For additional information and documentation on Open Source Physics,
+ * please see <https://www.compadre.org/osp/>.
+ */
+package org.opensourcephysics.media.xuggle;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A least-recently-used cache of decoded video frames with a memory budget in
+ * bytes rather than a frame count. All methods are thread-safe so the cache
+ * can be filled by a read-ahead thread. Evicted images are passed to an
+ * optional listener so they can be recycled. The one image displayed, set by
+ * getDisplayed() or putDisplayed(), is held back until another image replaces
+ * it, and is then passed to the listener if it is no longer cached.
+ */
+class XuggleFrameCache {
+
+	private final LinkedHashMap<Integer, BufferedImage> images = new LinkedHashMap<>(64, 0.75f, true);
+	private BufferedImage displayed;
+	private boolean displayedEvicted;
+	private long maxBytes;
+	private long bytes;
+	private long hits, misses;
+	private Consumer<BufferedImage> evictionListener;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxMB the memory budget in megabytes
+	 */
+	XuggleFrameCache(int maxMB) {
+		this(maxMB, null);
+	}
+
+	/**
+	 * Constructor with an eviction listener.
+	 *
+	 * @param maxMB    the memory budget in megabytes
+	 * @param listener called with each image evicted or replaced; may be null
+	 */
+	XuggleFrameCache(int maxMB, Consumer<BufferedImage> listener) {
+		evictionListener = listener;
+		setMaxMB(maxMB);
+	}
+
+	/**
+	 * Sets the memory budget. Frames are evicted as needed to meet it.
+	 *
+	 * @param maxMB the memory budget in megabytes
+	 */
+	synchronized void setMaxMB(int maxMB) {
+		maxBytes = Math.max(0, maxMB) * 1024L * 1024L;
+		trim();
+	}
+
+	/**
+	 * Gets a cached frame and records a hit or miss.
+	 *
+	 * @param frameNumber the frame number
+	 * @return the image, or null if not cached
+	 */
+	synchronized BufferedImage get(int frameNumber) {
+		BufferedImage image = images.get(frameNumber);
+		if (image == null)
+			misses++;
+		else
+			hits++;
+		return image;
+	}
+
+	/**
+	 * Gets a cached frame to display. The image is not passed to the eviction
+	 * listener while it is displayed.
+	 *
+	 * @param frameNumber the frame number
+	 * @return the image, or null if not cached
+	 */
+	synchronized BufferedImage getDisplayed(int frameNumber) {
+		BufferedImage image = get(frameNumber);
+		if (image != null)
+			setDisplayed(image, true);
+		return image;
+	}
+
+	/**
+	 * Determines if a frame is cached without affecting its LRU order or the hit
+	 * statistics.
+	 *
+	 * @param frameNumber the frame number
+	 * @return true if cached
+	 */
+	synchronized boolean contains(int frameNumber) {
+		return images.containsKey(frameNumber);
+	}
+
+	/**
+	 * Adds a frame to the cache, evicting the least recently used frames if the
+	 * budget is exceeded. Images larger than the budget are not cached but
+	 * passed straight to the eviction listener.
+	 *
+	 * @param frameNumber the frame number
+	 * @param image       the image
+	 */
+	synchronized void put(int frameNumber, BufferedImage image) {
+		if (!store(frameNumber, image))
+			evict(image);
+	}
+
+	/**
+	 * Adds a frame to display. The image is not passed to the eviction listener
+	 * while it is displayed, even if it is too large to cache.
+	 *
+	 * @param frameNumber the frame number
+	 * @param image       the image
+	 */
+	synchronized void putDisplayed(int frameNumber, BufferedImage image) {
+		setDisplayed(image, store(frameNumber, image));
+	}
+
+	/**
+	 * Removes all frames and resets the statistics. The displayed image is kept
+	 * out of the pool until it is replaced.
+	 */
+	synchronized void clear() {
+		images.clear();
+		displayedEvicted = (displayed != null);
+		bytes = hits = misses = 0;
+	}
+
+	/**
+	 * Gets the number of cached frames.
+	 *
+	 * @return the frame count
+	 */
+	synchronized int size() {
+		return images.size();
+	}
+
+	/**
+	 * Gets the memory used by the cached frames.
+	 *
+	 * @return the size in bytes
+	 */
+	synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Gets the fraction of get() calls that found a cached frame.
+	 *
+	 * @return the hit rate, or 0 if get() has not been called
+	 */
+	synchronized double getHitRate() {
+		long n = hits + misses;
+		return (n == 0 ? 0 : (double) hits / n);
+	}
+
+	/**
+	 * Adds a frame unless it is larger than the budget.
+	 *
+	 * @param frameNumber the frame number
+	 * @param image       the image
+	 * @return true if cached
+	 */
+	private boolean store(int frameNumber, BufferedImage image) {
+		long size = sizeOf(image);
+		if (size > maxBytes)
+			return false;
+		BufferedImage prev = images.put(frameNumber, image);
+		if (prev != null) {
+			bytes -= sizeOf(prev);
+			if (prev != image)
+				evict(prev);
+		}
+		bytes += size;
+		trim();
+		return true;
+	}
+
+	private void trim() {
+		Iterator<Map.Entry<Integer, BufferedImage>> it = images.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			BufferedImage image = it.next().getValue();
+			bytes -= sizeOf(image);
+			it.remove();
+			evict(image);
+		}
+	}
+
+	private void evict(BufferedImage image) {
+		if (image == displayed)
+			displayedEvicted = true; // passed on when replaced
+		else if (evictionListener != null)
+			evictionListener.accept(image);
+	}
+
+	/**
+	 * Sets the displayed image and passes the one it replaces to the eviction
+	 * listener if that is no longer cached.
+	 *
+	 * @param image  the image
+	 * @param cached true if the image is in the cache
+	 */
+	private void setDisplayed(BufferedImage image, boolean cached) {
+		BufferedImage prev = displayed;
+		boolean release = displayedEvicted && prev != null && prev != image;
+		displayed = image;
+		displayedEvicted = !cached;
+		if (release && evictionListener != null)
+			evictionListener.accept(prev);
+	}
+
+	/**
+	 * Gets the memory size of an image's pixel data.
+	 *
+	 * @param image the image
+	 * @return the size in bytes
+	 */
+	static long sizeOf(BufferedImage image) {
+		DataBuffer buf = image.getRaster().getDataBuffer();
+		return (long) buf.getSize() * buf.getNumBanks() * DataBuffer.getDataTypeSize(buf.getDataType()) / 8;
+	}
+
+}
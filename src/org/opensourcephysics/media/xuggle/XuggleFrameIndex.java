@@ -0,0 +1,250 @@
+/*
+ * The org.opensourcephysics.media.xuggle package provides Xuggle
+ * services including implementations of the Video and VideoRecorder interfaces.
+ *
+ * Copyright (c) 2024  Douglas Brown and Wolfgang Christian.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * For additional information and documentation on Open Source Physics,
+ * please see <https://www.compadre.org/osp/>.
+ */
+package org.opensourcephysics.media.xuggle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.opensourcephysics.controls.OSPLog;
+import org.opensourcephysics.tools.ResourceLoader;
+
+/**
+ * A sidecar index of the packet timestamps, key timestamps and frame start
+ * times found by XuggleVideo when it scans a video. The index is saved in the
+ * OSP cache so that later opens of the same (unchanged) file can skip the scan.
+ *
+ * An index is keyed by the canonical path, size, modification time and a hash
+ * of the head and tail of the file. An index that is stale, from an older
+ * version or unreadable is deleted and the video is rescanned.
+ */
+class XuggleFrameIndex {
+
+	private static final int MAGIC = 0x58464958; // "XFIX"
+	private static final int VERSION = 1;
+	private static final String INDEX_DIR = "xuggle_index"; //$NON-NLS-1$
+	private static final String INDEX_EXT = ".xfi"; //$NON-NLS-1$
+	private static final int HASH_SAMPLE_BYTES = 64 * 1024;
+
+	long[] packetTimeStamps;
+	long[] keyTimeStamps;
+	double[] frameTimes;
+	int firstDisplayPacket;
+
+	private XuggleFrameIndex() {
+	}
+
+	/**
+	 * Creates an index from the lists built during a container scan.
+	 *
+	 * @param packetTS           the packet (decode) timestamps
+	 * @param keyTS              the key timestamps
+	 * @param times              the frame start times
+	 * @param firstDisplayPacket the index of the first displayable packet
+	 */
+	XuggleFrameIndex(List<Long> packetTS, List<Long> keyTS, List<Double> times, int firstDisplayPacket) {
+		int n = packetTS.size();
+		packetTimeStamps = new long[n];
+		keyTimeStamps = new long[n];
+		frameTimes = new double[n];
+		for (int i = 0; i < n; i++) {
+			packetTimeStamps[i] = packetTS.get(i);
+			keyTimeStamps[i] = keyTS.get(i);
+			frameTimes[i] = times.get(i);
+		}
+		this.firstDisplayPacket = firstDisplayPacket;
+	}
+
+	/**
+	 * Gets the number of packets in this index.
+	 *
+	 * @return the packet count
+	 */
+	int getPacketCount() {
+		return packetTimeStamps.length;
+	}
+
+	/**
+	 * Reads a valid index for a video file. Stale or corrupt indexes are deleted.
+	 *
+	 * @param path the local video path
+	 * @return the index, or null if none is available
+	 */
+	static XuggleFrameIndex read(String path) {
+		File video = new File(path);
+		File indexFile = getIndexFile(video);
+		if (indexFile == null || !indexFile.exists())
+			return null;
+		XuggleFrameIndex index = null;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION
+					|| !in.readUTF().equals(video.getCanonicalPath())
+					|| in.readLong() != video.length()
+					|| in.readLong() != video.lastModified()
+					|| !in.readUTF().equals(getContentHash(video))) {
+				OSPLog.fine("stale Xuggle frame index for " + path); //$NON-NLS-1$
+			} else {
+				XuggleFrameIndex idx = new XuggleFrameIndex();
+				idx.firstDisplayPacket = in.readInt();
+				int n = in.readInt();
+				if (n > 0 && idx.firstDisplayPacket >= 0 && idx.firstDisplayPacket < n) {
+					idx.packetTimeStamps = new long[n];
+					idx.keyTimeStamps = new long[n];
+					idx.frameTimes = new double[n];
+					for (int i = 0; i < n; i++) {
+						idx.packetTimeStamps[i] = in.readLong();
+						idx.keyTimeStamps[i] = in.readLong();
+						idx.frameTimes[i] = in.readDouble();
+					}
+					if (in.readInt() == MAGIC)
+						index = idx;
+				}
+			}
+		} catch (IOException e) {
+			OSPLog.fine("corrupt Xuggle frame index for " + path + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if (index == null)
+			indexFile.delete();
+		return index;
+	}
+
+	/**
+	 * Writes this index for a video file. Failures are logged and ignored.
+	 *
+	 * @param path the local video path
+	 */
+	void write(String path) {
+		File video = new File(path);
+		File indexFile = getIndexFile(video);
+		if (indexFile == null)
+			return;
+		indexFile.getParentFile().mkdirs();
+		// write to a temp file first so a partial index is never read
+		File tmp = new File(indexFile.getPath() + ".tmp"); //$NON-NLS-1$
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(video.getCanonicalPath());
+			out.writeLong(video.length());
+			out.writeLong(video.lastModified());
+			out.writeUTF(getContentHash(video));
+			out.writeInt(firstDisplayPacket);
+			int n = packetTimeStamps.length;
+			out.writeInt(n);
+			for (int i = 0; i < n; i++) {
+				out.writeLong(packetTimeStamps[i]);
+				out.writeLong(keyTimeStamps[i]);
+				out.writeDouble(frameTimes[i]);
+			}
+			out.writeInt(MAGIC);
+		} catch (IOException e) {
+			OSPLog.warning("unable to write Xuggle frame index for " + path + ": " + e); //$NON-NLS-1$ //$NON-NLS-2$
+			tmp.delete();
+			return;
+		}
+		indexFile.delete();
+		if (!tmp.renameTo(indexFile))
+			tmp.delete();
+	}
+
+	/**
+	 * Gets the index file for a video file. Index files are stored in the OSP
+	 * cache and named by a hash of the canonical video path.
+	 *
+	 * @param video the video file
+	 * @return the index file, or null if no cache is available
+	 */
+	static File getIndexFile(File video) {
+		File cache = ResourceLoader.getOSPCache();
+		if (cache == null)
+			return null;
+		try {
+			String name = toHex(digest(video.getCanonicalPath().getBytes("UTF-8"))); //$NON-NLS-1$
+			return new File(new File(cache, INDEX_DIR), name + INDEX_EXT);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets a hash of the first and last bytes of a file. This catches content
+	 * changes that preserve size and modification time without reading the
+	 * entire video.
+	 *
+	 * @param video the video file
+	 * @return the hex hash
+	 * @throws IOException
+	 */
+	static String getContentHash(File video) throws IOException {
+		MessageDigest md = newDigest();
+		try (RandomAccessFile raf = new RandomAccessFile(video, "r")) { //$NON-NLS-1$
+			long len = raf.length();
+			byte[] buf = new byte[(int) Math.min(len, HASH_SAMPLE_BYTES)];
+			raf.readFully(buf);
+			md.update(buf);
+			if (len > HASH_SAMPLE_BYTES) {
+				raf.seek(Math.max(HASH_SAMPLE_BYTES, len - HASH_SAMPLE_BYTES));
+				int n = raf.read(buf);
+				if (n > 0)
+					md.update(buf, 0, n);
+			}
+		}
+		return toHex(md.digest());
+	}
+
+	private static byte[] digest(byte[] bytes) {
+		return newDigest().digest(bytes);
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-1
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+}
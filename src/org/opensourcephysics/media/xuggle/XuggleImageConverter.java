@@ -0,0 +1,144 @@
+/*
+ * The org.opensourcephysics.media.xuggle package provides Xuggle
+ * services including implementations of the Video and VideoRecorder interfaces.
+ *
+ * Copyright (c) 2024  Douglas Brown and Wolfgang Christian.
+ *
+ * This is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston MA 02111-1307 USA
+ * or view the license online at http://www.gnu.org/copyleft/gpl.html
+ *
+ * For additional information and documentation on Open Source Physics,
+ * please see <https://www.compadre.org/osp/>.
+ */
+package org.opensourcephysics.media.xuggle;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayDeque;
+
+import org.opensourcephysics.controls.OSPLog;
+
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+
+/**
+ * Converts decoded Xuggle pictures to TYPE_3BYTE_BGR BufferedImages, resampling
+ * to BGR24 when needed. The BGR24 bytes are copied directly into the image's
+ * DataBuffer, and images that are no longer needed can be recycled into a
+ * small pool, so steady-state conversion allocates nothing. Each decoder needs
+ * its own converter since the resampler and intermediate picture are reused.
+ * toImage() is not thread-safe.
+ */
+class XuggleImageConverter {
+
+	private static final int POOL_MAX = 8;
+
+	private IVideoResampler resampler;
+	private IVideoPicture bgrPic;
+	private final ArrayDeque<BufferedImage> pool = new ArrayDeque<BufferedImage>();
+
+	/**
+	 * Gets a BufferedImage for a decoded picture. The image is taken from the
+	 * pool if possible; the caller owns it until it is recycled.
+	 *
+	 * @param picture the complete picture
+	 * @return the image, or null if unable to resample
+	 */
+	BufferedImage toImage(IVideoPicture picture) {
+		IVideoPicture bgr = toBGR(picture);
+		if (bgr == null)
+			return null;
+		int w = bgr.getWidth();
+		int h = bgr.getHeight();
+		BufferedImage image = getPooledImage(w, h);
+		byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		int rowBytes = w * 3;
+		int stride = bgr.getDataLineSize(0);
+		if (stride == rowBytes) {
+			bgr.get(0, data, 0, rowBytes * h);
+		} else {
+			// rows are padded in the native picture
+			for (int y = 0; y < h; y++)
+				bgr.get(y * stride, data, y * rowBytes, rowBytes);
+		}
+		return image;
+	}
+
+	/**
+	 * Returns an image obtained from toImage() to the pool. The caller must not
+	 * use it afterwards.
+	 *
+	 * @param image the image
+	 */
+	synchronized void recycle(BufferedImage image) {
+		if (image != null && image.getType() == BufferedImage.TYPE_3BYTE_BGR && pool.size() < POOL_MAX)
+			pool.push(image);
+	}
+
+	private synchronized BufferedImage getPooledImage(int w, int h) {
+		while (!pool.isEmpty()) {
+			BufferedImage image = pool.pop();
+			if (image.getWidth() == w && image.getHeight() == h)
+				return image;
+		}
+		return new BufferedImage(w, h, BufferedImage.TYPE_3BYTE_BGR);
+	}
+
+	/**
+	 * Gets a BGR24 version of a picture.
+	 *
+	 * @param picture the picture
+	 * @return the picture itself if already BGR24, otherwise a reused resampled
+	 *         picture, or null if unable to resample
+	 */
+	IVideoPicture toBGR(IVideoPicture picture) {
+		// if needed, convert picture into BGR24 format
+		if (picture.getPixelType() == IPixelFormat.Type.BGR24)
+			return picture;
+		if (resampler == null) {
+			resampler = IVideoResampler.make(picture.getWidth(), picture.getHeight(), IPixelFormat.Type.BGR24,
+					picture.getWidth(), picture.getHeight(), picture.getPixelType());
+			if (resampler == null) {
+				OSPLog.warning("Could not create color space resampler"); //$NON-NLS-1$
+				return null;
+			}
+			bgrPic = IVideoPicture.make(resampler.getOutputPixelFormat(), picture.getWidth(), picture.getHeight());
+		}
+		if (resampler.resample(bgrPic, picture) < 0 || bgrPic.getPixelType() != IPixelFormat.Type.BGR24) {
+			OSPLog.warning("Could not encode video as BGR24"); //$NON-NLS-1$
+			return null;
+		}
+		return bgrPic;
+	}
+
+	/**
+	 * Releases the native resources.
+	 */
+	void dispose() {
+		if (bgrPic != null) {
+			bgrPic.delete();
+			bgrPic = null;
+		}
+		synchronized (this) {
+			pool.clear();
+		}
+		if (resampler != null) {
+			resampler.delete();
+			resampler = null;
+		}
+	}
+
+}
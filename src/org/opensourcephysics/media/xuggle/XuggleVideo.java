@@ -31,6 +31,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.EnumSet;
 
 import javax.imageio.ImageIO;
 import javax.swing.SwingUtilities;
@@ -46,18 +47,14 @@ import org.opensourcephysics.media.core.VideoAdapter;
 import org.opensourcephysics.media.core.VideoIO;
 import org.opensourcephysics.media.mov.MovieFactory;
 import org.opensourcephysics.media.mov.MovieVideo;
-import org.opensourcephysics.media.mov.SmoothPlayable;
 
 import com.xuggle.xuggler.ICodec;
 import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IContainerFormat;
 import com.xuggle.xuggler.IPacket;
-import com.xuggle.xuggler.IPixelFormat;
 import com.xuggle.xuggler.IStream;
 import com.xuggle.xuggler.IStreamCoder;
 import com.xuggle.xuggler.IVideoPicture;
-import com.xuggle.xuggler.IVideoResampler;
-import com.xuggle.xuggler.video.ConverterFactory;
-import com.xuggle.xuggler.video.IConverter;
 
 /**
  * A class to display videos using the Xuggle library. Xuggle in turn uses
@@ -78,12 +75,12 @@ import com.xuggle.xuggler.video.IConverter;
  * always be in-order but PTS will not. </quote>
  * 
  * 
- * Also adds imageCache to improve performance. Initially set to 50 images, but
- * ALWAYS includes any !isComplete() pictures. These images are always
- * precalculated.
+ * Also adds imageCache to improve performance: a least-recently-used cache of
+ * decoded frames limited to getCacheMB() megabytes, filled by a read-ahead thread
+ * that decodes the next readAheadFrames frames in the current play direction.
  * 
  */
-public class XuggleVideo extends MovieVideo implements SmoothPlayable, IncrementallyLoadable {
+public class XuggleVideo extends MovieVideo implements IncrementallyLoadable {
 
 //	private final static int FRAME = 1;
 //	private final static int PREVFRAME = 0;
@@ -95,16 +92,56 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 	}
 
 	/**
-	 * a cache of images for fast recall; always all incomplete images and up to
-	 * CACHE_MAX images total
+	 * memory budget in megabytes for the decoded image cache of each video, or
+	 * -1 to scale it to the maximum heap size
 	 */
-	private BufferedImage[] imageCache;
+	public static int cacheMB = -1;
 
 	/**
-	 * for debugging, 0, meaning "just the incomplete frames"; for general purposes,
-	 * up to CACHE_MAX images.
+	 * largest budget in megabytes chosen when scaled to the heap
 	 */
-	private int cacheMax = 0;
+	private static final int MAX_HEAP_CACHE_MB = 256;
+
+	/**
+	 * number of frames decoded ahead of the current frame in the play direction;
+	 * 0 to disable read-ahead
+	 */
+	public static int readAheadFrames = 8;
+
+	/**
+	 * Gets the memory budget for the decoded image cache of each video. Unless
+	 * set by cacheMB, this is 1/16 of the maximum heap size, at most 256 MB, so
+	 * several open videos leave room for the rest of the application.
+	 *
+	 * @return the budget in megabytes
+	 */
+	public static int getCacheMB() {
+		if (cacheMB >= 0)
+			return cacheMB;
+		long heapMB = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+		return (int) Math.min(MAX_HEAP_CACHE_MB, heapMB / 16);
+	}
+
+	/**
+	 * a cache of decoded images by frame number for fast recall
+	 */
+	private XuggleFrameCache imageCache;
+
+	/**
+	 * lock for all access to the container and decoder, which are shared by the
+	 * player and the read-ahead thread
+	 */
+	private final Object decodeLock = new Object();
+
+	/**
+	 * lock for the read-ahead request fields
+	 */
+	private final Object readAheadLock = new Object();
+
+	private volatile Thread readAheadThread;
+	private int readAheadFrame = -1;
+	private int readAheadDirection = 1;
+	private int lastRequestedFrame = -1;
 
 	private RandomAccessFile raf;
 
@@ -116,16 +153,14 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 
 	private IContainer container;
 	private IStreamCoder videoDecoder;
-	private IVideoResampler resampler;
 	private IPacket packet;
 	private IVideoPicture picture;
 	private double timebase;
-	private IConverter converter;
+	private XuggleImageConverter imageConverter;
 
 	// all of the following used during loading only
 	private ArrayList<Long> packetTSList;
 	private ArrayList<Long> keyTSList;
-	private ArrayList<BufferedImage> imageList;
 	private int index = 0;
 	private long keyTimeStamp = Long.MIN_VALUE;
 	
@@ -161,8 +196,37 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 	 * frameStartPlayTime is the frame time where play starts
 	 */
 	private double frameStartPlayTime;
-	
-	private boolean playSmoothly = false;
+
+	/**
+	 * when true, frame tables are read from and saved to a sidecar index in the
+	 * OSP cache so that reopening an unchanged video skips the container scan
+	 */
+	public static boolean useFrameIndex = true;
+
+	/**
+	 * true if the frame tables were read from a sidecar index
+	 */
+	private boolean frameIndexLoaded;
+
+	/**
+	 * codecs that may pack more than one frame into a packet (eg DivX/XviD
+	 * "packed bitstream" in AVI files); these are always fully decoded when
+	 * scanning the container
+	 */
+	private static final EnumSet<ICodec.ID> PACKED_CODECS = EnumSet.of(ICodec.ID.CODEC_ID_MPEG4,
+			ICodec.ID.CODEC_ID_MSMPEG4V1, ICodec.ID.CODEC_ID_MSMPEG4V2, ICodec.ID.CODEC_ID_MSMPEG4V3);
+
+	/**
+	 * true if every packet must be decoded while scanning the container
+	 */
+	private boolean decodeScan;
+
+	/**
+	 * true once the container scan has decoded a complete picture; kept across
+	 * loadMoreFrames calls so later batches, which may start mid-GOP, do not
+	 * count their incomplete pictures as leading ones
+	 */
+	private boolean haveImages;
 	
 	
 	/**
@@ -232,6 +296,11 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 		frameTimes = new ArrayList<Double>();
 		firePropertyChange(PROPERTY_VIDEO_PROGRESS, fileName, 0);
 		firstDisplayPacket = 0;
+		haveImages = false;
+		decodeScan = needsDecodeScan();
+		if (loadFrameIndex()) {
+			return;
+		}
 		if (!VideoIO.loadIncrementally) {
 			// NOT just dropping a video
 			// step thru container quickly and find all video frames
@@ -241,6 +310,33 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 
 	}
 
+	/**
+	 * Loads the frame tables from a valid sidecar index, if any, and finalizes
+	 * loading without scanning the container.
+	 * 
+	 * @return true if loaded from the index
+	 * @throws IOException
+	 */
+	private boolean loadFrameIndex() throws IOException {
+		if (!useFrameIndex || !isLocal)
+			return false;
+		XuggleFrameIndex idx = XuggleFrameIndex.read(path);
+		if (idx == null)
+			return false;
+		int n = idx.getPacketCount();
+		for (int i = 0; i < n; i++) {
+			packetTSList.add(idx.packetTimeStamps[i]);
+			keyTSList.add(idx.keyTimeStamps[i]);
+			frameTimes.add(idx.frameTimes[i]);
+		}
+		firstDisplayPacket = idx.firstDisplayPacket;
+		keyTS0 = idx.packetTimeStamps[0];
+		frameIndexLoaded = true;
+		OSPLog.finest("Xuggle frame index loaded for " + path); //$NON-NLS-1$
+		finalizeLoading();
+		return true;
+	}
+
 	@Override
 	protected void finalizeLoading() throws IOException {
 		//stopFailDetection();
@@ -255,14 +351,12 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 		System.out.println(
 				"XuggleVideo found " + firstDisplayPacket + " incomplete out of " + packetCount + " total packets");
 
-//		// create imageCache
-		if (cacheMax > 0) {
-		int nImages = imageList.size();
-		imageCache = new BufferedImage[nImages + firstDisplayPacket];
-		for (int i = 0, p = firstDisplayPacket; i < nImages; i++)
-			imageCache[p++] = imageList.get(i);
-			// no longer need imageList
-			imageList = null;
+		// create imageCache
+		imageCache = new XuggleFrameCache(getCacheMB(), (img) -> {
+			recycleImage(img);
+		});
+		if (useFrameIndex && isLocal && !frameIndexLoaded) {
+			new XuggleFrameIndex(packetTSList, keyTSList, frameTimes, firstDisplayPacket).write(path);
 		}
 		packetTimeStamps = packetTSList.toArray(new Long[packetCount]);
 		keyTimeStamps = keyTSList.toArray(new Long[packetCount]);
@@ -309,14 +403,28 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 	}
 
 
+	/**
+	 * Determines if the container scan must decode every packet rather than
+	 * reading only the packet headers.
+	 * 
+	 * @return true if a decoding scan is needed
+	 */
+	private boolean needsDecodeScan() {
+		if (!PACKED_CODECS.contains(videoDecoder.getCodecID()))
+			return false;
+		IContainerFormat format = container.getContainerFormat();
+		String name = (format == null ? null : format.getInputFormatShortName());
+		return name == null || name.contains("avi"); //$NON-NLS-1$
+	}
+
 	@Override
 	public boolean loadMoreFrames(int n) throws IOException {
 		if (isFullyLoaded())
 			return false;
 		//System.out.println("Xuggle.loadMoreFrames");
 		int finalIndex = index + n;
-		long lastDTS = Long.MIN_VALUE;
-		boolean haveImages = false;
+		// continue from the last packet of the previous batch
+		long lastDTS = (packetTSList.isEmpty() ? Long.MIN_VALUE : packetTSList.get(packetTSList.size() - 1));
 		while (index < finalIndex && container.readNextPacket(packet) >= 0) {
 			if (VideoIO.isCanceled()) {
 				//stopFailDetection();
@@ -331,33 +439,33 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 				if (keyTimeStamp == Long.MIN_VALUE || packet.isKeyPacket()) {
 					keyTimeStamp = dts;
 				}
-				int offset = 0;
-				int size = packet.getSize();
-//				System.out.println("XV " + imageList.size());
-				while (offset < size) {
-					// decode the packet into the picture
-					int bytesDecoded = videoDecoder.decodeVideo(picture, packet, offset);
-					// check for errors
-					if (bytesDecoded < 0)
-						break;
-					offset += bytesDecoded;
-					if (!picture.isComplete()) {
-						System.out.println("!! XuggleVideo picture was incomplete! dts=" + dts + " index=" + index);
-						if (!haveImages)
-							firstDisplayPacket++;
-						continue;
+				// Only the packet headers are needed for the frame tables: one entry
+				// per packet with a new dts. Decoding is needed only to count the
+				// leading incomplete pictures (firstDisplayPacket), so once a complete
+				// picture is found we skip it unless decodeScan is set.
+				if (!haveImages || decodeScan) {
+					int offset = 0;
+					int size = packet.getSize();
+//					System.out.println("XV " + imageList.size());
+					while (offset < size) {
+						// decode the packet into the picture
+						int bytesDecoded = videoDecoder.decodeVideo(picture, packet, offset);
+						// check for errors
+						if (bytesDecoded < 0)
+							break;
+						offset += bytesDecoded;
+						if (!picture.isComplete()) {
+							if (!haveImages)
+								firstDisplayPacket++;
+							continue;
+						}
 					}
 				}
 				if (dts == lastDTS)
 					continue;
 				lastDTS = dts;
-				// save valid buffered images for cache
-				boolean isComplete = picture.isComplete();
-				if (isComplete)
+				if (picture.isComplete())
 					haveImages = true;
-				if (cacheMax > 0 && isComplete && imageList.size() < cacheMax - firstDisplayPacket) {
-					imageList.add(getBufferedImage());
-				}
 
 //				dumpImage(containerFrame, getBufferedImage(), "C");				
 //				System.out.println(index + " dts=" + dts + " kts=" + keyTimeStamp + " "
@@ -381,8 +489,9 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 
 	void debugCache() {
 		if (imageCache != null) {
-			for (int i = 0; i < imageCache.length; i++) {
-				dumpImage(i, imageCache[i], "img");
+			for (int i = 0; i < frameCount; i++) {
+				if (imageCache.contains(i))
+					dumpImage(i, imageCache.get(i), "img");
 			}
 		}
 	}
@@ -475,26 +584,6 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 		return rawDuration * 1000;
 	}
 
-	/**
-	 * Sets the playSmoothly flag.
-	 * 
-	 * @param smooth true to play smoothly
-	 */
-	@Override
-	public void setSmoothPlay(boolean smooth) {
-		playSmoothly = smooth;
-	}
-
-	/**
-	 * Gets the playSmoothly flag.
-	 * 
-	 * @return true if playing smoothly
-	 */
-	@Override
-	public boolean isSmoothPlay() {
-		return playSmoothly;
-	}
-
 	/**
 	 * Disposes of this video.
 	 */
@@ -502,7 +591,10 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 	public void dispose() {
 		// System.out.println("XuggleVideo.dispose");
 		super.dispose();
-		disposeXuggle();
+		stopReadAhead();
+		synchronized (decodeLock) {
+			disposeXuggle();
+		}
 	}
 
 	private void disposeXuggle() {
@@ -535,26 +627,20 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 			container.delete();
 			container = null;
 		}
-		if (newPic != null) {
-			newPic.delete();
-			newPic = null;
-		}
-		if (converter != null) {
-			converter.delete();
-			converter = null;
-		}
-		if (resampler != null) {
-			resampler.delete();
-			resampler = null;
+		if (imageConverter != null) {
+			imageConverter.dispose();
+			imageConverter = null;
 		}
 
 		frameTimes = null;
 
-		imageCache = null;
+		if (imageCache != null) {
+			imageCache.clear();
+			imageCache = null;
+		}
 
 		streamIndex = firstDisplayPacket = -1;
 		rawImage = null;
-		resampler = null;
 
 		keyTS0 = /* keyTS1 = */ Long.MIN_VALUE;
 	}
@@ -701,11 +787,15 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 
 	@Override
 	protected BufferedImage getImageForMSTimePoint(double timeMS) {
-		seekMS(timeMS);
-		if (!loadPictureFromNextPacket()) {
-			return null;
+		synchronized (decodeLock) {
+			if (container == null)
+				return null;
+			seekMS(timeMS);
+			if (!loadPictureFromNextPacket()) {
+				return null;
+			}
+			return (picture.isComplete() ? getBufferedImage() : null);
 		}
-		return (picture.isComplete() ? getBufferedImage() : null);
 	}
 
 	private long timeSecToTimeStamp(double timeSec) {
@@ -917,7 +1007,10 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 //	}
 
 	/**
-	 * Gets the BufferedImage for a specified Tracker video frame.
+	 * Gets the BufferedImage for a specified Tracker video frame. The image
+	 * becomes the raw image, so the cache keeps it out of the pool until the
+	 * next raw image replaces it. VideoAdapter copies the raw image before
+	 * filtering, so nothing else holds it by then.
 	 *
 	 * @param frameNumber the Tracker frame number (zero-based)
 	 * @return the image, or null if failed to load
@@ -925,12 +1018,106 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 	private BufferedImage getImage(int frameNumber) {
 		if (frameNumber < 0 || frameNumber >= frameCount)
 			return null;
-		int index = frameNumberToContainerIndex(frameNumber);
-		BufferedImage bi = (imageCache != null && index < imageCache.length ? imageCache[index] : null);
-		return (bi == null ? loadPictureForFrame(frameNumber) : bi);
+		XuggleFrameCache cache = imageCache;
+		BufferedImage bi = (cache == null ? null : cache.getDisplayed(frameNumber));
+		if (bi == null) {
+			synchronized (decodeLock) {
+				// read-ahead may have cached it while we waited
+				if (cache != null && cache.contains(frameNumber))
+					bi = cache.getDisplayed(frameNumber);
+				else if (container != null) {
+					bi = loadPictureForFrame(frameNumber);
+					if (bi != null && cache != null)
+						cache.putDisplayed(frameNumber, bi);
+				}
+			}
+		}
+		requestReadAhead(frameNumber);
+		return bi;
+	}
+
+	/**
+	 * Asks the read-ahead thread to decode the frames following (or, when
+	 * stepping backwards, preceding) a requested frame.
+	 *
+	 * @param frameNumber the frame just requested
+	 */
+	private void requestReadAhead(int frameNumber) {
+		if (readAheadFrames <= 0 || imageCache == null || !fullyLoaded)
+			return;
+		synchronized (readAheadLock) {
+			readAheadDirection = (frameNumber < lastRequestedFrame ? -1 : 1);
+			lastRequestedFrame = readAheadFrame = frameNumber;
+			if (readAheadThread == null) {
+				readAheadThread = new Thread(() -> {
+					runReadAhead();
+				}, "XuggleVideo read-ahead"); //$NON-NLS-1$
+				readAheadThread.setDaemon(true);
+				readAheadThread.setPriority(Thread.MIN_PRIORITY);
+				readAheadThread.start();
+			}
+			readAheadLock.notifyAll();
+		}
 	}
 
-	IVideoPicture newPic;
+	/**
+	 * The read-ahead loop. Waits for a request, then decodes and caches up to
+	 * readAheadFrames frames in the play direction, abandoning the request if a
+	 * newer one arrives. Frames before the current frame are decoded in forward
+	 * order so that each group of pictures is decoded only once.
+	 */
+	private void runReadAhead() {
+		Thread thread = Thread.currentThread();
+		while (readAheadThread == thread) {
+			int frame, dir;
+			synchronized (readAheadLock) {
+				while (readAheadFrame < 0 && readAheadThread == thread) {
+					try {
+						readAheadLock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				frame = readAheadFrame;
+				dir = readAheadDirection;
+				readAheadFrame = -1;
+			}
+			int first = (dir > 0 ? frame + 1 : Math.max(0, frame - readAheadFrames));
+			int last = (dir > 0 ? Math.min(frameCount - 1, frame + readAheadFrames) : frame - 1);
+			for (int i = first; i <= last; i++) {
+				synchronized (readAheadLock) {
+					if (readAheadFrame >= 0 || readAheadThread != thread)
+						break; // newer request
+				}
+				XuggleFrameCache cache = imageCache;
+				if (cache == null)
+					return;
+				if (cache.contains(i))
+					continue;
+				synchronized (decodeLock) {
+					if (container == null)
+						return;
+					BufferedImage bi = loadPictureForFrame(i);
+					if (bi != null)
+						cache.put(i, bi);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the read-ahead thread, if any.
+	 */
+	private void stopReadAhead() {
+		synchronized (readAheadLock) {
+			if (readAheadThread != null) {
+				readAheadThread.interrupt();
+				readAheadThread = null;
+			}
+			readAheadFrame = lastRequestedFrame = -1;
+			readAheadLock.notifyAll();
+		}
+	}
 
 	private boolean fullyLoaded;
 
@@ -940,36 +1127,22 @@ public class XuggleVideo extends MovieVideo implements SmoothPlayable, Increment
 	 * @return the image, or null if unable to resample
 	 */
 	private BufferedImage getBufferedImage() {
-		// if needed, convert picture into BGR24 format
-		if (picture.getPixelType() == IPixelFormat.Type.BGR24) {
-			newPic = picture;
-		} else {
-			if (resampler == null) {
-				resampler = IVideoResampler.make(picture.getWidth(), picture.getHeight(), IPixelFormat.Type.BGR24,
-						picture.getWidth(), picture.getHeight(), picture.getPixelType());
-				if (resampler == null) {
-					OSPLog.warning("Could not create color space resampler"); //$NON-NLS-1$
-					return null;
-				}
-				newPic = IVideoPicture.make(resampler.getOutputPixelFormat(), picture.getWidth(), picture.getHeight());
-			}
-			if (resampler.resample(newPic, picture) < 0 || newPic.getPixelType() != IPixelFormat.Type.BGR24) {
-				OSPLog.warning("Could not encode video as BGR24"); //$NON-NLS-1$
-				return null;
-			}
-		}
+		if (imageConverter == null)
+			imageConverter = new XuggleImageConverter();
+		// images are recycled when evicted from the cache or, if displayed, when
+		// replaced, so there is no need to garbage collect to play smoothly
+		return imageConverter.toImage(picture);
+	}
 
-		// use IConverter to convert picture to buffered image
-		if (converter == null) {
-			converter = ConverterFactory.createConverter(
-					ConverterFactory.findRegisteredConverter(ConverterFactory.XUGGLER_BGR_24).getDescriptor(), newPic);
-		}
-		BufferedImage image = converter.toImage(newPic);
-		// garbage collect to play smoothly--but slows down playback speed
-		// significantly!
-		if (playSmoothly)
-			System.gc();
-		return image;
+	/**
+	 * Recycles an image evicted from the cache. The cache passes the displayed
+	 * image only after it has been replaced, so nothing else holds it.
+	 *
+	 * @param image the image
+	 */
+	private void recycleImage(BufferedImage image) {
+		if (imageConverter != null)
+			imageConverter.recycle(image);
 	}
 
 	/**